@@ -0,0 +1,185 @@
+package org.kohsuke.groovy.sandbox.benchmark;
+
+import org.codehaus.groovy.syntax.Types;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.impl.Checker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls the {@link Checker} entry points that {@code SandboxTransformer} emits directly, with a varying number of
+ * interceptors that let everything through, so that we measure the cost of the sandbox itself.
+ *
+ * <p>
+ * There is always at least one interceptor, since without any the sandbox rejects everything. For the cost of the
+ * operations without the sandbox, see {@link ScriptBenchmark}.
+ *
+ * <p>
+ * The benchmarks that take an owner class and a site number use an inline cache, like transformed code does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckerBenchmark {
+    @Param({"1", "2", "5"})
+    public int interceptors;
+
+    private final List<GroovyInterceptor> registered = new ArrayList<>();
+
+    private final String string = "sandbox";
+    private final Integer one = 1;
+    private final Integer two = 2;
+    private final Object[] args = {one, two};
+    private final List<Object> list = new ArrayList<>();
+    private final Map<String, Object> map = new HashMap<>();
+    private final Bean bean = new Bean();
+
+    /**
+     * Lets everything through, but asks to be consulted about everything, so that it is not skipped.
+     */
+    public static class PassThrough extends GroovyInterceptor {
+        @Override
+        public Set<Event> getInterests() {
+            return EnumSet.allOf(Event.class);
+        }
+    }
+
+    public static class Bean {
+        private int value;
+
+        public int getValue() {
+            return value;
+        }
+
+        public void setValue(int value) {
+            this.value = value;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < interceptors; i++) {
+            GroovyInterceptor interceptor = new PassThrough();
+            interceptor.register();
+            registered.add(interceptor);
+        }
+        list.add(one);
+        list.add(two);
+        map.put("key", one);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (GroovyInterceptor interceptor : registered) {
+            interceptor.unregister();
+        }
+        registered.clear();
+    }
+
+    @Benchmark
+    public Object call() throws Throwable {
+        return Checker.checkedCall(string, false, false, "substring", args);
+    }
+
+    @Benchmark
+    public Object callSite() throws Throwable {
+        return Checker.checkedCall(CheckerBenchmark.class, 0, string, false, false, "substring", args);
+    }
+
+    @Benchmark
+    public Object callSite0() throws Throwable {
+        return Checker.checkedCall0(CheckerBenchmark.class, 1, string, "length");
+    }
+
+    @Benchmark
+    public Object callSite2() throws Throwable {
+        return Checker.checkedCall2(CheckerBenchmark.class, 2, string, "substring", one, two);
+    }
+
+    @Benchmark
+    public Object staticCall() throws Throwable {
+        return Checker.checkedStaticCall(Math.class, "max", args);
+    }
+
+    @Benchmark
+    public Object staticCallSite2() throws Throwable {
+        return Checker.checkedStaticCall2(CheckerBenchmark.class, 3, Math.class, "max", one, two);
+    }
+
+    @Benchmark
+    public Object constructor() throws Throwable {
+        return Checker.checkedConstructor(StringBuilder.class, new Object[] {string});
+    }
+
+    @Benchmark
+    public Object constructorSite1() throws Throwable {
+        return Checker.checkedConstructor1(CheckerBenchmark.class, 4, StringBuilder.class, string);
+    }
+
+    @Benchmark
+    public Object getProperty() throws Throwable {
+        return Checker.checkedGetProperty(bean, false, false, "value");
+    }
+
+    @Benchmark
+    public Object setProperty() throws Throwable {
+        return Checker.checkedSetProperty(bean, "value", false, false, Types.ASSIGN, one);
+    }
+
+    @Benchmark
+    public Object getMapProperty() throws Throwable {
+        return Checker.checkedGetProperty(map, false, false, "key");
+    }
+
+    @Benchmark
+    public Object setMapProperty() throws Throwable {
+        return Checker.checkedSetProperty(map, "key", false, false, Types.ASSIGN, one);
+    }
+
+    @Benchmark
+    public Object getArray() throws Throwable {
+        return Checker.checkedGetArray(list, one);
+    }
+
+    @Benchmark
+    public Object setArray() throws Throwable {
+        return Checker.checkedSetArray(list, one, Types.ASSIGN, two);
+    }
+
+    @Benchmark
+    public Object binaryOp() throws Throwable {
+        return Checker.checkedBinaryOp(one, Types.PLUS, two);
+    }
+
+    @Benchmark
+    public Object comparison() throws Throwable {
+        return Checker.checkedComparison(one, Types.COMPARE_LESS_THAN, two);
+    }
+
+    @Benchmark
+    public Object cast() throws Throwable {
+        return Checker.checkedCast(CharSequence.class, string, false, false, false);
+    }
+}
@@ -0,0 +1,88 @@
+package org.kohsuke.groovy.sandbox.benchmark;
+
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares running the same script without the sandbox, with the sandbox, and with the sandbox and invokedynamic.
+ *
+ * @see SandboxTransformer#enableInvokeDynamic
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchModeBenchmark {
+    /**
+     * Every call site in the loop sees one receiver type.
+     */
+    private static final String MONOMORPHIC =
+            "def s = 0\n" +
+            "for (int i = 0; i < 1000; i++) { s += 'abc'.length() }\n" +
+            "s\n";
+
+    /**
+     * The call site in the loop sees four receiver types.
+     */
+    private static final String POLYMORPHIC =
+            "def xs = ['abc', [1, 2], [a: 1], new StringBuilder('de')]\n" +
+            "def s = 0\n" +
+            "for (int i = 0; i < 1000; i++) { s += xs[i % 4].size() }\n" +
+            "s\n";
+
+    @Param({"unsandboxed", "sandboxed", "invokedynamic"})
+    public String mode;
+
+    @Param({"monomorphic", "polymorphic"})
+    public String shape;
+
+    private Script script;
+
+    /**
+     * Lets everything through, so that we measure the sandbox and not a policy.
+     */
+    private final GroovyInterceptor interceptor = new GroovyInterceptor() {};
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        interceptor.register();
+        CompilerConfiguration cc = new CompilerConfiguration();
+        if (!mode.equals("unsandboxed")) {
+            cc.addCompilationCustomizers(new SandboxTransformer());
+        }
+        if (mode.equals("invokedynamic")) {
+            SandboxTransformer.enableInvokeDynamic(cc);
+        }
+        script = new GroovyShell(cc).parse(shape.equals("monomorphic") ? MONOMORPHIC : POLYMORPHIC);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        interceptor.unregister();
+    }
+
+    @Benchmark
+    public Object run() {
+        return script.run();
+    }
+}
@@ -0,0 +1,66 @@
+package org.kohsuke.groovy.sandbox.benchmark;
+
+import org.kohsuke.groovy.sandbox.impl.GroovyCallSiteSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to pick the constructor Groovy would call, which the sandbox does for every
+ * {@code new} expression before the constructor is actually invoked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroovyCallSiteSelectorBenchmark {
+    private final Object[] noArgs = {};
+    private final Object[] string = {"sandbox"};
+    private final Object[] number = {16};
+    private final Object[] collection = {Collections.singletonList(1)};
+    private final Object[] nullArg = {null};
+
+    @Benchmark
+    public Constructor<?> noArguments() {
+        return GroovyCallSiteSelector.findConstructor(StringBuilder.class, noArgs, null);
+    }
+
+    /**
+     * {@link StringBuilder} has several constructors that take one argument.
+     */
+    @Benchmark
+    public Constructor<?> overloaded() {
+        return GroovyCallSiteSelector.findConstructor(StringBuilder.class, string, null);
+    }
+
+    @Benchmark
+    public Constructor<?> primitiveParameter() {
+        return GroovyCallSiteSelector.findConstructor(ArrayList.class, number, null);
+    }
+
+    @Benchmark
+    public Constructor<?> interfaceParameter() {
+        return GroovyCallSiteSelector.findConstructor(ArrayList.class, collection, null);
+    }
+
+    /**
+     * A null argument matches every single-argument constructor, so it takes the most comparisons to settle.
+     */
+    @Benchmark
+    public Constructor<?> nullArgument() {
+        return GroovyCallSiteSelector.findConstructor(StringBuilder.class, nullArg, null);
+    }
+}
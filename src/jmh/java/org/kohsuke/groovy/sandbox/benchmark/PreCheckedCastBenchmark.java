@@ -0,0 +1,98 @@
+package org.kohsuke.groovy.sandbox.benchmark;
+
+import groovy.lang.Closure;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.impl.Checker;
+import org.kohsuke.groovy.sandbox.impl.Checker.Thunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the checks {@link Checker#preCheckedCast} makes before a cast, without performing the cast itself.
+ * Casts to interfaces ask the interceptors about every method of the interface, and casts from collections may ask
+ * about a constructor or about each element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreCheckedCastBenchmark {
+    private final GroovyInterceptor interceptor = new GroovyInterceptor() {};
+
+    private final Closure<?> closure = new Closure<Object>(null) {
+        public Object doCall() {
+            return null;
+        }
+    };
+    private final Map<String, Object> map = Collections.singletonMap("compare", closure);
+    private final List<String> list = Arrays.asList("a", "b", "c");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        interceptor.register();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        interceptor.unregister();
+    }
+
+    @Benchmark
+    public Thunk alreadyAssignable() throws Throwable {
+        return Checker.preCheckedCast(CharSequence.class, "sandbox", false, false, false);
+    }
+
+    /**
+     * {@link Runnable} has a single method.
+     */
+    @Benchmark
+    public Thunk closureToInterface() throws Throwable {
+        return Checker.preCheckedCast(Runnable.class, closure, false, true, false);
+    }
+
+    /**
+     * {@link Comparator} has many methods, most of them default or static.
+     */
+    @Benchmark
+    public Thunk mapToInterface() throws Throwable {
+        return Checker.preCheckedCast(Comparator.class, map, false, true, false);
+    }
+
+    /**
+     * Left to {@code DefaultGroovyMethods.asType}, so there is nothing to check.
+     */
+    @Benchmark
+    public Thunk listToCollection() throws Throwable {
+        return Checker.preCheckedCast(Set.class, list, false, true, false);
+    }
+
+    @Benchmark
+    public Thunk listToArray() throws Throwable {
+        return Checker.preCheckedCast(String[].class, list, false, true, false);
+    }
+
+    @Benchmark
+    public Thunk listToConstructor() throws Throwable {
+        return Checker.preCheckedCast(StringBuilder.class, Collections.singletonList("a"), false, true, false);
+    }
+}
@@ -0,0 +1,109 @@
+package org.kohsuke.groovy.sandbox.benchmark;
+
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles and runs representative scripts with and without {@link SandboxTransformer}.
+ *
+ * @see DispatchModeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptBenchmark {
+    private static final Map<String, String> SCRIPTS = new HashMap<>();
+    static {
+        SCRIPTS.put("arithmetic",
+                "def fib(n) { n < 2 ? n : fib(n - 1) + fib(n - 2) }\n" +
+                "fib(15)\n");
+        SCRIPTS.put("collections",
+                "def words = 'the quick brown fox jumps over the lazy dog'.split(' ') as List\n" +
+                "def counts = [:]\n" +
+                "for (int i = 0; i < 50; i++) { words.each { counts[it] = (counts[it] ?: 0) + 1 } }\n" +
+                "counts.findAll { k, v -> v > 50 }.keySet().sort().join(',')\n");
+        SCRIPTS.put("objects",
+                "class Point { int x, y; Point plus(Point o) { new Point(x: x + o.x, y: y + o.y) } }\n" +
+                "def p = new Point(x: 0, y: 0)\n" +
+                "for (int i = 0; i < 200; i++) { p += new Point(x: i, y: -i) }\n" +
+                "\"$p.x,$p.y\".toString()\n");
+        SCRIPTS.put("strings",
+                "def sb = new StringBuilder()\n" +
+                "for (int i = 0; i < 200; i++) { sb.append(\"item ${i}\".toUpperCase()).append(';') }\n" +
+                "sb.toString().tokenize(';').size()\n");
+    }
+
+    @Param({"false", "true"})
+    public boolean sandboxed;
+
+    @Param({"arithmetic", "collections", "objects", "strings"})
+    public String script;
+
+    private CompilerConfiguration cc;
+    private Script compiled;
+
+    /**
+     * Lets everything through, so that we measure the sandbox and not a policy.
+     */
+    private final GroovyInterceptor interceptor = new GroovyInterceptor() {};
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        interceptor.register();
+        cc = new CompilerConfiguration();
+        if (sandboxed) {
+            cc.addCompilationCustomizers(new SandboxTransformer());
+        }
+        compiled = compile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        interceptor.unregister();
+    }
+
+    /**
+     * Uses a fresh shell every time, so that the classes we define can be garbage collected.
+     */
+    private Script compile() {
+        return new GroovyShell(cc).parse(SCRIPTS.get(script));
+    }
+
+    @Benchmark
+    public Script compileOnly() {
+        return compile();
+    }
+
+    @Benchmark
+    public Object runOnly() {
+        return compiled.run();
+    }
+
+    @Benchmark
+    public Object compileAndRun() {
+        return compile().run();
+    }
+}
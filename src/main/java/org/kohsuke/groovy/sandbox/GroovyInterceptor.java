@@ -1,9 +1,13 @@
 package org.kohsuke.groovy.sandbox;
 
+import org.kohsuke.groovy.sandbox.impl.Interceptors;
 import org.kohsuke.groovy.sandbox.impl.Super;
+import org.kohsuke.groovy.sandbox.impl.VerdictCache;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -140,6 +144,52 @@ public abstract class GroovyInterceptor {
         return invoker.call(receiver,null,index,value);
     }
 
+    /**
+     * Intercepts an update of a property, an attribute or an array element with the result of an operator applied to
+     * its current value, like "foo.bar++", "--foo.@bar" or "foo[bar] += z", as a whole.
+     *
+     * <p>
+     * The sandbox only calls this when all the interceptors it would otherwise consult about the steps of the update
+     * are {@linkplain #getInterests() interested} in {@link Event#UPDATE}, which overriding this method makes them.
+     * Otherwise, and in particular as long as no interceptor overrides it, the update is decomposed into its steps,
+     * like "foo.bar = foo.bar.next()", and each of them is intercepted on its own, so an interceptor that overrides
+     * this method may still be consulted either way.
+     *
+     * <p>
+     * Letting the update through lets through all of its steps: reading the current value, calling the operator
+     * method on it and writing the result back. The only exception is calling the operator method on a current value
+     * that is neither a number nor a string, which is still intercepted as a method call.
+     *
+     * @param target
+     *      What is updated.
+     * @param receiver
+     *      'foo' in the above examples, the object whose property, attribute or element is updated.
+     * @param key
+     *      'bar' in the above examples, the name of the property or attribute, or the index.
+     * @param operator
+     *      The name of the method that computes the new value from the current one, like "next" for ++,
+     *      "previous" for -- and "plus" for +=. The invoker takes it in place of the method name.
+     * @param operand
+     *      'z' in the above example, or null for ++ and --.
+     * @return
+     *      The result of the update expression. Normally, you should return the same object as the invoker.
+     */
+    public Object onUpdate(Invoker invoker, Target target, Object receiver, Object key, String operator, Object operand) throws Throwable {
+        return invoker.call(receiver,operator,key,operand);
+    }
+
+    /**
+     * What {@link #onUpdate} updates.
+     */
+    public enum Target {
+        /** "foo.bar" */
+        PROPERTY,
+        /** "foo.@bar" */
+        ATTRIBUTE,
+        /** "foo[bar]" */
+        ARRAY
+    }
+
     /**
      * Represents the next interceptor in the chain.
      * 
@@ -188,11 +238,108 @@ public abstract class GroovyInterceptor {
 //        globalInterceptors.remove(this);
 //    }
 
+    /**
+     * Returns the cache in which the sandbox may remember the decisions of this interceptor,
+     * or null to have it consulted about every single operation, which is the default.
+     *
+     * <p>
+     * Only return a cache if this interceptor decides solely based on the signature of operations
+     * and does not alter the operations it lets through. See {@link VerdictCache} for the details.
+     */
+    public VerdictCache getVerdictCache() {
+        return null;
+    }
+
+    /**
+     * The kinds of operations an interceptor can be consulted about, one for each of the {@code on...} methods.
+     *
+     * @see #getInterests()
+     */
+    public enum Event {
+        /** {@link #onMethodCall} */
+        METHOD_CALL("onMethodCall", Invoker.class, Object.class, String.class, Object[].class),
+        /** {@link #onStaticCall} */
+        STATIC_CALL("onStaticCall", Invoker.class, Class.class, String.class, Object[].class),
+        /** {@link #onNewInstance} */
+        NEW_INSTANCE("onNewInstance", Invoker.class, Class.class, Object[].class),
+        /** {@link #onSuperCall} */
+        SUPER_CALL("onSuperCall", Invoker.class, Class.class, Object.class, String.class, Object[].class),
+        /** {@link #onSuperConstructor} */
+        SUPER_CONSTRUCTOR("onSuperConstructor", Invoker.class, Class.class, Object[].class),
+        /** {@link #onGetProperty} */
+        GET_PROPERTY("onGetProperty", Invoker.class, Object.class, String.class),
+        /** {@link #onSetProperty} */
+        SET_PROPERTY("onSetProperty", Invoker.class, Object.class, String.class, Object.class),
+        /** {@link #onGetAttribute} */
+        GET_ATTRIBUTE("onGetAttribute", Invoker.class, Object.class, String.class),
+        /** {@link #onSetAttribute} */
+        SET_ATTRIBUTE("onSetAttribute", Invoker.class, Object.class, String.class, Object.class),
+        /** {@link #onGetArray} */
+        GET_ARRAY("onGetArray", Invoker.class, Object.class, Object.class),
+        /** {@link #onSetArray} */
+        SET_ARRAY("onSetArray", Invoker.class, Object.class, Object.class, Object.class),
+        /** {@link #onUpdate} */
+        UPDATE("onUpdate", Invoker.class, Target.class, Object.class, Object.class, String.class, Object.class);
+
+        private final String method;
+        private final Class<?>[] parameterTypes;
+
+        Event(String method, Class<?>... parameterTypes) {
+            this.method = method;
+            this.parameterTypes = parameterTypes;
+        }
+
+        /**
+         * Returns true unless the given interceptor class inherits the method of this kind from {@link GroovyInterceptor}.
+         */
+        private boolean isOverriddenBy(Class<?> type) {
+            try {
+                return type.getMethod(method, parameterTypes).getDeclaringClass() != GroovyInterceptor.class;
+            } catch (NoSuchMethodException | SecurityException e) {
+                return true; // cannot tell, so assume it is
+            }
+        }
+    }
+
+    private static final ClassValue<Set<Event>> DEFAULT_INTERESTS = new ClassValue<Set<Event>>() {
+        @Override
+        protected Set<Event> computeValue(Class<?> type) {
+            Set<Event> interests = EnumSet.noneOf(Event.class);
+            for (Event e : Event.values()) {
+                if (e.isOverriddenBy(type)) {
+                    interests.add(e);
+                }
+            }
+            if (interests.contains(Event.NEW_INSTANCE)) {
+                interests.add(Event.SUPER_CONSTRUCTOR);
+            }
+            return Collections.unmodifiableSet(interests);
+        }
+    };
+
+    /**
+     * Returns the kinds of operations this interceptor wants to be consulted about.
+     * The sandbox does not call it at all about other kinds of operations, which go straight to the next interceptor
+     * as if this one had let them through unchanged.
+     *
+     * <p>
+     * By default, these are the kinds whose {@code on...} methods the class of this interceptor overrides, since the
+     * others let everything through anyway, along with {@link Event#SUPER_CONSTRUCTOR} if it overrides
+     * {@link #onNewInstance}, which {@link #onSuperConstructor} calls by default.
+     * Override this to narrow it down further, for example when one method handles several kinds of operations.
+     * The sandbox reads it whenever it takes a snapshot of the registered interceptors, so it should not change
+     * while this interceptor is registered.
+     */
+    public Set<Event> getInterests() {
+        return DEFAULT_INTERESTS.get(getClass());
+    }
+
     /**
      * Registers this interceptor to the current thread's interceptor list.
      */
     public void register() {
         threadInterceptors.get().add(this);
+        Interceptors.reset();
     }
 
     /**
@@ -200,6 +347,7 @@ public abstract class GroovyInterceptor {
      */
     public void unregister() {
         threadInterceptors.get().remove(this);
+        Interceptors.reset();
     }
 
     private static final ThreadLocal<List<GroovyInterceptor>> threadInterceptors = new ThreadLocal<List<GroovyInterceptor>>() {
@@ -0,0 +1,60 @@
+package org.kohsuke.groovy.sandbox;
+
+import org.kohsuke.groovy.sandbox.impl.Interceptors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed list of {@link GroovyInterceptor}s that applies to sandbox-transformed code regardless of the thread it runs on.
+ *
+ * <p>
+ * Interceptors are normally {@linkplain GroovyInterceptor#register() registered} on the current thread, which means
+ * every intercepted operation has to look them up in a {@link ThreadLocal}, and that scripts which hop between threads
+ * (for example on an executor, or on virtual threads) need them registered on each one. Instead, a context can be
+ * bound to the class loader that defines the script classes, and the sandbox then finds it from the class that the
+ * intercepted code is in:
+ *
+ * <pre>
+ * GroovyShell shell = new GroovyShell(compilerConfiguration);
+ * new SandboxContext(interceptor).bind(shell.getClassLoader());
+ * shell.evaluate(script);
+ * </pre>
+ *
+ * Code in bound classes ignores the interceptors registered on the current thread.
+ */
+public final class SandboxContext {
+    private final List<GroovyInterceptor> interceptors;
+    private final Interceptors snapshot;
+
+    public SandboxContext(GroovyInterceptor... interceptors) {
+        this(Arrays.asList(interceptors));
+    }
+
+    /**
+     * @param interceptors
+     *      Interceptors to consult, in order. If there are none, the sandbox rejects everything.
+     */
+    public SandboxContext(List<GroovyInterceptor> interceptors) {
+        this.interceptors = Collections.unmodifiableList(new ArrayList<>(interceptors));
+        this.snapshot = Interceptors.snapshot(this.interceptors);
+    }
+
+    public List<GroovyInterceptor> getInterceptors() {
+        return interceptors;
+    }
+
+    /**
+     * Makes sandbox-transformed code in the classes defined by the given class loader, or by any of its descendants,
+     * use this context. A loader can only be bound to one context at a time, so this replaces any earlier binding.
+     *
+     * <p>
+     * Bind the loader before running any code it defines, since classes that have already been intercepted
+     * without a context keep using the interceptors of the current thread.
+     */
+    public void bind(ClassLoader loader) {
+        Interceptors.bind(loader, snapshot);
+    }
+}
@@ -1,13 +1,21 @@
 package org.kohsuke.groovy.sandbox;
 
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotatedNode;
+import org.codehaus.groovy.ast.AnnotationNode;
 import org.codehaus.groovy.ast.ClassCodeExpressionTransformer;
 import org.codehaus.groovy.ast.ClassHelper;
 import org.codehaus.groovy.ast.ClassNode;
@@ -20,6 +28,7 @@ import org.codehaus.groovy.ast.expr.ArgumentListExpression;
 import org.codehaus.groovy.ast.expr.ArrayExpression;
 import org.codehaus.groovy.ast.expr.AttributeExpression;
 import org.codehaus.groovy.ast.expr.BitwiseNegationExpression;
+import org.codehaus.groovy.ast.expr.BooleanExpression;
 import org.codehaus.groovy.ast.expr.CastExpression;
 import org.codehaus.groovy.ast.expr.ClassExpression;
 import org.codehaus.groovy.ast.expr.ClosureExpression;
@@ -34,12 +43,15 @@ import org.codehaus.groovy.ast.expr.PostfixExpression;
 import org.codehaus.groovy.ast.expr.PrefixExpression;
 import org.codehaus.groovy.ast.expr.PropertyExpression;
 import org.codehaus.groovy.ast.expr.RangeExpression;
+import org.codehaus.groovy.ast.expr.SpreadExpression;
 import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.expr.TernaryExpression;
 import org.codehaus.groovy.ast.expr.TupleExpression;
 import org.codehaus.groovy.ast.expr.UnaryMinusExpression;
 import org.codehaus.groovy.ast.expr.UnaryPlusExpression;
 import org.codehaus.groovy.classgen.GeneratorContext;
 import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.SourceUnit;
 import org.codehaus.groovy.control.customizers.CompilationCustomizer;
 import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
@@ -127,10 +139,103 @@ public class SandboxTransformer extends CompilationCustomizer {
      */
     boolean interceptAttribute=true;
 
+    /**
+     * Instance methods that scripts call directly, by name. See {@link #allowDirectCalls}.
+     */
+    private final Map<String, List<Method>> directCalls = new HashMap<>();
+
+    /**
+     * Decides which members statically compiled code may use. See {@link #enableStaticCompilation}.
+     */
+    private Predicate<Member> staticPolicy;
+
     public SandboxTransformer() {
         super(CompilePhase.CANONICALIZATION);
     }
 
+    /**
+     * Makes scripts call the given public instance methods directly, without consulting interceptors, when the type
+     * of the receiver and the arguments is known when compiling them.
+     *
+     * <p>
+     * This is meant for methods that a policy always allows anyway, like {@code String.trim()} or
+     * {@code List.size()}, for which going through {@link Checker} only costs time. Such calls are then compiled the
+     * way Java would compile them, as is code under {@code @CompileStatic}: the method is picked from the declared
+     * types of the local variables, parameters, and literals involved, and not according to the actual values of the
+     * arguments, categories, or metaclasses. Calls on values whose type is not known at compile time, and calls that
+     * might mean more than one method, are intercepted as usual.
+     *
+     * <p>
+     * A method allows overriding methods as well, like {@code List.size()} for {@code ArrayList.size()}.
+     */
+    public void allowDirectCalls(Collection<Method> methods) {
+        for (Method m : methods) {
+            if (Modifier.isStatic(m.getModifiers()) || !Modifier.isPublic(m.getModifiers())
+                    || !Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+                throw new IllegalArgumentException("Only public instance methods of public classes can be called directly: " + m);
+            }
+            List<Method> l = directCalls.get(m.getName());
+            if (l == null) {
+                directCalls.put(m.getName(), l = new ArrayList<>());
+            }
+            l.add(m);
+        }
+    }
+
+    /**
+     * Makes the given configuration compile code with invokedynamic.
+     *
+     * <p>
+     * Once the script is transformed, almost everything it does is a call to {@link Checker}. By default Groovy makes
+     * those calls through its {@link org.codehaus.groovy.runtime.callsite.CallSite}s, which the JIT cannot see through.
+     * With invokedynamic, every such call is linked to a {@link java.lang.invoke.MethodHandle} that calls the right
+     * {@link Checker} method directly, guarded by the types of the arguments, so the JIT can inline it into the script.
+     * Interceptors are consulted exactly as they are otherwise.
+     *
+     * <p>
+     * Groovy relinks a call whenever the types of its arguments change, so code whose call sites see many different
+     * receivers can end up slower than with the default. This is why this is opt-in.
+     *
+     * <pre>
+     * def cc = new CompilerConfiguration()
+     * cc.addCompilationCustomizers(new SandboxTransformer())
+     * SandboxTransformer.enableInvokeDynamic(cc)
+     * </pre>
+     */
+    public static void enableInvokeDynamic(CompilerConfiguration cc) {
+        cc.getOptimizationOptions().put(CompilerConfiguration.INVOKEDYNAMIC, Boolean.TRUE);
+    }
+
+    /**
+     * Lets scripts run code under {@code @CompileStatic} without going through {@link Checker}.
+     *
+     * <p>
+     * Such code calls methods and constructors that are picked when it is compiled, so instead of intercepting them
+     * when they run, we ask the given policy about each of them once, right after the static compiler has picked them,
+     * and fail the compilation with a {@link SecurityException} if one is not allowed. Calls between the classes of the
+     * script itself are always allowed, since that code is sandboxed as well. Casts are still intercepted as usual,
+     * because what they do depends on the value. Whatever the static compiler leaves to be resolved at runtime, like
+     * method pointers or indexing into a list, is not allowed at all, and neither are type checking extensions.
+     *
+     * <p>
+     * The policy has to agree with the interceptors that are used to run the script, since they are not consulted
+     * for the statically compiled code.
+     *
+     * <pre>
+     * def cc = new CompilerConfiguration()
+     * def st = new SandboxTransformer()
+     * cc.addCompilationCustomizers(st)
+     * st.enableStaticCompilation(cc, { m -&gt; m.declaringClass == String })
+     * </pre>
+     */
+    public void enableStaticCompilation(CompilerConfiguration cc, Predicate<Member> policy) {
+        if (staticPolicy != null) {
+            throw new IllegalStateException("Static compilation is already enabled");
+        }
+        staticPolicy = policy;
+        cc.addCompilationCustomizers(new StaticCompilationVerifier(policy));
+    }
+
     @Override
     public void call(final SourceUnit source, GeneratorContext context, ClassNode classNode) {
         if (classNode == null) { // TODO is this even possible? CpsTransformer implies it is not.
@@ -142,10 +247,34 @@ public class SandboxTransformer extends CompilationCustomizer {
 
         ClassCodeExpressionTransformer visitor = createVisitor(source, classNode);
 
+        if (staticPolicy != null) {
+            // isCompileStatic is not asked about constructors, but their annotations matter to the static compiler too
+            for (ConstructorNode c : classNode.getDeclaredConstructors()) {
+                StaticCompilationVerifier.forbidExtensions(c);
+            }
+        }
+        if (staticPolicy != null && StaticCompilationVerifier.isCompileStatic(classNode)) {
+            // StaticCompilationVerifier checks all of it once the static compiler is done, except for @CompileDynamic methods
+            StaticCompilationVerifier.skip(classNode);
+            for (MethodNode m : classNode.getMethods()) {
+                forbidIfFinalizer(m);
+                if (StaticCompilationVerifier.isCompileStatic(m)) {
+                    StaticCompilationVerifier.skip(m);
+                } else {
+                    visitor.visitMethod(m);
+                }
+            }
+            return;
+        }
+
         processConstructors(visitor, classNode);
         for (MethodNode m : classNode.getMethods()) {
             forbidIfFinalizer(m);
-            visitor.visitMethod(m);
+            if (staticPolicy != null && StaticCompilationVerifier.isCompileStatic(m)) {
+                StaticCompilationVerifier.skip(m);
+            } else {
+                visitor.visitMethod(m);
+            }
         }
         for (Statement s : classNode.getObjectInitializerStatements()) {
             s.visit(visitor);
@@ -312,13 +441,13 @@ public class SandboxTransformer extends CompilationCustomizer {
                 thisArgsWithoutWrapper.add(new VariableExpression(p));
             }
             if (constructorCallType == ClassNode.THIS) {
-                thisArgs.set(0, ((VisitorImpl) visitor).makeCheckedCall("checkedThisConstructor",
+                thisArgs.set(0, ((VisitorImpl) visitor).makeCheckerCall("checkedThisConstructor",
                         new ClassExpression(classNode),
                         constructorCallArgsTransformed.get(),
                         new ArrayExpression(new ClassNode(Object.class), thisArgsWithoutWrapper),
                         new ArrayExpression(new ClassNode(Class.class), paramTypes)));
             } else {
-                thisArgs.set(0, ((VisitorImpl) visitor).makeCheckedCall("checkedSuperConstructor",
+                thisArgs.set(0, ((VisitorImpl) visitor).makeCheckerCall("checkedSuperConstructor",
                         new ClassExpression(classNode),
                         new ClassExpression(superClass),
                         constructorCallArgsTransformed.get(),
@@ -389,9 +518,25 @@ public class SandboxTransformer extends CompilationCustomizer {
          */
         private ClassNode methodReturnType;
 
+        /**
+         * Number of call sites in {@link #clazz} that we have numbered so far.
+         *
+         * @see #makeCheckedSiteCall(String, Expression...)
+         */
+        private int sites;
+
+        /**
+         * False while we transform the operands of an operation on literals that {@link #makeFoldedConstant} folded.
+         */
+        private boolean foldingConstants = true;
+
         VisitorImpl(SourceUnit sourceUnit, ClassNode clazz) {
             this.sourceUnit = sourceUnit;
             this.clazz = clazz;
+            if (sourceUnit != null && sourceUnit.getAST() != null) {
+                this.reassignedVariables = reassignedVariables(sourceUnit);
+                this.closureAssignedVariables = closureAssignedVariables(sourceUnit);
+            }
         }
 
         @Override
@@ -410,6 +555,36 @@ public class SandboxTransformer extends CompilationCustomizer {
             }
         }
 
+        @Override
+        public void visitAnnotations(AnnotatedNode node) {
+            for (AnnotationNode an : node.getAnnotations()) {
+                if (an.isBuiltIn()) {
+                    continue;
+                }
+                for (Map.Entry<String, Expression> member : an.getMembers().entrySet()) {
+                    member.setValue(transformAnnotationValue(member.getValue()));
+                }
+            }
+        }
+
+        /**
+         * Annotation values are read by the compiler rather than evaluated at runtime, and it expects to find enum
+         * values as they were written, like {@code TypeCheckingMode.SKIP} in what {@code @CompileDynamic} expands to.
+         */
+        private Expression transformAnnotationValue(Expression e) {
+            if (e instanceof PropertyExpression && ((PropertyExpression) e).getObjectExpression() instanceof ClassExpression) {
+                return e;
+            }
+            if (e instanceof ListExpression) {
+                List<Expression> values = ((ListExpression) e).getExpressions();
+                for (int i = 0; i < values.size(); i++) {
+                    values.set(i, transformAnnotationValue(values.get(i)));
+                }
+                return e;
+            }
+            return transform(e);
+        }
+
         @Override
         public void visitReturnStatement(ReturnStatement statement) {
             if (statement.isReturningNullOrVoid()) {
@@ -452,12 +627,267 @@ public class SandboxTransformer extends CompilationCustomizer {
             // checkdCall expects an array
             return withLoc(e,new MethodCallExpression(new ListExpression(l),"toArray",new ArgumentListExpression()));
         }
+
+        /**
+         * Transforms the arguments of a call that we can pass to one of the {@link Checker} methods specialized for
+         * that many arguments, like {@link Checker#checkedCall1}.
+         *
+         * @return
+         *      null if there are too many arguments, if one of them is spread (in which case we only know how many
+         *      there are at runtime), or if we cannot refer to the call site.
+         */
+        List<Expression> transformFixedArguments(Expression e) {
+            if (clazz == null) {
+                return null;
+            }
+            List<Expression> expressions = e instanceof TupleExpression ? ((TupleExpression) e).getExpressions() : Collections.singletonList(e);
+            if (expressions.size() > 2) {
+                return null;
+            }
+            for (Expression expression : expressions) {
+                if (expression instanceof SpreadExpression) {
+                    return null;
+                }
+            }
+            List<Expression> l = new ArrayList<>(expressions.size());
+            for (Expression expression : expressions) {
+                l.add(transform(expression));
+            }
+            return l;
+        }
         
+        /**
+         * Calls the given method of {@link Checker}, passing the current class first so that it can tell which
+         * interceptors apply.
+         */
         Expression makeCheckedCall(String name, Expression... arguments) {
+            if (clazz == null) {
+                return makeCheckerCall(name, arguments);
+            }
+            Expression[] ownerArguments = new Expression[arguments.length + 1];
+            ownerArguments[0] = classExp(clazz);
+            System.arraycopy(arguments, 0, ownerArguments, 1, arguments.length);
+            return makeCheckerCall(name, ownerArguments);
+        }
+
+        /**
+         * Calls the given method of {@link Checker} with exactly the given arguments.
+         */
+        Expression makeCheckerCall(String name, Expression... arguments) {
             return new StaticMethodCallExpression(checkerClass,name,
                 new ArgumentListExpression(arguments));
         }
 
+        /**
+         * Like {@link #makeCheckedCall(String, Expression...)}, but also passes the current class and a number
+         * that identifies this call site within it, so that {@link Checker} can keep an inline cache for the site.
+         */
+        Expression makeCheckedSiteCall(String name, Expression... arguments) {
+            if (clazz == null) {
+                return makeCheckerCall(name, arguments);
+            }
+            Expression[] siteArguments = new Expression[arguments.length + 2];
+            siteArguments[0] = classExp(clazz);
+            siteArguments[1] = intExp(sites++);
+            System.arraycopy(arguments, 0, siteArguments, 2, arguments.length);
+            return makeCheckerCall(name, siteArguments);
+        }
+
+        /**
+         * If both operands of an arithmetic or comparison operator are statically typed as the same primitive type,
+         * calls the variant of {@link Checker#checkedBinaryOp} or {@link Checker#checkedComparison} for that type,
+         * like {@link Checker#checkedIntBinaryOp}, directly rather than through a call site, so that neither the
+         * operands nor the result get boxed.
+         *
+         * @return
+         *      null if this does not apply.
+         */
+        private Expression makePrimitiveCheckedCall(BinaryExpression be) {
+            ClassNode type = primitiveOperandType(be);
+            if (type == null || clazz == null) {
+                return null;
+            }
+            int op = be.getOperation().getType();
+            String name = "checked" + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1)
+                    + (Ops.isComparisionOperator(op) ? "Comparison" : "BinaryOp");
+            return withLoc(be, makeDirectCheckerCall(name,
+                    classExp(clazz), transform(be.getLeftExpression()), intExp(op), transform(be.getRightExpression())));
+        }
+
+        /**
+         * Calls the only {@link Checker} method of the given name without going through a call site, which means that
+         * the arguments must be of the types of its parameters.
+         */
+        private Expression makeDirectCheckerCall(String name, Expression... arguments) {
+            MethodNode target = checkerClass.getDeclaredMethods(name).get(0);
+            MethodCallExpression call = new MethodCallExpression(classExp(checkerClass), name, new ArgumentListExpression(arguments));
+            call.setImplicitThis(false);
+            call.setMethodTarget(target);
+            call.setType(target.getReturnType());
+            return call;
+        }
+
+        /**
+         * If an arithmetic operator only involves literals, like {@code 24 * 60 * 60} or {@code 'foo' + 'bar'},
+         * computes it right away, so that the script uses the result as long as {@link Checker#isFoldingValid()},
+         * and otherwise performs the operation as usual. Interceptors are not told about operations whose result
+         * is used, just like Groovy never calls {@code negative()} for {@code -1}.
+         *
+         * @return
+         *      null if this does not apply.
+         */
+        private Expression makeFoldedConstant(BinaryExpression be) {
+            Object value = foldingConstants ? Checker.foldConstants(be.getOperation().getType(),
+                    literalValueOf(be.getLeftExpression()), literalValueOf(be.getRightExpression())) : null;
+            if (value == null) {
+                return null;
+            }
+            Expression checked;
+            foldingConstants = false; // no need to fold the operands again for the fallback
+            try {
+                checked = makeCheckedCall("checkedBinaryOp",
+                        transform(be.getLeftExpression()),
+                        intExp(be.getOperation().getType()),
+                        transform(be.getRightExpression()));
+            } finally {
+                foldingConstants = true;
+            }
+            return withLoc(be, new TernaryExpression(new BooleanExpression(makeDirectCheckerCall("isFoldingValid")),
+                    new ConstantExpression(value), checked));
+        }
+
+        /**
+         * Returns the value of a literal number or string, or of arithmetic on those that {@link Checker#foldConstants}
+         * can compute, or else null.
+         */
+        private Object literalValueOf(Expression e) {
+            if (e instanceof ConstantExpression) {
+                Object value = ((ConstantExpression) e).getValue();
+                return value instanceof Number || value instanceof String ? value : null;
+            } else if (e instanceof BinaryExpression) {
+                BinaryExpression be = (BinaryExpression) e;
+                Object lhs = literalValueOf(be.getLeftExpression());
+                Object rhs = lhs == null ? null : literalValueOf(be.getRightExpression());
+                return rhs == null ? null : Checker.foldConstants(be.getOperation().getType(), lhs, rhs);
+            }
+            return null;
+        }
+
+        /**
+         * Returns the primitive type of both operands of the given operator if {@link #makePrimitiveCheckedCall}
+         * supports it, or null.
+         */
+        private ClassNode primitiveOperandType(BinaryExpression be) {
+            ClassNode type = primitiveTypeOf(be.getLeftExpression());
+            if (type == null || !type.equals(primitiveTypeOf(be.getRightExpression()))) {
+                return null;
+            }
+            switch (be.getOperation().getType()) {
+            case Types.PLUS:
+            case Types.MINUS:
+            case Types.MULTIPLY:
+            case Types.MOD:
+            case Types.COMPARE_EQUAL:
+            case Types.COMPARE_NOT_EQUAL:
+            case Types.COMPARE_LESS_THAN:
+            case Types.COMPARE_LESS_THAN_EQUAL:
+            case Types.COMPARE_GREATER_THAN:
+            case Types.COMPARE_GREATER_THAN_EQUAL:
+                return type;
+            case Types.DIVIDE:
+                // dividing integers gives a BigDecimal
+                return type.equals(ClassHelper.double_TYPE) ? type : null;
+            default:
+                return null;
+            }
+        }
+
+        /**
+         * Returns {@code int}, {@code long}, or {@code double} if the given expression is known to be of that type,
+         * like a local variable declared as such, a literal, or arithmetic on those, or else null.
+         */
+        private ClassNode primitiveTypeOf(Expression e) {
+            if (e instanceof VariableExpression) {
+                String name = ((VariableExpression) e).getName();
+                ClassNode type = isLocalVariable(name) ? localVariableType(name) : null;
+                if (type != null && (type.equals(ClassHelper.int_TYPE) || type.equals(ClassHelper.long_TYPE) || type.equals(ClassHelper.double_TYPE))) {
+                    return type;
+                }
+            } else if (e instanceof ConstantExpression) {
+                Object value = ((ConstantExpression) e).getValue();
+                if (value instanceof Integer) {
+                    return ClassHelper.int_TYPE;
+                } else if (value instanceof Long) {
+                    return ClassHelper.long_TYPE;
+                } else if (value instanceof Double) {
+                    return ClassHelper.double_TYPE;
+                }
+            } else if (e instanceof BinaryExpression && !Ops.isComparisionOperator(((BinaryExpression) e).getOperation().getType())) {
+                return primitiveOperandType((BinaryExpression) e);
+            }
+            return null;
+        }
+
+        /**
+         * Returns the method that {@link #allowDirectCalls} lets us call directly for the given call, or null.
+         */
+        private MethodNode directCallTarget(MethodCallExpression call) {
+            String name = call.getMethodAsString();
+            List<Method> allowed = name == null ? null : directCalls.get(name);
+            if (allowed == null || call.isSafe() || call.isSpreadSafe() || call.isImplicitThis()
+                    || !(call.getArguments() instanceof TupleExpression)) {
+                return null;
+            }
+            Class<?> receiver = classOf(staticTypeOf(call.getObjectExpression()));
+            List<Expression> args = ((TupleExpression) call.getArguments()).getExpressions();
+            Class<?>[] argTypes = new Class<?>[args.size()];
+            for (int i = 0; i < argTypes.length; i++) {
+                if ((argTypes[i] = classOf(staticTypeOf(args.get(i)))) == null) {
+                    return null;
+                }
+            }
+            if (receiver == null || receiver.isPrimitive()) {
+                return null;
+            }
+            // as Java would, but only if there is no doubt as to which method Groovy would pick
+            Method selected = null;
+            for (Method m : receiver.getMethods()) {
+                if (m.getName().equals(name) && !m.isBridge() && isApplicable(m, argTypes)) {
+                    if (selected != null && !Arrays.equals(selected.getParameterTypes(), m.getParameterTypes())) {
+                        return null;
+                    }
+                    selected = m;
+                }
+            }
+            if (selected == null || Modifier.isStatic(selected.getModifiers())) {
+                return null;
+            }
+            for (Method m : allowed) {
+                if (m.getDeclaringClass().isAssignableFrom(receiver) && Arrays.equals(m.getParameterTypes(), selected.getParameterTypes())) {
+                    for (MethodNode node : ClassHelper.make(m.getDeclaringClass()).getMethods(name)) {
+                        if (isMethod(node, m)) {
+                            return node;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        ClassNode staticTypeOf(Expression e) {
+            if (e instanceof VariableExpression) {
+                String name = ((VariableExpression) e).getName();
+                return isLocalVariable(name) ? localVariableType(name) : null;
+            } else if (e instanceof ConstantExpression) {
+                return ((ConstantExpression) e).isNullExpression() ? null : e.getType();
+            } else if (e instanceof MethodCallExpression) {
+                MethodNode target = directCallTarget((MethodCallExpression) e);
+                return target == null ? null : target.getReturnType();
+            }
+            return super.staticTypeOf(e);
+        }
+
         /**
          * Groovy implicitly casts some expressions at runtime, so we manually insert explicit casts as needed to
          * intercept potentially dangerous calls.
@@ -466,6 +896,12 @@ public class SandboxTransformer extends CompilationCustomizer {
             if (isKnownSafeCast(clazz, value)) {
                 return value;
             }
+            if (value instanceof VariableExpression && isLocalVariable(((VariableExpression) value).getName())) {
+                ClassNode type = localVariableType(((VariableExpression) value).getName());
+                if (type != null && isKnownSafeCast(clazz, type)) {
+                    return value;
+                }
+            }
             return makeCheckedCall("checkedCast",
                     classExp(clazz),
                     value,
@@ -476,10 +912,12 @@ public class SandboxTransformer extends CompilationCustomizer {
 
         @Override
         public Expression transform(Expression exp) {
+            ClassNode assignedType = assignedType(exp);
             Expression o = innerTransform(exp);
             if (o!=exp) {
                 o.setSourcePosition(exp);
             }
+            trackAssignments(exp, assignedType);
             return o;
         }
 
@@ -487,7 +925,7 @@ public class SandboxTransformer extends CompilationCustomizer {
             if (exp instanceof ClosureExpression) {
                 // ClosureExpression.transformExpression doesn't visit the code inside
                 ClosureExpression ce = (ClosureExpression)exp;
-                try (StackVariableSet scope = new StackVariableSet(this)) {
+                try (StackVariableSet scope = new StackVariableSet(this, true)) {
                     Parameter[] parameters = ce.getParameters();
                     if (parameters != null) {
                         // Explicitly defined parameters, i.e., ".findAll { i -> i == 'bar' }"
@@ -533,20 +971,38 @@ public class SandboxTransformer extends CompilationCustomizer {
                     objExp = transform(call.getObjectExpression());
 
                 Expression arg1 = transform(call.getMethod());
-                Expression arg2 = transformArguments(call.getArguments());
 
                 if (call.getObjectExpression() instanceof VariableExpression && ((VariableExpression) call.getObjectExpression()).getName().equals("super")) {
                     if (clazz == null) {
                         throw new IllegalStateException("owning class not defined");
                     }
-                    return makeCheckedCall("checkedSuperCall", new ClassExpression(clazz), objExp, arg1, arg2);
+                    return makeCheckerCall("checkedSuperCall", new ClassExpression(clazz), objExp, arg1, transformArguments(call.getArguments()));
+                }
+                MethodNode target = directCallTarget(call);
+                if (target != null) {
+                    List<Expression> args = new ArrayList<>();
+                    for (Expression e : ((TupleExpression) call.getArguments()).getExpressions()) {
+                        args.add(transform(e));
+                    }
+                    MethodCallExpression direct = new MethodCallExpression(objExp, call.getMethod(), new ArgumentListExpression(args));
+                    direct.setImplicitThis(false);
+                    direct.setMethodTarget(target);
+                    direct.setType(target.getReturnType());
+                    return direct;
+                }
+                List<Expression> fixed = call.isSpreadSafe() ? null : transformFixedArguments(call.getArguments());
+                if (fixed != null) {
+                    fixed.add(0, objExp);
+                    fixed.add(1, arg1);
+                    return makeCheckedSiteCall((call.isSafe() ? "checkedSafeCall" : "checkedCall") + (fixed.size() - 2),
+                            fixed.toArray(new Expression[0]));
                 } else {
-                    return makeCheckedCall("checkedCall",
+                    return makeCheckedSiteCall("checkedCall",
                             objExp,
                             boolExp(call.isSafe()),
                             boolExp(call.isSpreadSafe()),
                             arg1,
-                            arg2);
+                            transformArguments(call.getArguments()));
                 }
             }
             
@@ -559,7 +1015,13 @@ public class SandboxTransformer extends CompilationCustomizer {
                     ASTTransformations like ToString,EqualsAndHashCode, etc.
                  */
                 StaticMethodCallExpression call = (StaticMethodCallExpression) exp;
-                return makeCheckedCall("checkedStaticCall",
+                List<Expression> fixed = transformFixedArguments(call.getArguments());
+                if (fixed != null) {
+                    fixed.add(0, new ClassExpression(call.getOwnerType()));
+                    fixed.add(1, new ConstantExpression(call.getMethod()));
+                    return makeCheckedSiteCall("checkedStaticCall" + (fixed.size() - 2), fixed.toArray(new Expression[0]));
+                }
+                return makeCheckedSiteCall("checkedStaticCall",
                             new ClassExpression(call.getOwnerType()),
                             new ConstantExpression(call.getMethod()),
                             transformArguments(call.getArguments())
@@ -568,18 +1030,27 @@ public class SandboxTransformer extends CompilationCustomizer {
 
             if (exp instanceof MethodPointerExpression && interceptMethodCall) {
                 MethodPointerExpression mpe = (MethodPointerExpression) exp;
+                ArgumentListExpression args = new ArgumentListExpression(
+                        transform(mpe.getExpression()),
+                        transform(mpe.getMethodName()));
+                if (clazz != null) {
+                    args.addExpression(classExp(clazz));
+                }
                 return new ConstructorCallExpression(
                         new ClassNode(SandboxedMethodClosure.class),
-                        new ArgumentListExpression(
-                                transform(mpe.getExpression()),
-                                transform(mpe.getMethodName()))
+                        args
                 );
             }
 
             if (exp instanceof ConstructorCallExpression && interceptConstructor) {
                 if (!((ConstructorCallExpression) exp).isSpecialCall()) {
                     // creating a new instance, like "new Foo(...)"
-                    return makeCheckedCall("checkedConstructor",
+                    List<Expression> fixed = transformFixedArguments(((ConstructorCallExpression) exp).getArguments());
+                    if (fixed != null) {
+                        fixed.add(0, new ClassExpression(exp.getType()));
+                        return makeCheckedSiteCall("checkedConstructor" + (fixed.size() - 1), fixed.toArray(new Expression[0]));
+                    }
+                    return makeCheckedSiteCall("checkedConstructor",
                             new ClassExpression(exp.getType()),
                             transformArguments(((ConstructorCallExpression) exp).getArguments())
                     );
@@ -775,7 +1246,7 @@ public class SandboxTransformer extends CompilationCustomizer {
                     // This requires inverted operand order:
                     // "a in [...]" -> "[...].isCase(a)"
                     if (interceptMethodCall)
-                        return makeCheckedCall("checkedCall",
+                        return makeCheckedSiteCall("checkedCall",
                                 transform(be.getRightExpression()),
                                 boolExp(false),
                                 boolExp(false),
@@ -786,7 +1257,7 @@ public class SandboxTransformer extends CompilationCustomizer {
                 } else
                 if (Ops.isRegexpComparisonOperator(be.getOperation().getType())) {
                     if (interceptMethodCall)
-                        return makeCheckedCall("checkedStaticCall",
+                        return makeCheckedSiteCall("checkedStaticCall",
                                 classExp(ScriptBytecodeAdapterClass),
                                 stringExp(Ops.binaryOperatorMethods(be.getOperation().getType())),
                                 transform(be.getLeftExpression()),
@@ -795,6 +1266,10 @@ public class SandboxTransformer extends CompilationCustomizer {
                 } else
                 if (Ops.isComparisionOperator(be.getOperation().getType())) {
                     if (interceptMethodCall) {
+                        Expression primitive = makePrimitiveCheckedCall(be);
+                        if (primitive != null) {
+                            return primitive;
+                        }
                         return makeCheckedCall("checkedComparison",
                                 transform(be.getLeftExpression()),
                                 intExp(be.getOperation().getType()),
@@ -805,6 +1280,14 @@ public class SandboxTransformer extends CompilationCustomizer {
                 if (interceptMethodCall) {
                     // normally binary operators like a+b
                     // TODO: check what other weird binary operators land here
+                    Expression folded = makeFoldedConstant(be);
+                    if (folded != null) {
+                        return folded;
+                    }
+                    Expression primitive = makePrimitiveCheckedCall(be);
+                    if (primitive != null) {
+                        return primitive;
+                    }
                     return makeCheckedCall("checkedBinaryOp",
                             transform(be.getLeftExpression()),
                             intExp(be.getOperation().getType()),
@@ -1039,7 +1522,7 @@ public class SandboxTransformer extends CompilationCustomizer {
      * @see Checker#preCheckedCast
      */
     public static boolean isKnownSafeCast(ClassNode type, Expression exp) {
-        if (exp.getType().isDerivedFrom(type) || exp.getType().implementsInterface(type)) {
+        if (isKnownSafeCast(type, exp.getType())) {
             return true;
         } else if (exp instanceof ConstantExpression && ((ConstantExpression)exp).isNullExpression()) {
             return true;
@@ -1050,6 +1533,64 @@ public class SandboxTransformer extends CompilationCustomizer {
         return false;
     }
 
+    /**
+     * Return true if casting any value of the given static type to the given type is known to be safe.
+     */
+    static boolean isKnownSafeCast(ClassNode type, ClassNode valueType) {
+        if (valueType.isDerivedFrom(type) || valueType.implementsInterface(type)) {
+            return true;
+        }
+        // Checker.preCheckedCast has nothing to check for conversions between numbers, like from Integer to long
+        return ClassHelper.isNumberType(type) && (ClassHelper.isNumberType(valueType) || valueType.equals(ClassHelper.BigDecimal_TYPE)
+                || valueType.equals(ClassHelper.BigInteger_TYPE));
+    }
+
+    /**
+     * Returns the class of the given type if it is a class that we can load, like a JDK class, or else null.
+     */
+    private static Class<?> classOf(ClassNode type) {
+        if (type == null || !type.isResolved() || type.isGenericsPlaceHolder()) {
+            return null;
+        }
+        return type.redirect().getTypeClass();
+    }
+
+    /**
+     * Returns true if Java could call the given method with arguments of the given types.
+     */
+    private static boolean isApplicable(Method m, Class<?>[] argTypes) {
+        Class<?>[] params = m.getParameterTypes();
+        if (params.length != argTypes.length || m.isVarArgs()) {
+            return false;
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (!wrap(params[i]).isAssignableFrom(wrap(argTypes[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> wrap(Class<?> c) {
+        return c.isPrimitive() ? ClassHelper.getWrapper(ClassHelper.make(c)).getTypeClass() : c;
+    }
+
+    /**
+     * Returns true if the given {@link MethodNode} stands for the given {@link Method}.
+     */
+    private static boolean isMethod(MethodNode node, Method m) {
+        Parameter[] params = node.getParameters();
+        if (params.length != m.getParameterCount() || node.isStatic()) {
+            return false;
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (!params[i].getType().redirect().equals(ClassHelper.make(m.getParameterTypes()[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static final Token ASSIGNMENT_OP = new Token(Types.ASSIGN, "=", -1, -1);
 
     static final ClassNode checkerClass = new ClassNode(Checker.class);
@@ -1,24 +1,45 @@
 package org.kohsuke.groovy.sandbox;
 
 import org.codehaus.groovy.ast.ClassCodeExpressionTransformer;
+import org.codehaus.groovy.ast.ClassCodeVisitorSupport;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.groovy.ast.FieldNode;
 import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
 import org.codehaus.groovy.ast.Parameter;
 import org.codehaus.groovy.ast.Variable;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
 import org.codehaus.groovy.ast.expr.BooleanExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
 import org.codehaus.groovy.ast.expr.DeclarationExpression;
 import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.GStringExpression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.ast.expr.MapExpression;
+import org.codehaus.groovy.ast.expr.PostfixExpression;
+import org.codehaus.groovy.ast.expr.PrefixExpression;
 import org.codehaus.groovy.ast.expr.TupleExpression;
 import org.codehaus.groovy.ast.expr.VariableExpression;
 import org.codehaus.groovy.ast.stmt.BlockStatement;
 import org.codehaus.groovy.ast.stmt.CatchStatement;
 import org.codehaus.groovy.ast.stmt.DoWhileStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
 import org.codehaus.groovy.ast.stmt.ForStatement;
 import org.codehaus.groovy.ast.stmt.IfStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
 import org.codehaus.groovy.ast.stmt.SwitchStatement;
 import org.codehaus.groovy.ast.stmt.SynchronizedStatement;
 import org.codehaus.groovy.ast.stmt.TryCatchStatement;
 import org.codehaus.groovy.ast.stmt.WhileStatement;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.syntax.Types;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
 
 /**
  * Keeps track of in-scope variables.
@@ -32,10 +53,121 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
      */
     StackVariableSet varScope;
 
+    /**
+     * {@link #reassignedVariables(SourceUnit) Names of the variables that are assigned after their declaration}, or
+     * null if we do not know them, in which case we do not infer the types of dynamically typed local variables.
+     */
+    Set<String> reassignedVariables;
+
+    /**
+     * {@link #closureAssignedVariables(SourceUnit) Names of the variables that closures assign}, or null if we do not
+     * know them, in which case we do not track the types of the values that local variables are assigned.
+     */
+    Set<String> closureAssignedVariables;
+
+    /**
+     * Expression of the {@link ExpressionStatement} we are visiting, which is evaluated unconditionally once the
+     * statement is reached, unlike the expressions nested in it.
+     */
+    private Expression statementExpression;
+
     public boolean isLocalVariable(String name) {
         return varScope.has(name);
     }
 
+    /**
+     * Type of the value that the in-scope variable of the given name is known to hold at this point of the code.
+     * This is the type of what it was last assigned if we know that, or else its declared type, or for a dynamically
+     * typed variable that is never reassigned, the type of the literal that it was initialized with, or else null.
+     */
+    ClassNode localVariableType(String name) {
+        return varScope.typeOf(name);
+    }
+
+    /**
+     * Type of the value of the given expression if it is known when compiling, or else null.
+     */
+    ClassNode staticTypeOf(Expression exp) {
+        return typeOfLiteral(exp);
+    }
+
+    @Override
+    public void visitExpressionStatement(ExpressionStatement statement) {
+        Expression outer = statementExpression;
+        statementExpression = statement.getExpression();
+        try {
+            super.visitExpressionStatement(statement);
+        } finally {
+            statementExpression = outer;
+        }
+    }
+
+    /**
+     * Called before transforming an expression, to be passed to {@link #trackAssignments} afterwards.
+     *
+     * @return
+     *      for a statement that assigns a local variable, the type of the value it is assigned if we know it, or null
+     */
+    ClassNode assignedType(Expression exp) {
+        if (exp != null && exp == statementExpression && !(exp instanceof DeclarationExpression) && exp instanceof BinaryExpression) {
+            BinaryExpression be = (BinaryExpression) exp;
+            if (be.getOperation().getType() == Types.ASSIGN && be.getLeftExpression() instanceof VariableExpression) {
+                return staticTypeOf(be.getRightExpression());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called once an expression has been transformed, to keep track of the values that it assigns to local variables.
+     *
+     * @param type
+     *      what {@link #assignedType} returned for it
+     */
+    void trackAssignments(Expression exp, ClassNode type) {
+        if (exp instanceof DeclarationExpression) {
+            return; // see handleDeclarations
+        } else if (exp instanceof BinaryExpression && Types.ofType(((BinaryExpression) exp).getOperation().getType(), Types.ASSIGNMENT_OPERATOR)) {
+            Expression lhs = ((BinaryExpression) exp).getLeftExpression();
+            if (lhs instanceof VariableExpression) {
+                assign(((VariableExpression) lhs).getName(), type);
+            } else if (lhs instanceof TupleExpression) {
+                for (Expression e : (TupleExpression) lhs) {
+                    if (e instanceof VariableExpression) {
+                        assign(((VariableExpression) e).getName(), null);
+                    }
+                }
+            }
+        } else if (exp instanceof PrefixExpression && ((PrefixExpression) exp).getExpression() instanceof VariableExpression) {
+            assign(((VariableExpression) ((PrefixExpression) exp).getExpression()).getName(), null);
+        } else if (exp instanceof PostfixExpression && ((PostfixExpression) exp).getExpression() instanceof VariableExpression) {
+            assign(((VariableExpression) ((PostfixExpression) exp).getExpression()).getName(), null);
+        }
+    }
+
+    /**
+     * Records that the local variable of the given name was assigned a value of the given type, or null if unknown.
+     * A closure may assign a variable at any time, so we never know what such variables hold.
+     */
+    private void assign(String name, ClassNode type) {
+        if (isLocalVariable(name)) {
+            varScope.assign(name, closureAssignedVariables == null || closureAssignedVariables.contains(name) ? null : type);
+        }
+    }
+
+    /**
+     * Forgets what the variables that the given loop assigns hold, since the loop may run any number of times.
+     */
+    private void enterLoop(Statement loop) {
+        if (closureAssignedVariables != null) {
+            for (String name : assignedVariables(loop)) {
+                if (isLocalVariable(name)) {
+                    varScope.assign(name, null);
+                }
+            }
+        }
+    }
+
     @Override
     public void visitMethod(MethodNode node) {
         varScope = null;
@@ -74,6 +206,7 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
     @Override
     public void visitDoWhileLoop(DoWhileStatement loop) {
         // Do-while loops are not actually supported by Groovy 2.x.
+        enterLoop(loop);
         try (StackVariableSet scope = new StackVariableSet(this)) {
             loop.getLoopBlock().visit(this);
         }
@@ -85,6 +218,7 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
     @Override
     public void visitForLoop(ForStatement forLoop) {
         try (StackVariableSet scope = new StackVariableSet(this)) {
+            enterLoop(forLoop);
             /*
                 Groovy appears to always treat the left-hand side of forLoop as a declaration.
                 i.e., the following code is error
@@ -167,6 +301,7 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
     public void visitWhileLoop(WhileStatement loop) {
         // Avoid super.visitWhileLoop because it transforms the boolean expression but then recurses on the entire
         // WhileStatement, causing the boolean expression to be visited a second time.
+        enterLoop(loop);
         loop.setBooleanExpression((BooleanExpression) transform(loop.getBooleanExpression()));
         try (StackVariableSet scope = new StackVariableSet(this)) {
             loop.getLoopBlock().visit(this);
@@ -179,7 +314,14 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
     void handleDeclarations(DeclarationExpression exp) {
         Expression leftExpression = exp.getLeftExpression();
         if (leftExpression instanceof VariableExpression) {
-            declareVariable((VariableExpression) leftExpression);
+            VariableExpression v = (VariableExpression) leftExpression;
+            declareVariable(v);
+            if (v.isDynamicTyped() && reassignedVariables != null && !reassignedVariables.contains(v.getName())) {
+                varScope.declare(v.getName(), typeOfLiteral(exp.getRightExpression()));
+            }
+            if (exp == statementExpression) {
+                assign(v.getName(), staticTypeOf(exp.getRightExpression()));
+            }
         } else if (leftExpression instanceof TupleExpression) {
             TupleExpression te = (TupleExpression) leftExpression;
             for (Expression e : te.getExpressions()) {
@@ -189,6 +331,124 @@ abstract class ScopeTrackingClassCodeExpressionTransformer extends ClassCodeExpr
     }
 
     void declareVariable(Variable exp) {
-        varScope.declare(exp.getName());
+        varScope.declare(exp.getName(), exp.isDynamicTyped() ? null : exp.getOriginType());
+    }
+
+    /**
+     * Type of the value of a literal, or null if the expression is not one or the type is not known.
+     */
+    static ClassNode typeOfLiteral(Expression exp) {
+        if (exp instanceof ConstantExpression) {
+            Object value = ((ConstantExpression) exp).getValue();
+            return value instanceof Number || value instanceof String ? ClassHelper.make(value.getClass()) : null;
+        } else if (exp instanceof GStringExpression) {
+            return ClassHelper.GSTRING_TYPE;
+        } else if (exp instanceof ListExpression) {
+            return ClassHelper.make(ArrayList.class); // ScriptBytecodeAdapter.createList
+        } else if (exp instanceof MapExpression) {
+            return ClassHelper.make(LinkedHashMap.class); // ScriptBytecodeAdapter.createMap
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names of the variables that are assigned anywhere in the given source other than where they are
+     * declared, so that local variables of any other name are known to keep the value they were declared with.
+     * Groovy does not prevent {@code final} local variables from being assigned, so we cannot rely on that instead.
+     */
+    static Set<String> reassignedVariables(final SourceUnit source) {
+        return assignments(source).found;
+    }
+
+    /**
+     * Returns the names of the variables that are assigned anywhere in a closure in the given source.
+     * Closures can run at any time, so we cannot tell what the variables they assign hold at any point.
+     */
+    static Set<String> closureAssignedVariables(final SourceUnit source) {
+        return assignments(source).inClosures;
+    }
+
+    private static AssignmentCollector assignments(final SourceUnit source) {
+        ModuleNode module = source.getAST();
+        AssignmentCollector assignments = module.getNodeMetaData(ScopeTrackingClassCodeExpressionTransformer.class);
+        if (assignments == null) {
+            assignments = new AssignmentCollector(source);
+            for (ClassNode c : module.getClasses()) {
+                assignments.visitClass(c);
+            }
+            module.setNodeMetaData(ScopeTrackingClassCodeExpressionTransformer.class, assignments);
+        }
+        return assignments;
+    }
+
+    /**
+     * Returns the names of the variables that are assigned in the given statement other than where they are declared.
+     */
+    private Set<String> assignedVariables(Statement statement) {
+        AssignmentCollector assignments = new AssignmentCollector(getSourceUnit());
+        statement.visit(assignments);
+        return assignments.found;
+    }
+
+    /**
+     * Collects the names of the variables that are assigned other than where they are declared.
+     */
+    private static final class AssignmentCollector extends ClassCodeVisitorSupport {
+        private final SourceUnit source;
+        final Set<String> found = new HashSet<>();
+        final Set<String> inClosures = new HashSet<>();
+        private int closures;
+
+        AssignmentCollector(SourceUnit source) {
+            this.source = source;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return source;
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression exp) {
+            if (!(exp instanceof DeclarationExpression) && Types.ofType(exp.getOperation().getType(), Types.ASSIGNMENT_OPERATOR)) {
+                addNames(exp.getLeftExpression());
+            }
+            super.visitBinaryExpression(exp);
+        }
+
+        @Override
+        public void visitPrefixExpression(PrefixExpression exp) {
+            addNames(exp.getExpression());
+            super.visitPrefixExpression(exp);
+        }
+
+        @Override
+        public void visitPostfixExpression(PostfixExpression exp) {
+            addNames(exp.getExpression());
+            super.visitPostfixExpression(exp);
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression exp) {
+            closures++;
+            try {
+                super.visitClosureExpression(exp);
+            } finally {
+                closures--;
+            }
+        }
+
+        private void addNames(Expression exp) {
+            if (exp instanceof VariableExpression) {
+                found.add(((VariableExpression) exp).getName());
+                if (closures > 0) {
+                    inClosures.add(((VariableExpression) exp).getName());
+                }
+            } else if (exp instanceof TupleExpression) {
+                for (Expression e : (TupleExpression) exp) {
+                    addNames(e);
+                }
+            }
+        }
     }
 }
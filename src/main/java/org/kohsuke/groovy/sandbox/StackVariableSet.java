@@ -1,7 +1,10 @@
 package org.kohsuke.groovy.sandbox;
 
-import java.util.HashSet;
-import java.util.Set;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Keep track of in-scope variables on the stack.
@@ -19,16 +22,53 @@ final class StackVariableSet implements AutoCloseable {
     final ScopeTrackingClassCodeExpressionTransformer owner;
     final StackVariableSet parent;
 
-    private final Set<String> names = new HashSet<>();
+    /**
+     * Type of each variable, or null if it is not known, see {@link ScopeTrackingClassCodeExpressionTransformer#localVariableType}.
+     */
+    private final Map<String, ClassNode> types = new HashMap<>();
+
+    /**
+     * Type of the value that each variable was assigned in this scope, or null if it is not known, in which case the
+     * variable holds a value of its declared type. Variables that are not assigned in this scope keep the value they
+     * had in the parent scope, unless this scope is isolated.
+     */
+    private final Map<String, ClassNode> assigned = new HashMap<>();
+
+    /**
+     * True for the scope of a closure, whose code runs later, when outer variables may hold anything.
+     */
+    private final boolean isolated;
 
     StackVariableSet(ScopeTrackingClassCodeExpressionTransformer owner) {
+        this(owner, false);
+    }
+
+    StackVariableSet(ScopeTrackingClassCodeExpressionTransformer owner, boolean isolated) {
         this.owner = owner;
         this.parent = owner.varScope;
+        this.isolated = isolated;
         owner.varScope = this;
     }
 
-    void declare(String name) {
-        names.add(name);
+    void declare(String name, ClassNode type) {
+        types.put(name, type);
+        assigned.remove(name);
+    }
+
+    /**
+     * Records that the in-scope variable of the given name was assigned a value of the given type, or null if unknown.
+     */
+    void assign(String name, ClassNode type) {
+        ClassNode declared = declaredTypeOf(name);
+        if (type != null && (declared == null || !ClassHelper.isPrimitiveType(declared))) {
+            // Anything else is boxed when it is stored
+            type = ClassHelper.getWrapper(type);
+            if (declared == null || type.isDerivedFrom(declared) || type.implementsInterface(declared)) {
+                assigned.put(name, type);
+                return;
+            }
+        }
+        assigned.put(name, null);
     }
 
     /**
@@ -36,13 +76,52 @@ final class StackVariableSet implements AutoCloseable {
      */
     boolean has(String name) {
         for (StackVariableSet s=this; s!=null; s=s.parent)
-            if (s.names.contains(name))
+            if (s.types.containsKey(name))
                 return true;
         return false;
     }
 
+    /**
+     * Type of the value of the in-scope variable of the given name at this point, or null if it is not known or not
+     * in scope. See {@link ScopeTrackingClassCodeExpressionTransformer#localVariableType}.
+     */
+    ClassNode typeOf(String name) {
+        boolean flow = true;
+        for (StackVariableSet s=this; s!=null; s=s.parent) {
+            if (flow && s.assigned.containsKey(name)) {
+                ClassNode type = s.assigned.get(name);
+                if (type != null)
+                    return type;
+                flow = false;
+            }
+            if (s.types.containsKey(name))
+                return s.types.get(name);
+            if (s.isolated)
+                flow = false;
+        }
+        return null;
+    }
+
+    /**
+     * Declared type of the in-scope variable of the given name, or null if it is not known or not in scope.
+     */
+    private ClassNode declaredTypeOf(String name) {
+        for (StackVariableSet s=this; s!=null; s=s.parent)
+            if (s.types.containsKey(name))
+                return s.types.get(name);
+        return null;
+    }
+
     @Override
     public void close() {
         owner.varScope = parent;
+        if (parent != null) {
+            // The code of this scope may not have run, or not all of it, so the outer variables it assigned may hold anything
+            for (String name : assigned.keySet()) {
+                if (!types.containsKey(name)) {
+                    parent.assigned.put(name, null);
+                }
+            }
+        }
     }
 }
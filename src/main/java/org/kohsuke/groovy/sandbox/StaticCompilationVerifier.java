@@ -0,0 +1,644 @@
+package org.kohsuke.groovy.sandbox;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.codehaus.groovy.ast.AnnotatedNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassCodeExpressionTransformer;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ConstructorNode;
+import org.codehaus.groovy.ast.DynamicVariable;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.InnerClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.PropertyNode;
+import org.codehaus.groovy.ast.Variable;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.AttributeExpression;
+import org.codehaus.groovy.ast.expr.ArrayExpression;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.BitwiseNegationExpression;
+import org.codehaus.groovy.ast.expr.BooleanExpression;
+import org.codehaus.groovy.ast.expr.CastExpression;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
+import org.codehaus.groovy.ast.expr.EmptyExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.FieldExpression;
+import org.codehaus.groovy.ast.expr.GStringExpression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.ast.expr.MapEntryExpression;
+import org.codehaus.groovy.ast.expr.MapExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.MethodPointerExpression;
+import org.codehaus.groovy.ast.expr.PostfixExpression;
+import org.codehaus.groovy.ast.expr.PrefixExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.RangeExpression;
+import org.codehaus.groovy.ast.expr.TernaryExpression;
+import org.codehaus.groovy.ast.expr.TupleExpression;
+import org.codehaus.groovy.ast.expr.UnaryMinusExpression;
+import org.codehaus.groovy.ast.expr.UnaryPlusExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+import org.codehaus.groovy.syntax.Types;
+import org.codehaus.groovy.transform.sc.ListOfExpressionsExpression;
+import org.codehaus.groovy.transform.sc.StaticCompilationMetadataKeys;
+import org.codehaus.groovy.transform.sc.StaticCompilationVisitor;
+import org.codehaus.groovy.transform.sc.TemporaryVariableExpression;
+import org.codehaus.groovy.transform.stc.ExtensionMethodNode;
+import org.codehaus.groovy.transform.stc.StaticTypesMarker;
+import org.kohsuke.groovy.sandbox.impl.Checker;
+
+/**
+ * Checks the code that {@link SandboxTransformer} left alone because it is compiled statically, once the static type
+ * checker has resolved everything it does, see {@link SandboxTransformer#enableStaticCompilation}.
+ *
+ * <p>
+ * Every method, constructor, and field that such code uses is resolved when it is compiled, so we ask the policy about
+ * each of them right away and fail the compilation if one is not allowed. Members of the classes being compiled are
+ * sandboxed code themselves, so we do not care about them. The few operations whose outcome still depends on the values
+ * at runtime, like casts, are intercepted as usual, and the rest, like method pointers, are rejected. So is any other
+ * operation that the static compiler did not resolve, unless we know that it cannot run anything but the Groovy runtime,
+ * like arithmetic on numbers.
+ */
+final class StaticCompilationVerifier extends CompilationCustomizer {
+    private final Predicate<Member> policy;
+
+    StaticCompilationVerifier(Predicate<Member> policy) {
+        super(CompilePhase.INSTRUCTION_SELECTION);
+        this.policy = policy;
+    }
+
+    /**
+     * Called by {@link SandboxTransformer} for the classes and methods that it leaves for us to check.
+     */
+    static void skip(AnnotatedNode node) {
+        node.putNodeMetaData(StaticCompilationVerifier.class, Boolean.TRUE);
+    }
+
+    private static boolean isSkipped(AnnotatedNode node) {
+        return node.getNodeMetaData(StaticCompilationVerifier.class) != null;
+    }
+
+    /**
+     * Returns true if the given class or method is annotated with {@code @CompileStatic}, or is part of one that is,
+     * unless it opts out with {@code @CompileDynamic}.
+     * This is what the static compiler will decide as well, which {@link #requireStatic} makes sure of later on.
+     */
+    static boolean isCompileStatic(AnnotatedNode node) {
+        for (AnnotatedNode n = node; n != null; n = enclosing(n)) {
+            forbidExtensions(n);
+        }
+        for (AnnotatedNode n = node; n != null; n = enclosing(n)) {
+            for (AnnotationNode a : n.getAnnotations()) {
+                if (a.getClassNode().getName().equals("groovy.transform.CompileStatic")) {
+                    // @CompileDynamic has already been replaced by @CompileStatic(TypeCheckingMode.SKIP) at this point
+                    return !isSkipMode(a.getMember("value"));
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the given value of {@code @CompileStatic} is {@code TypeCheckingMode.SKIP}, the way the static
+     * compiler decides it.
+     */
+    private static boolean isSkipMode(Expression mode) {
+        if (mode instanceof ConstantExpression) {
+            Object value = ((ConstantExpression) mode).getValue();
+            return value != null && value.toString().equals("SKIP");
+        } else if (mode instanceof PropertyExpression) {
+            return "SKIP".equals(((PropertyExpression) mode).getPropertyAsString());
+        }
+        return false;
+    }
+
+    /**
+     * Type checking extensions are scripts that the static compiler runs while it compiles the code, and they can
+     * change what it resolves, so we do not let sandboxed code ask for them.
+     */
+    static void forbidExtensions(AnnotatedNode node) {
+        for (AnnotationNode a : node.getAnnotations()) {
+            String name = a.getClassNode().getName();
+            if ((name.equals("groovy.transform.CompileStatic") || name.equals("groovy.transform.TypeChecked"))
+                    && a.getMember("extensions") != null) {
+                throw new SecurityException("Statically compiled sandboxed code may not use type checking extensions: " + node.getText());
+            }
+        }
+    }
+
+    private static AnnotatedNode enclosing(AnnotatedNode node) {
+        if (node instanceof MethodNode) {
+            return node.getDeclaringClass();
+        } else if (node instanceof InnerClassNode) {
+            MethodNode m = ((InnerClassNode) node).getEnclosingMethod();
+            return m != null ? m : ((InnerClassNode) node).getOuterClass();
+        }
+        return null;
+    }
+
+    @Override
+    public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+        VisitorImpl visitor = new VisitorImpl(source, classNode);
+        if (isSkipped(classNode)) {
+            requireStatic(classNode);
+            for (FieldNode f : classNode.getFields()) {
+                visitor.visitField(f);
+            }
+            for (Statement s : classNode.getObjectInitializerStatements()) {
+                s.visit(visitor);
+            }
+            for (ConstructorNode c : classNode.getDeclaredConstructors()) {
+                requireStatic(c);
+                visitor.visitConstructor(c);
+                if (!callsOtherConstructor(c)) {
+                    checkDefaultSuperConstructor(classNode);
+                }
+            }
+            if (classNode.getDeclaredConstructors().isEmpty() && !classNode.isInterface()) {
+                checkDefaultSuperConstructor(classNode);
+            }
+        }
+        for (MethodNode m : classNode.getMethods()) {
+            if (isSkipped(m)) {
+                requireStatic(m);
+                visitor.visitMethod(m);
+            }
+        }
+    }
+
+    /**
+     * Makes sure that the static compiler agreed with {@link #isCompileStatic} about code that we left alone.
+     */
+    private static void requireStatic(AnnotatedNode node) {
+        if (!StaticCompilationVisitor.isStaticallyCompiled(node)) {
+            throw new SecurityException("Sandboxed code that is not compiled statically must not be left unchecked: " + node.getText());
+        }
+    }
+
+    private static boolean callsOtherConstructor(ConstructorNode c) {
+        Statement code = c.getCode();
+        if (code instanceof BlockStatement && !((BlockStatement) code).getStatements().isEmpty()) {
+            code = ((BlockStatement) code).getStatements().get(0);
+        }
+        return code instanceof ExpressionStatement && ((ExpressionStatement) code).getExpression() instanceof ConstructorCallExpression
+                && ((ConstructorCallExpression) ((ExpressionStatement) code).getExpression()).isSpecialCall();
+    }
+
+    /**
+     * Checks the implicit {@code super()} call of a constructor.
+     */
+    private void checkDefaultSuperConstructor(ClassNode classNode) {
+        ClassNode superClass = classNode.getSuperClass();
+        if (superClass == null || superClass.equals(ClassHelper.OBJECT_TYPE) || isOwnCode(superClass)) {
+            return;
+        }
+        Class<?> c = classOf(superClass);
+        Member m = null;
+        try {
+            m = c == null ? null : c.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            // reported below
+        }
+        check(m, "new " + superClass.getName() + "()");
+    }
+
+    private void check(Member m, String description) {
+        if (m == null || !policy.test(m)) {
+            throw new SecurityException("Statically compiled sandboxed code may not use " + (m != null ? m : description));
+        }
+    }
+
+    /**
+     * Returns true if the given class is compiled along with the code we check, which means that it is sandboxed as well.
+     */
+    private static boolean isOwnCode(ClassNode type) {
+        return type.redirect().isPrimaryClassNode();
+    }
+
+    /**
+     * Returns the class of the given type if we can load it, or else null.
+     */
+    private static Class<?> classOf(ClassNode type) {
+        ClassNode t = type.redirect();
+        return t.isResolved() ? t.getTypeClass() : null;
+    }
+
+    private static ClassNode inferredTypeOf(Expression exp) {
+        ClassNode type = exp.getNodeMetaData(StaticTypesMarker.INFERRED_TYPE);
+        return type != null ? type : exp.getType();
+    }
+
+    /**
+     * Returns the method or constructor the static compiler resolved an expression to, or null if there is none.
+     */
+    private static MethodNode targetOf(Expression exp) {
+        MethodNode target = exp.getNodeMetaData(StaticTypesMarker.DIRECT_METHOD_CALL_TARGET);
+        if (target == null && exp instanceof MethodCallExpression) {
+            target = ((MethodCallExpression) exp).getMethodTarget();
+        }
+        if (target == null) {
+            Object binary = exp.getNodeMetaData(StaticCompilationMetadataKeys.BINARY_EXP_TARGET);
+            if (binary instanceof Object[] && ((Object[]) binary).length > 0 && ((Object[]) binary)[0] instanceof MethodNode) {
+                target = (MethodNode) ((Object[]) binary)[0];
+            }
+        }
+        return target;
+    }
+
+    private void checkMethod(MethodNode target) {
+        if (target instanceof ExtensionMethodNode) {
+            // like DefaultGroovyMethods.each(Object, Closure) for list.each { }
+            target = ((ExtensionMethodNode) target).getExtensionMethodNode();
+        }
+        ClassNode owner = target.getDeclaringClass();
+        if (isOwnCode(owner)) {
+            return;
+        }
+        check(memberOf(target), owner.getName() + "." + target.getName());
+    }
+
+    /**
+     * Returns the reflective counterpart of a method or constructor of a class that we can load, or null.
+     */
+    private static Member memberOf(MethodNode target) {
+        Class<?> owner = classOf(target.getDeclaringClass());
+        if (owner == null) {
+            return null;
+        }
+        Parameter[] params = target.getParameters();
+        Member found = null;
+        for (Member m : target instanceof ConstructorNode ? owner.getDeclaredConstructors() : owner.getDeclaredMethods()) {
+            Class<?>[] types = m instanceof Method ? ((Method) m).getParameterTypes() : ((Constructor<?>) m).getParameterTypes();
+            if ((m instanceof Constructor || m.getName().equals(target.getName())) && types.length == params.length
+                    && !(m instanceof Method && ((Method) m).isBridge())) {
+                boolean matches = true;
+                for (int i = 0; i < types.length && matches; i++) {
+                    // generic parameters may not be resolved, in which case any type will do
+                    Class<?> type = classOf(params[i].getType());
+                    matches = type == null || type == types[i];
+                }
+                if (matches) {
+                    if (found != null) {
+                        return null; // ambiguous
+                    }
+                    found = m;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks {@code receiver.name} or {@code receiver.name = value} where the receiver is of the given type.
+     */
+    private void checkProperty(ClassNode type, String name, boolean isStatic, boolean set) {
+        for (ClassNode c = type.redirect(); c != null; c = c.getSuperClass()) {
+            if (!isOwnCode(c)) {
+                Class<?> k = classOf(c);
+                Member m = k == null ? null : propertyMember(k, name, isStatic, set);
+                if (m == null && isStatic) {
+                    // like String.name, which is Class.getName()
+                    m = propertyMember(Class.class, name, false, set);
+                }
+                if (m == null && k != null && k.isArray() && name.equals("length") && !set) {
+                    return;
+                }
+                check(m, c.getName() + "." + name);
+                return;
+            }
+            String suffix = capitalize(name);
+            if (c.getProperty(name) != null || c.getField(name) != null
+                    || !c.getMethods((set ? "set" : "get") + suffix).isEmpty() || (!set && !c.getMethods("is" + suffix).isEmpty())) {
+                return;
+            }
+        }
+        check(null, type.getName() + "." + name);
+    }
+
+    /**
+     * Returns what {@code receiver.name} stands for on an instance of the given class, or on the class itself.
+     */
+    private static Member propertyMember(Class<?> k, String name, boolean isStatic, boolean set) {
+        if (!isStatic && Map.class.isAssignableFrom(k)) {
+            try {
+                return set ? Map.class.getMethod("put", Object.class, Object.class) : Map.class.getMethod("get", Object.class);
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+        }
+        String suffix = capitalize(name);
+        for (Method m : k.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers()) == isStatic && (set
+                    ? m.getName().equals("set" + suffix) && m.getParameterCount() == 1
+                    : m.getParameterCount() == 0 && (m.getName().equals("get" + suffix)
+                            || (m.getName().equals("is" + suffix) && m.getReturnType() == boolean.class)))) {
+                return m;
+            }
+        }
+        return fieldOf(k, name, isStatic);
+    }
+
+    /**
+     * Turns a property name into the suffix of its accessors, like Groovy does, so {@code aName} stays as it is.
+     */
+    private static String capitalize(String name) {
+        if (name.isEmpty() || (name.length() > 1 && Character.isLowerCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1)))) {
+            return name;
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Field fieldOf(Class<?> k, String name, boolean isStatic) {
+        for (Class<?> c = k; c != null; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (f.getName().equals(name) && Modifier.isStatic(f.getModifiers()) == isStatic) {
+                    return f;
+                }
+            }
+        }
+        return null;
+    }
+
+    private final class VisitorImpl extends ClassCodeExpressionTransformer {
+        private final SourceUnit source;
+        private final ClassNode classNode;
+
+        VisitorImpl(SourceUnit source, ClassNode classNode) {
+            this.source = source;
+            this.classNode = classNode;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return source;
+        }
+
+        @Override
+        public Expression transform(Expression exp) {
+            if (exp == null) {
+                return null;
+            }
+            if (exp.getNodeMetaData(StaticTypesMarker.DYNAMIC_RESOLUTION) != null) {
+                throw new SecurityException("Statically compiled sandboxed code may not make dynamic calls: " + exp.getText());
+            } else if (exp instanceof MethodPointerExpression) {
+                throw new SecurityException("Statically compiled sandboxed code may not use method pointers: " + exp.getText());
+            }
+            MethodNode target = targetOf(exp);
+            if (target != null) {
+                checkMethod(target);
+            } else if (!isSafeWithoutTarget(exp)) {
+                throw new SecurityException("Statically compiled sandboxed code may only use operations that are resolved when it is compiled: " + exp.getText());
+            }
+
+            if (exp instanceof ClosureExpression) {
+                // ClosureExpression.transformExpression doesn't visit the code inside
+                ((ClosureExpression) exp).getCode().visit(this);
+                return exp;
+            } else if (exp instanceof CastExpression) {
+                return transformCast((CastExpression) exp);
+            } else if (exp instanceof RangeExpression) {
+                RangeExpression re = (RangeExpression) exp;
+                // ObjectRange calls compareTo, next, and previous on other endpoints, see Checker.checkedCreateRange
+                if (!isPlainRangeEndpoint(re.getFrom()) || !isPlainRangeEndpoint(re.getTo())) {
+                    throw new SecurityException("Statically compiled sandboxed code may only create ranges of numbers, characters, and strings: " + exp.getText());
+                }
+            } else if (exp instanceof BinaryExpression && Types.ofType(((BinaryExpression) exp).getOperation().getType(), Types.ASSIGNMENT_OPERATOR)) {
+                BinaryExpression be = (BinaryExpression) exp;
+                checkStore(be.getLeftExpression(), be.getOperation().getType() != Types.ASSIGN);
+            } else if (exp instanceof PrefixExpression) {
+                checkStore(((PrefixExpression) exp).getExpression(), true);
+            } else if (exp instanceof PostfixExpression) {
+                checkStore(((PostfixExpression) exp).getExpression(), true);
+            } else {
+                checkLoad(exp);
+            }
+            return super.transform(exp);
+        }
+
+        /**
+         * Returns true if an expression that the static compiler did not resolve to a method cannot run anything but
+         * the Groovy runtime and the classes being compiled, once its parts are checked.
+         * The static compiler leaves some operators, like {@code list[0]} or {@code -x}, to be looked up when the
+         * bytecode is generated, so unless we know the operands, we have to assume the worst.
+         * Kinds of expressions that are not listed here are rejected, like {@link MethodCallExpression},
+         * {@link ConstructorCallExpression}, {@link org.codehaus.groovy.ast.expr.StaticMethodCallExpression}, or
+         * {@link org.codehaus.groovy.ast.expr.SpreadExpression}.
+         */
+        private boolean isSafeWithoutTarget(Expression exp) {
+            if (exp instanceof BinaryExpression) {
+                return isSafeWithoutTarget((BinaryExpression) exp);
+            } else if (exp instanceof PrefixExpression) {
+                return isPlainNumber(((PrefixExpression) exp).getExpression());
+            } else if (exp instanceof PostfixExpression) {
+                return isPlainNumber(((PostfixExpression) exp).getExpression());
+            } else if (exp instanceof UnaryMinusExpression) {
+                return isPlainNumber(((UnaryMinusExpression) exp).getExpression());
+            } else if (exp instanceof UnaryPlusExpression) {
+                return isPlainNumber(((UnaryPlusExpression) exp).getExpression());
+            } else if (exp instanceof BitwiseNegationExpression) {
+                Expression operand = ((BitwiseNegationExpression) exp).getExpression();
+                return isPlainNumber(operand) || inferredTypeOf(operand).equals(ClassHelper.STRING_TYPE);
+            }
+            // checked below, or only made of parts that are
+            return exp instanceof ConstantExpression || exp instanceof ClassExpression || exp instanceof VariableExpression
+                    || exp instanceof PropertyExpression || exp instanceof FieldExpression || exp instanceof ClosureExpression
+                    || exp instanceof CastExpression || exp instanceof RangeExpression || exp instanceof ArrayExpression
+                    || exp instanceof ListExpression || exp instanceof MapExpression || exp instanceof MapEntryExpression
+                    || exp instanceof TupleExpression || exp instanceof GStringExpression || exp instanceof BooleanExpression
+                    || exp instanceof TernaryExpression || exp instanceof EmptyExpression
+                    || exp instanceof ListOfExpressionsExpression || exp instanceof TemporaryVariableExpression;
+        }
+
+        private boolean isSafeWithoutTarget(BinaryExpression be) {
+            Expression left = be.getLeftExpression();
+            Expression right = be.getRightExpression();
+            switch (be.getOperation().getType()) {
+                case Types.ASSIGN:
+                    // def (a, b) = list reads the elements with getAt unless they are listed right there
+                    return !(left instanceof TupleExpression) || right instanceof ListExpression;
+                case Types.LOGICAL_AND:
+                case Types.LOGICAL_OR:
+                case Types.KEYWORD_INSTANCEOF:
+                    return true;
+                case Types.KEYWORD_IN:
+                    return false;
+                case Types.LEFT_SQUARE_BRACKET:
+                    // anything but an index into an array is a call to getAt or putAt
+                    return inferredTypeOf(left).isArray() && isPlainNumber(right);
+                case Types.COMPARE_EQUAL:
+                case Types.COMPARE_NOT_EQUAL:
+                    if (isNull(left) || isNull(right)) {
+                        return true;
+                    }
+                    return isPlain(left) && isPlain(right);
+                default:
+                    // arithmetic, comparisons, and compound assignments, which call equals, compareTo, plus, and so on
+                    return isPlain(left) && isPlain(right);
+            }
+        }
+
+        /**
+         * Checks an expression that is read.
+         */
+        private void checkLoad(Expression exp) {
+            if (exp instanceof PropertyExpression) {
+                checkPropertyExpression((PropertyExpression) exp, false);
+            } else if (exp instanceof VariableExpression) {
+                checkVariable((VariableExpression) exp, false);
+            } else if (exp instanceof FieldExpression) {
+                checkField(((FieldExpression) exp).getField());
+            }
+        }
+
+        /**
+         * Checks an expression that is assigned, and also read if this is a compound assignment.
+         * The expression is still visited as a whole afterwards, which only checks its parts for property expressions.
+         */
+        private void checkStore(Expression exp, boolean read) {
+            if (exp instanceof PropertyExpression) {
+                checkPropertyExpression((PropertyExpression) exp, true);
+                if (read) {
+                    checkPropertyExpression((PropertyExpression) exp, false);
+                }
+            } else if (exp instanceof VariableExpression) {
+                checkVariable((VariableExpression) exp, true);
+                if (read) {
+                    checkVariable((VariableExpression) exp, false);
+                }
+            } else if (exp instanceof FieldExpression) {
+                checkField(((FieldExpression) exp).getField());
+            }
+        }
+
+        private void checkPropertyExpression(PropertyExpression pe, boolean set) {
+            String name = pe.getPropertyAsString();
+            if (name == null || pe.isSpreadSafe()) {
+                throw new SecurityException("Statically compiled sandboxed code may only access properties that are known when it is compiled: " + pe.getText());
+            }
+            Expression receiver = pe.getObjectExpression();
+            if (receiver instanceof VariableExpression && ((VariableExpression) receiver).isThisExpression()) {
+                checkProperty(classNode, name, false, set);
+                return;
+            }
+            boolean isStatic = receiver instanceof ClassExpression;
+            ClassNode type = isStatic ? receiver.getType() : inferredTypeOf(receiver);
+            if (pe instanceof AttributeExpression) {
+                if (!isOwnCode(type)) {
+                    Class<?> k = classOf(type);
+                    check(k == null ? null : fieldOf(k, name, isStatic), type.getName() + ".@" + name);
+                }
+            } else {
+                checkProperty(type, name, isStatic, set);
+            }
+        }
+
+        private void checkVariable(VariableExpression ve, boolean set) {
+            Variable v = ve.getAccessedVariable();
+            if (v instanceof FieldNode) {
+                checkField((FieldNode) v);
+            } else if (v instanceof PropertyNode) {
+                ClassNode owner = ((PropertyNode) v).getDeclaringClass();
+                if (!isOwnCode(owner)) {
+                    checkProperty(owner, v.getName(), ((PropertyNode) v).isStatic(), set);
+                }
+            } else if (v instanceof DynamicVariable) {
+                checkProperty(classNode, v.getName(), false, set);
+            }
+        }
+
+        private void checkField(FieldNode f) {
+            ClassNode owner = f.getOwner();
+            if (!isOwnCode(owner)) {
+                Class<?> k = classOf(owner);
+                check(k == null ? null : fieldOf(k, f.getName(), f.isStatic()), owner.getName() + "." + f.getName());
+            }
+        }
+
+        private boolean isPlainRangeEndpoint(Expression exp) {
+            return isPlainNumber(exp) || inferredTypeOf(exp).equals(ClassHelper.STRING_TYPE);
+        }
+
+        /**
+         * Returns true if the given expression is a primitive, a character, or a number whose operators are implemented
+         * by the Groovy runtime.
+         */
+        private boolean isPlainNumber(Expression exp) {
+            ClassNode type = ClassHelper.getWrapper(inferredTypeOf(exp));
+            return type.equals(ClassHelper.Character_TYPE) || ClassHelper.isNumberType(type)
+                    || type.equals(ClassHelper.BigDecimal_TYPE) || type.equals(ClassHelper.BigInteger_TYPE);
+        }
+
+        /**
+         * Returns true if the given expression is a {@link #isPlainNumber}, a boolean, or a string.
+         */
+        private boolean isPlain(Expression exp) {
+            ClassNode type = ClassHelper.getWrapper(inferredTypeOf(exp));
+            return isPlainNumber(exp) || type.equals(ClassHelper.Boolean_TYPE) || type.equals(ClassHelper.STRING_TYPE);
+        }
+
+        private boolean isNull(Expression exp) {
+            return exp instanceof ConstantExpression && ((ConstantExpression) exp).isNullExpression();
+        }
+
+        /**
+         * Casts may run arbitrary constructors or methods depending on the value, so unless the value is known to be
+         * of a suitable type, we have {@link Checker#checkedCast} convert it first, just like for dynamic code.
+         */
+        private Expression transformCast(CastExpression ce) {
+            Expression value = transform(ce.getExpression());
+            Expression converted = value;
+            if (!SandboxTransformer.isKnownSafeCast(ce.getType(), inferredTypeOf(value))
+                    && !(value instanceof ConstantExpression && ((ConstantExpression) value).isNullExpression())) {
+                MethodNode checkedCast = null;
+                for (MethodNode m : SandboxTransformer.checkerClass.getDeclaredMethods("checkedCast")) {
+                    if (m.getParameters().length == 6) {
+                        checkedCast = m;
+                    }
+                }
+                MethodCallExpression call = new MethodCallExpression(new ClassExpression(SandboxTransformer.checkerClass), "checkedCast",
+                        new ArgumentListExpression(new Expression[] {
+                                new ClassExpression(classNode),
+                                new ClassExpression(ce.getType()),
+                                value,
+                                boolExp(ce.isIgnoringAutoboxing()),
+                                boolExp(ce.isCoerce()),
+                                boolExp(ce.isStrict())}));
+                call.setImplicitThis(false);
+                call.setMethodTarget(checkedCast);
+                call.putNodeMetaData(StaticTypesMarker.DIRECT_METHOD_CALL_TARGET, checkedCast);
+                call.putNodeMetaData(StaticTypesMarker.INFERRED_TYPE, ClassHelper.OBJECT_TYPE);
+                call.setSourcePosition(ce);
+                converted = call;
+            }
+            // the cast that remains only ever sees a value of the right type, or one that Checker.checkedCast let through
+            CastExpression result = new CastExpression(ce.getType(), converted, ce.isIgnoringAutoboxing());
+            result.setCoerce(converted == value && ce.isCoerce());
+            result.setStrict(ce.isStrict());
+            result.setSourcePosition(ce);
+            result.copyNodeMetaData(ce);
+            return result;
+        }
+
+        private ConstantExpression boolExp(boolean v) {
+            return v ? ConstantExpression.PRIM_TRUE : ConstantExpression.PRIM_FALSE;
+        }
+    }
+}
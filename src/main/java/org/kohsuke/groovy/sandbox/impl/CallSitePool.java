@@ -0,0 +1,142 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.GroovySystem;
+import groovy.lang.MetaClass;
+import groovy.lang.MetaClassRegistryChangeEvent;
+import groovy.lang.MetaClassRegistryChangeEventListener;
+import org.codehaus.groovy.runtime.NullObject;
+import org.codehaus.groovy.runtime.callsite.CallSite;
+import org.codehaus.groovy.runtime.callsite.CallSiteArray;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared pool of {@link CallSite}s that {@link Checker} uses to perform an operation once the interceptors let it through.
+ *
+ * <p>
+ * Groovyc produces one {@link CallSite} per call site in the compiled class, and Groovy replaces each of them
+ * with a version specialized for the receiver it sees, so that repeated calls skip method selection.
+ * Since the sandbox routes everything through {@link Checker}, we cannot get at those call sites, so instead
+ * we keep one {@link CallSiteArray} per receiver class and member name, and always dispatch through
+ * {@code array[0]} so that Groovy's specialization sticks.
+ *
+ * <p>
+ * The call sites Groovy installs verify the metaclass of the receiver on every call, but we still drop the
+ * whole pool whenever a {@link MetaClass} is replaced in the registry so that we do not hang on to call sites
+ * specialized against metaclasses that are no longer in use.
+ */
+final class CallSitePool {
+    private CallSitePool() {}
+
+    /**
+     * Method names come from the script and can be computed (think {@code foo."bar$i"()}), so we stop
+     * pooling call sites for a class once it has this many, rather than letting the pool grow without bounds.
+     */
+    private static final int MAX_SITES_PER_CLASS = 256;
+
+    /**
+     * Incremented every time a {@link MetaClass} is replaced, which invalidates all the {@link Sites} created before.
+     */
+    private static volatile int generation;
+
+    static {
+        GroovySystem.getMetaClassRegistry().addNonRemovableMetaClassRegistryChangeEventListener(new MetaClassRegistryChangeEventListener() {
+            @Override
+            public void updateConstantMetaClass(MetaClassRegistryChangeEvent e) {
+                if (!e.isPerInstanceMetaClassChange()) {
+                    generation++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Call sites for one receiver class.
+     */
+    private static final class Sites {
+        final int generation;
+        final ConcurrentMap<String, CallSiteArray> calls = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, CallSiteArray> staticCalls = new ConcurrentHashMap<>();
+        final CallSiteArray constructor = newArray("<init>");
+
+        Sites(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    private static final ClassValue<Sites> SITES = new ClassValue<Sites>() {
+        @Override
+        protected Sites computeValue(Class<?> type) {
+            return new Sites(generation);
+        }
+    };
+
+    /**
+     * Call site for an instance method call, like {@code receiver.method(...)}.
+     * This is also used for {@code getAt}/{@code putAt}.
+     */
+    static CallSite call(Object receiver, String method) {
+        return site(sitesOf(typeOf(receiver)).calls, method);
+    }
+
+    /**
+     * Call site for a static method call, like {@code Receiver.method(...)}.
+     */
+    static CallSite callStatic(Class<?> receiver, String method) {
+        return site(sitesOf(receiver).staticCalls, method);
+    }
+
+    /**
+     * Call site for an object instantiation, like {@code new Type(...)}.
+     */
+    static CallSite callConstructor(Class<?> type) {
+        return sitesOf(type).constructor.array[0];
+    }
+
+    /**
+     * Changes whenever a {@link MetaClass} is replaced. Other caches of call sites can compare this to drop theirs.
+     */
+    static int generation() {
+        return generation;
+    }
+
+    /**
+     * Key under which call sites for the given receiver are pooled.
+     */
+    static Class<?> typeOf(Object receiver) {
+        if (receiver == null) {
+            return NullObject.class;
+        } else if (receiver instanceof Class) {
+            // Groovy specializes these to the Class object itself, not to java.lang.Class
+            return (Class<?>) receiver;
+        } else {
+            return receiver.getClass();
+        }
+    }
+
+    private static Sites sitesOf(Class<?> type) {
+        Sites s = SITES.get(type);
+        if (s.generation != generation) {
+            SITES.remove(type);
+            s = SITES.get(type);
+        }
+        return s;
+    }
+
+    private static CallSite site(ConcurrentMap<String, CallSiteArray> sites, String name) {
+        CallSiteArray csa = sites.get(name);
+        if (csa == null) {
+            if (sites.size() >= MAX_SITES_PER_CLASS) {
+                return newArray(name).array[0];
+            }
+            csa = sites.computeIfAbsent(name, CallSitePool::newArray);
+        }
+        // Groovy replaces array[0] with a specialized call site on the first call, so always read it from the array.
+        return csa.array[0];
+    }
+
+    static CallSiteArray newArray(String name) {
+        return new CallSiteArray(Checker.class, new String[] {name});
+    }
+}
@@ -0,0 +1,117 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.Closure;
+
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Remembers what {@link Checker#checkedCast} has to do to cast a value of one class to another, so that the casts
+ * that scripts make all the time, like those of return values, do not go through {@link Checker#preCheckedCast}
+ * and allocate a {@link Checker.Thunk} every time.
+ *
+ * <p>
+ * What we know about a target class is computed once. On top of that, each target class remembers the last source
+ * class it saw, which is all that most casts in a script ever see. This keeps at most one source class per target
+ * class from being unloaded.
+ */
+final class CastCache {
+    private CastCache() {}
+
+    /**
+     * What casting a value takes.
+     */
+    enum Action {
+        /**
+         * The value is returned as is.
+         */
+        RETURN,
+        /**
+         * The value is converted by Groovy without asking interceptors about anything.
+         */
+        CONVERT,
+        /**
+         * Interceptors need to be asked, by {@link Checker#preCheckedCast}.
+         */
+        CHECK
+    }
+
+    private static final class Last {
+        final Class<?> source;
+        final Action action;
+
+        Last(Class<?> source, Action action) {
+            this.source = source;
+            this.action = action;
+        }
+    }
+
+    /**
+     * What we know about one target class, following the cases of {@link Checker#preCheckedCast}.
+     */
+    private static final class Target {
+        final Class<?> type;
+        /**
+         * Collections of {@code java.util} are converted by {@code DefaultGroovyMethods.asType(Collection, Class)}.
+         */
+        final boolean isJavaUtilCollection;
+        final boolean isInterface;
+        final boolean isProxyable;
+        final boolean isBoolean;
+        final boolean isPrimitiveOrString;
+        /**
+         * Racing threads may overwrite each other's entry, but any entry is correct.
+         */
+        volatile Last last;
+
+        Target(Class<?> type) {
+            this.type = type;
+            int modifiers = type.getModifiers();
+            this.isJavaUtilCollection = Collection.class.isAssignableFrom(type) && type.getPackage().getName().equals("java.util");
+            this.isInterface = type.isInterface();
+            this.isProxyable = Modifier.isAbstract(modifiers) && !Modifier.isFinal(modifiers);
+            this.isBoolean = type == boolean.class || type == Boolean.class;
+            this.isPrimitiveOrString = Checker.unbox(type).isPrimitive() || type == String.class;
+        }
+
+        Action of(Class<?> source) {
+            Last l = last;
+            if (l != null && l.source == source) {
+                return l.action;
+            }
+            Action a = compute(source);
+            last = new Last(source, a);
+            return a;
+        }
+
+        private Action compute(Class<?> source) {
+            if (isJavaUtilCollection) {
+                return Action.CONVERT;
+            } else if (type.isAssignableFrom(source)) {
+                return Action.RETURN;
+            } else if (isInterface || (isProxyable && (Closure.class.isAssignableFrom(source) || Map.class.isAssignableFrom(source)))) {
+                return Action.CHECK;
+            } else if (isBoolean) {
+                return source == Boolean.class ? Action.CONVERT : Action.CHECK;
+            } else if (isPrimitiveOrString) {
+                return Action.CONVERT;
+            }
+            return Action.CHECK;
+        }
+    }
+
+    private static final ClassValue<Target> TARGETS = new ClassValue<Target>() {
+        @Override
+        protected Target computeValue(Class<?> type) {
+            return new Target(type);
+        }
+    };
+
+    /**
+     * Returns what casting a non-null value of the given class to the given type takes.
+     */
+    static Action of(Class<?> type, Class<?> source) {
+        return TARGETS.get(type).of(source);
+    }
+}
@@ -0,0 +1,145 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.runtime.ScriptBytecodeAdapter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sandbox-aware replacements for static methods, which {@link Checker} calls instead of the originals when
+ * sandboxed code calls them.
+ *
+ * <p>
+ * Groovy uses runtime APIs (e.g. {@link ScriptBytecodeAdapter}) to support various standard language features
+ * such as unary operators. Some of these APIs invoke methods reflectively based on the runtime types of arguments,
+ * which the sandbox does not see and so it cannot intercept those calls. We define sandbox-aware replacements for
+ * these methods so that these reflective calls can be intercepted.
+ * <p>When using groovy-sandbox through script-security without groovy-cps, these replacements only take effect if
+ * a script directly calls one of the original methods. When using groovy-cps, these replacements also take effect
+ * when their corresponding AST nodes (e.g. unary operators) are used.
+ *
+ * <p>
+ * Libraries that expose similar APIs to scripts can {@linkplain #register register} their own replacements.
+ * The table is rebuilt on every registration, so that looking a method up never locks or allocates.
+ */
+public final class CheckedReplacements {
+    private CheckedReplacements() {}
+
+    /**
+     * One replacement, adapted to take the owner and the arguments of the original method as an array.
+     */
+    static final class Replacement {
+        /**
+         * Parameter types of the replacement after the owner, boxed so that we can check arguments with {@link Class#isInstance}.
+         */
+        private final Class<?>[] parameterTypes;
+        /**
+         * Whether each parameter is primitive, and thus cannot take null.
+         */
+        private final boolean[] primitive;
+        private final MethodHandle handle;
+
+        Replacement(MethodHandle replacement) {
+            MethodType type = replacement.type().dropParameterTypes(0, 1);
+            this.parameterTypes = type.wrap().parameterArray();
+            this.primitive = new boolean[parameterTypes.length];
+            for (int i = 0; i < primitive.length; i++) {
+                primitive[i] = type.parameterType(i).isPrimitive();
+            }
+            this.handle = replacement.asFixedArity()
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Class.class, Object[].class));
+        }
+
+        /**
+         * Returns true if the replacement can be called with the given arguments of the original method.
+         */
+        boolean accepts(Object[] args) {
+            if (args.length != parameterTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                Object arg = args[i];
+                if (arg == null ? primitive[i] : !parameterTypes[i].isInstance(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Object call(Class<?> owner, Object[] args) throws Throwable {
+            return (Object) handle.invokeExact(owner, args);
+        }
+    }
+
+    /**
+     * Replacements by class and method name. Never modified once published.
+     */
+    private static volatile Map<Class<?>, Map<String, Replacement[]>> table = new HashMap<>();
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            register(InvokerHelper.class, "bitwiseNegate", lookup.findStatic(Checker.class, "checkedBitwiseNegate", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(InvokerHelper.class, "unaryMinus", lookup.findStatic(Checker.class, "checkedUnaryMinus", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(InvokerHelper.class, "unaryPlus", lookup.findStatic(Checker.class, "checkedUnaryPlus", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(ScriptBytecodeAdapter.class, "bitwiseNegate", lookup.findStatic(Checker.class, "checkedBitwiseNegate", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(ScriptBytecodeAdapter.class, "unaryMinus", lookup.findStatic(Checker.class, "checkedUnaryMinus", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(ScriptBytecodeAdapter.class, "unaryPlus", lookup.findStatic(Checker.class, "checkedUnaryPlus", MethodType.methodType(Object.class, Class.class, Object.class)));
+            register(ScriptBytecodeAdapter.class, "createRange", lookup.findStatic(Checker.class, "checkedCreateRange", MethodType.methodType(Object.class, Class.class, Object.class, Object.class, boolean.class)));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new AssertionError(e); // Developer error.
+        }
+    }
+
+    /**
+     * Makes sandboxed code that calls the given static method call the given replacement instead.
+     * The replacement should perform the same operation, but through {@link Checker} where it would otherwise
+     * bypass the sandbox.
+     *
+     * @param replacement
+     *      Takes the class of the calling code (see {@link Checker}) followed by the arguments of the original method.
+     *      It is only used for calls whose arguments are all instances of its parameter types (after boxing),
+     *      so several replacements may be registered for overloads of the same method.
+     */
+    public static synchronized void register(Class<?> clazz, String method, MethodHandle replacement) {
+        MethodType type = replacement.type();
+        if (type.parameterCount() == 0 || type.parameterType(0) != Class.class) {
+            throw new IllegalArgumentException("The first parameter of a replacement must be the class of the calling code: " + replacement);
+        }
+        Map<Class<?>, Map<String, Replacement[]>> updated = new HashMap<>(table);
+        Map<String, Replacement[]> methods = new HashMap<>(updated.getOrDefault(clazz, new HashMap<>()));
+        Replacement[] replacements = methods.getOrDefault(method, new Replacement[0]);
+        replacements = Arrays.copyOf(replacements, replacements.length + 1);
+        replacements[replacements.length - 1] = new Replacement(replacement);
+        methods.put(method, replacements);
+        updated.put(clazz, methods);
+        table = updated;
+    }
+
+    /**
+     * Returns the replacement to call instead of the given static method with the given arguments, or null if there
+     * is none.
+     */
+    static Replacement find(Class<?> clazz, String method, Object[] args) {
+        Map<String, Replacement[]> methods = table.get(clazz);
+        if (methods == null) {
+            return null;
+        }
+        Replacement[] replacements = methods.get(method);
+        if (replacements == null) {
+            return null;
+        }
+        for (Replacement r : replacements) {
+            if (r.accepts(args)) {
+                return r;
+            }
+        }
+        return null;
+    }
+}
@@ -16,8 +16,6 @@ import java.io.File;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -29,13 +27,19 @@ import org.codehaus.groovy.runtime.MetaClassHelper;
 import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 import org.codehaus.groovy.runtime.ScriptBytecodeAdapter;
 import org.codehaus.groovy.runtime.StringGroovyMethods;
-import org.codehaus.groovy.runtime.callsite.CallSite;
-import org.codehaus.groovy.runtime.callsite.CallSiteArray;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
 import org.codehaus.groovy.syntax.Types;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Event;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Target;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.kohsuke.groovy.sandbox.impl.InvokerChain.Kind;
 
-import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -49,29 +53,103 @@ import static org.kohsuke.groovy.sandbox.impl.ClosureSupport.BUILTIN_PROPERTIES;
 /**
  * Intercepted Groovy script calls into this class.
  *
+ * <p>
+ * Most methods come in two flavors. {@link SandboxTransformer} emits calls to the one whose first parameter is the
+ * class that contains the call ({@code owner}), which decides which interceptors apply, see
+ * {@link org.kohsuke.groovy.sandbox.SandboxContext}. The other one uses the interceptors of the current thread,
+ * and is kept for code that was compiled earlier or that calls this class directly.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class Checker {
     private static final Object[] EMPTY_ARRAY = new Object[0];
 
-    /*TODO: specify the proper owner value*/
-    private static CallSite fakeCallSite(String method) {
-        CallSiteArray csa = new CallSiteArray(Checker.class, new String[]{method});
-        return csa.array[0];
+
+    public static Object checkedCall(Object _receiver, boolean safe, boolean spread, String _method, Object[] _args) throws Throwable {
+        return checkedCall(null, null, _receiver, safe, spread, _method, _args);
+    }
+
+    /**
+     * Same as {@link #checkedCall(Object, boolean, boolean, String, Object[])}, for the given call site of the given class.
+     *
+     * @param owner
+     *      Class that contains the call site.
+     * @param site
+     *      Number that {@link SandboxTransformer} assigned to the call site, unique within {@code owner},
+     *      or -1 if there is no such site.
+     */
+    public static Object checkedCall(Class<?> owner, int site, Object _receiver, boolean safe, boolean spread, String _method, Object[] _args) throws Throwable {
+        return checkedCall(owner, InlineCache.of(owner, site, CALL, CALL_SITE), _receiver, safe, spread, _method, _args);
     }
 
+    /*
+        Most calls have no more than two arguments and are neither safe nor spread, so SandboxTransformer calls these
+        instead of the above, which spares the script building an array out of a list for every call.
+     */
+
+    public static Object checkedCall0(Class<?> owner, int site, Object _receiver, String _method) throws Throwable {
+        return checkedCall(owner, InlineCache.of(owner, site, CALL, CALL_SITE), _receiver, false, false, _method, EMPTY_ARRAY);
+    }
 
-    // TODO: we need an owner class
-    public static Object checkedCall(Object _receiver, boolean safe, boolean spread, String _method, Object[] _args) throws Throwable {
+    public static Object checkedCall1(Class<?> owner, int site, Object _receiver, String _method, Object arg1) throws Throwable {
+        return checkedCall(owner, InlineCache.of(owner, site, CALL, CALL_SITE), _receiver, false, false, _method, new Object[] {arg1});
+    }
+
+    public static Object checkedCall2(Class<?> owner, int site, Object _receiver, String _method, Object arg1, Object arg2) throws Throwable {
+        return checkedCall(owner, InlineCache.of(owner, site, CALL, CALL_SITE), _receiver, false, false, _method, new Object[] {arg1, arg2});
+    }
+
+    /*
+        Same for "receiver?.method(...)".
+     */
+
+    public static Object checkedSafeCall0(Class<?> owner, int site, Object _receiver, String _method) throws Throwable {
+        return _receiver == null ? null : checkedCall0(owner, site, _receiver, _method);
+    }
+
+    public static Object checkedSafeCall1(Class<?> owner, int site, Object _receiver, String _method, Object arg1) throws Throwable {
+        return _receiver == null ? null : checkedCall1(owner, site, _receiver, _method, arg1);
+    }
+
+    public static Object checkedSafeCall2(Class<?> owner, int site, Object _receiver, String _method, Object arg1, Object arg2) throws Throwable {
+        return _receiver == null ? null : checkedCall2(owner, site, _receiver, _method, arg1, arg2);
+    }
+
+    private static Object checkedCall(Class<?> owner, InlineCache cache, Object _receiver, boolean safe, boolean spread, String _method, Object[] _args) throws Throwable {
         if (safe && _receiver==null)     return null;
         _args = fixNull(_args);
         if (spread) {
-            List<Object> r = new ArrayList<Object>();
+            List<Object> r = spreadResults(_receiver);
             Iterator itr = InvokerHelper.asIterator(_receiver);
+            // elements of the last class that needs no special treatment below go straight to the chain
+            Class<?> plain = null;
+            InvokerChain chain = null;
+            // the chain, or its end once the interceptors are known to let elements of the plain class through
+            InvokerChain target = null;
+            boolean decided = false;
             while (itr.hasNext()) {
                 Object it = itr.next();
-                if (it!=null)
-                    r.add(checkedCall(it, true, false, _method, _args));
+                if (it==null) {
+                    r.add(null); // Groovy keeps null elements in spreads
+                    continue;
+                }
+                if (it.getClass() != plain) {
+                    if (it instanceof Class || it instanceof Closure) {
+                        r.add(checkedCall(owner, cache, it, true, false, _method, _args));
+                        continue;
+                    }
+                    if (chain == null)
+                        chain = chain(owner, cache, it, CALL);
+                    plain = it.getClass();
+                    target = chain;
+                    decided = false;
+                } else if (!decided) {
+                    // the first element of this class went through the chain, so the verdicts are known by now
+                    decided = true;
+                    if (chain.isAllowed(it, _method, _args))
+                        target = chain.end();
+                }
+                r.add(target.call(it, _method, _args));
             }
             return r;
         } else {
@@ -102,23 +180,16 @@ public class Checker {
              */
 
             if (_receiver instanceof Class) {
-                Thunk maybeReplacement = findCheckedReplacement((Class<?>)_receiver, _method, _args);
-                if (maybeReplacement != null) {
-                    return maybeReplacement.call();
+                CheckedReplacements.Replacement replacement = CheckedReplacements.find((Class<?>)_receiver, _method, _args);
+                if (replacement != null) {
+                    return replacement.call(owner, _args);
                 }
 
                 MetaClass mc = getMetaClass((Class) _receiver);
                 if (mc instanceof MetaClassImpl) {
-                    MetaClassImpl mci = (MetaClassImpl) mc;
-                    MetaMethod m = mci.retrieveStaticMethod(_method,_args);
-                    if (m!=null) {
-                        if (m.isStatic()) {
-                            // Foo.forName() still finds Class.forName() method, so we need to test for that
-                            if (m.getDeclaringClass().getTheClass()==Class.class)
-                                return checkedStaticCall(Class.class,_method,_args);
-                            else
-                                return checkedStaticCall((Class)_receiver,_method,_args);
-                        }
+                    Class<?> target = StaticDispatchCache.staticReceiver((Class<?>) _receiver, (MetaClassImpl) mc, _method, _args);
+                    if (target != null) {
+                        return checkedStaticCall(owner, null, target, _method, _args);
                     }
                 }
             }
@@ -130,26 +201,23 @@ public class Checker {
                     _args = (Object[])_args[1];
                 }
 
-                MetaMethod m = getMetaClass(_receiver).pickMethod(_method, convertToTypeArray(_args));
-                if (m==null) {
-                    // if we are trying to call a method that's actually defined in Closure, then we'll get non-null 'm'
+                List<Object> targets = ClosureSupport.targetsOf((Closure) _receiver);
+                ClosureDispatchCache.Resolution r = ClosureDispatchCache.resolve((Closure<?>) _receiver, targets, _method, _args);
+                if (r != ClosureDispatchCache.Resolution.CLOSURE) {
+                    // if we are trying to call a method that's actually defined in Closure, then we'll get CLOSURE
                     // in that case, treat it like normal method call
 
                     // if we are here, that means we are trying to delegate the call to 'owner', 'delegate', etc.
                     // is going to, and check access accordingly. Groovy's corresponding code is in MetaClassImpl.invokeMethod(...)
-                    List<Object> targets = ClosureSupport.targetsOf((Closure) _receiver);
-
-                    Class[] argTypes = convertToTypeArray(_args);
 
                     // in the first phase, we look for exact method match
-                    for (Object candidate : targets) {
-                        if (InvokerHelper.getMetaClass(candidate).pickMethod(_method,argTypes)!=null)
-                            return checkedCall(candidate,false,false, _method, _args);
+                    if (r.target >= 0) {
+                        return checkedCall(owner, null, targets.get(r.target), false, false, _method, _args);
                     }
-                    // in the second phase, we try to call invokeMethod on them
-                    for (Object candidate : targets) {
+                    // in the second phase, we try to call invokeMethod on those that might handle it
+                    for (int i : r.fallbacks) {
                         try {
-                            return checkedCall(candidate,false,false,"invokeMethod",new Object[]{_method,_args});
+                            return checkedCall(owner, null, targets.get(i), false, false, "invokeMethod", new Object[]{_method, _args});
                         } catch (MissingMethodException e) {
                             // try the next one
                         }
@@ -170,19 +238,59 @@ public class Checker {
                 but because it's packed in an array and the index in that array is determined
                 only at the code generation time, I can't get the access to it.
 
-                So here we are faking it by creating a new CallSite object.
+                So here we are faking it by using a CallSite object from the InlineCache of the call site
+                if SandboxTransformer gave us one, or else from CallSitePool.
              */
-            return new VarArgInvokerChain(_receiver) {
-                public Object call(Object receiver, String method, Object... args) throws Throwable {
-                    if (chain.hasNext())
-                        return chain.next().onMethodCall(this,receiver,method,args);
-                    else
-                        return fakeCallSite(method).call(receiver,args);
-                }
-            }.call(_receiver,_method,_args);
+            return chain(owner, cache, _receiver, CALL).call(_receiver,_method,_args);
+        }
+    }
+
+    private static final Kind CALL = new Kind(CallChain::new, Event.METHOD_CALL);
+    private static final InlineCache.Factory CALL_SITE = CallChain::new;
+
+    private static final class CallChain extends VarArgInvokerChain {
+        private final InlineCache cache;
+
+        CallChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            this(kind, interceptors, index, null);
+        }
+
+        CallChain(Kind kind, GroovyInterceptor[] interceptors, int index, InlineCache cache) {
+            super(kind, interceptors, index);
+            this.cache = cache;
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            return interceptor().onMethodCall(next,receiver,method,args);
+        }
+
+        Object perform(Object receiver, String method, Object... args) throws Throwable {
+            return (cache != null ? cache.call(receiver,method) : CallSitePool.call(receiver,method)).call(receiver,args);
         }
     }
 
+    /**
+     * Chain to use for an operation, from the inline cache of its call site if we have one.
+     */
+    private static InvokerChain chain(Class<?> owner, InlineCache cache, Object receiver, Kind kind) {
+        return cache != null ? cache.chain(receiver) : InvokerChain.of(owner, receiver, kind);
+    }
+
+    /**
+     * List for the results of a spread operation like {@code receiver*.method()}, sized for all of them when the
+     * receiver is an array or a collection whose size we can trust, so that spreading over a big one does not keep
+     * copying them.
+     */
+    private static List<Object> spreadResults(Object receiver) {
+        if (receiver instanceof Collection && isCollectionSafeToCast((Collection) receiver)) {
+            return new ArrayList<Object>(((Collection) receiver).size());
+        }
+        if (receiver != null && receiver.getClass().isArray()) {
+            return new ArrayList<Object>(Array.getLength(receiver));
+        }
+        return new ArrayList<Object>();
+    }
+
     /**
      * Are we trying to invoke a method defined on Closure or its super type?
      * (If so, we'll need to chase down which method we are actually invoking.)
@@ -203,52 +311,144 @@ public class Checker {
     }
 
     public static Object checkedStaticCall(Class _receiver, String _method, Object[] _args) throws Throwable {
+        return checkedStaticCall(null, null, _receiver, _method, _args);
+    }
+
+    /**
+     * Same as {@link #checkedStaticCall(Class, String, Object[])}, for the given call site of the given class.
+     *
+     * @see #checkedCall(Class, int, Object, boolean, boolean, String, Object[])
+     */
+    public static Object checkedStaticCall(Class<?> owner, int site, Class<?> _receiver, String _method, Object[] _args) throws Throwable {
+        return checkedStaticCall(owner, InlineCache.of(owner, site, STATIC_CALL, STATIC_CALL_SITE), _receiver, _method, _args);
+    }
+
+    public static Object checkedStaticCall0(Class<?> owner, int site, Class<?> _receiver, String _method) throws Throwable {
+        return checkedStaticCall(owner, InlineCache.of(owner, site, STATIC_CALL, STATIC_CALL_SITE), _receiver, _method, EMPTY_ARRAY);
+    }
+
+    public static Object checkedStaticCall1(Class<?> owner, int site, Class<?> _receiver, String _method, Object arg1) throws Throwable {
+        return checkedStaticCall(owner, InlineCache.of(owner, site, STATIC_CALL, STATIC_CALL_SITE), _receiver, _method, new Object[] {arg1});
+    }
+
+    public static Object checkedStaticCall2(Class<?> owner, int site, Class<?> _receiver, String _method, Object arg1, Object arg2) throws Throwable {
+        return checkedStaticCall(owner, InlineCache.of(owner, site, STATIC_CALL, STATIC_CALL_SITE), _receiver, _method, new Object[] {arg1, arg2});
+    }
+
+    private static Object checkedStaticCall(Class<?> owner, InlineCache cache, Class<?> _receiver, String _method, Object[] _args) throws Throwable {
         _args = fixNull(_args);
-        Thunk maybeReplacement = findCheckedReplacement((Class<?>)_receiver, _method, _args);
-        if (maybeReplacement != null) {
-            return maybeReplacement.call();
-        }
-        return new VarArgInvokerChain(_receiver) {
-            public Object call(Object receiver, String method, Object... args) throws Throwable {
-                if (chain.hasNext())
-                    return chain.next().onStaticCall(this,(Class)receiver,method,args);
-                else
-                    return fakeCallSite(method).callStatic((Class)receiver,args);
-            }
-        }.call(_receiver, _method, _args);
+        CheckedReplacements.Replacement replacement = CheckedReplacements.find(_receiver, _method, _args);
+        if (replacement != null) {
+            return replacement.call(owner, _args);
+        }
+        return chain(owner, cache, _receiver, STATIC_CALL).call(_receiver, _method, _args);
+    }
+
+    private static final Kind STATIC_CALL = new Kind(StaticCallChain::new, Event.STATIC_CALL);
+    private static final InlineCache.Factory STATIC_CALL_SITE = StaticCallChain::new;
+
+    private static final class StaticCallChain extends VarArgInvokerChain {
+        private final InlineCache cache;
+
+        StaticCallChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            this(kind, interceptors, index, null);
+        }
+
+        StaticCallChain(Kind kind, GroovyInterceptor[] interceptors, int index, InlineCache cache) {
+            super(kind, interceptors, index);
+            this.cache = cache;
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            return interceptor().onStaticCall(next,(Class)receiver,method,args);
+        }
+
+        Object perform(Object receiver, String method, Object... args) throws Throwable {
+            return (cache != null ? cache.callStatic((Class)receiver,method) : CallSitePool.callStatic((Class)receiver,method)).callStatic((Class)receiver,args);
+        }
     }
 
     public static Object checkedConstructor(Class _type, Object[] _args) throws Throwable {
+        return checkedConstructor(null, null, _type, _args);
+    }
+
+    /**
+     * Same as {@link #checkedConstructor(Class, Object[])}, for the given call site of the given class.
+     *
+     * @see #checkedCall(Class, int, Object, boolean, boolean, String, Object[])
+     */
+    public static Object checkedConstructor(Class<?> owner, int site, Class<?> _type, Object[] _args) throws Throwable {
+        return checkedConstructor(owner, InlineCache.of(owner, site, CONSTRUCTOR, CONSTRUCTOR_SITE), _type, _args);
+    }
+
+    public static Object checkedConstructor0(Class<?> owner, int site, Class<?> _type) throws Throwable {
+        return checkedConstructor(owner, InlineCache.of(owner, site, CONSTRUCTOR, CONSTRUCTOR_SITE), _type, EMPTY_ARRAY);
+    }
+
+    public static Object checkedConstructor1(Class<?> owner, int site, Class<?> _type, Object arg1) throws Throwable {
+        return checkedConstructor(owner, InlineCache.of(owner, site, CONSTRUCTOR, CONSTRUCTOR_SITE), _type, new Object[] {arg1});
+    }
+
+    public static Object checkedConstructor2(Class<?> owner, int site, Class<?> _type, Object arg1, Object arg2) throws Throwable {
+        return checkedConstructor(owner, InlineCache.of(owner, site, CONSTRUCTOR, CONSTRUCTOR_SITE), _type, new Object[] {arg1, arg2});
+    }
+
+    private static Object checkedConstructor(Class<?> owner, InlineCache cache, Class<?> _type, Object[] _args) throws Throwable {
         // Make sure that this is not an illegal call to a synthetic constructor.
         GroovyCallSiteSelector.findConstructor(_type, _args, null);
-        return new VarArgInvokerChain(_type) {
-            public Object call(Object receiver, String method, Object... args) throws Throwable {
-                if (chain.hasNext())
-                    return chain.next().onNewInstance(this,(Class)receiver,args);
-                else
-                    // I believe the name is unused
-                    return fakeCallSite("<init>").callConstructor((Class)receiver,args);
-            }
-        }.call(_type,null,fixNull(_args));
+        return chain(owner, cache, _type, CONSTRUCTOR).call(_type,null,fixNull(_args));
+    }
+
+    private static final Kind CONSTRUCTOR = new Kind(ConstructorChain::new, Event.NEW_INSTANCE);
+    private static final InlineCache.Factory CONSTRUCTOR_SITE = ConstructorChain::new;
+
+    private static final class ConstructorChain extends VarArgInvokerChain {
+        private final InlineCache cache;
+
+        ConstructorChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            this(kind, interceptors, index, null);
+        }
+
+        ConstructorChain(Kind kind, GroovyInterceptor[] interceptors, int index, InlineCache cache) {
+            super(kind, interceptors, index);
+            this.cache = cache;
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            return interceptor().onNewInstance(next,(Class)receiver,args);
+        }
+
+        Object perform(Object receiver, String method, Object... args) throws Throwable {
+            return (cache != null ? cache.callConstructor((Class)receiver) : CallSitePool.callConstructor((Class)receiver)).callConstructor(receiver,args);
+        }
     }
 
     public static Object checkedSuperCall(Class _senderType, Object _receiver, String _method, Object[] _args) throws Throwable {
         Super s = new Super(_senderType, _receiver);
-        return new VarArgInvokerChain(s) {
-            public Object call(Object _s, String method, Object... args) throws Throwable {
-                Super s = (Super)_s;
-                if (chain.hasNext()) {
-                    return chain.next().onSuperCall(this, s.senderType, s.receiver, method, args);
-                } else {
-                    try {
-                        MetaClass mc = InvokerHelper.getMetaClass(s.receiver.getClass());
-                        return mc.invokeMethod(s.senderType.getSuperclass(), s.receiver, method, args, true, true);
-                    } catch (GroovyRuntimeException gre) {
-                        throw ScriptBytecodeAdapter.unwrap(gre);
-                    }
-                }
+        return InvokerChain.of(_senderType, s, SUPER_CALL).call(s,_method,fixNull(_args));
+    }
+
+    private static final Kind SUPER_CALL = new Kind(SuperCallChain::new, Event.SUPER_CALL);
+
+    private static final class SuperCallChain extends VarArgInvokerChain {
+        SuperCallChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object _s, String method, Object... args) throws Throwable {
+            Super s = (Super)_s;
+            return interceptor().onSuperCall(next, s.senderType, s.receiver, method, args);
+        }
+
+        Object perform(Object _s, String method, Object... args) throws Throwable {
+            Super s = (Super)_s;
+            try {
+                MetaClass mc = InvokerHelper.getMetaClass(s.receiver.getClass());
+                return mc.invokeMethod(s.senderType.getSuperclass(), s.receiver, method, args, true, true);
+            } catch (GroovyRuntimeException gre) {
+                throw ScriptBytecodeAdapter.unwrap(gre);
             }
-        }.call(s,_method,fixNull(_args));
+        }
     }
 
     public static class SuperConstructorWrapper {
@@ -265,17 +465,30 @@ public class Checker {
         // Make sure that the call to this synthetic constructor is not illegal.
         GroovyCallSiteSelector.findConstructor(superClass, superCallArgs, SuperConstructorWrapper.class);
         explicitConstructorCallSanity(thisClass, SuperConstructorWrapper.class, constructorArgs, constructorParamTypes);
-        new VarArgInvokerChain(superClass) {
-            public Object call(Object receiver, String method, Object... args) throws Throwable {
-                if (chain.hasNext()) {
-                    chain.next().onSuperConstructor(this, superClass, args);
-                }
-                return null;
-            }
-        }.call(superClass, null, fixNull(superCallArgs));
+        InvokerChain.of(thisClass, superClass, CHECK_SUPER_CONSTRUCTOR).call(superClass, null, fixNull(superCallArgs));
         return new SuperConstructorWrapper(superCallArgs);
     }
 
+    /**
+     * Only consults the interceptors about a {@code super(…)} call, which is then performed by the caller.
+     */
+    private static final Kind CHECK_SUPER_CONSTRUCTOR = new Kind(CheckSuperConstructorChain::new, Event.SUPER_CONSTRUCTOR);
+
+    private static final class CheckSuperConstructorChain extends VarArgInvokerChain {
+        CheckSuperConstructorChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            interceptor().onSuperConstructor(next, (Class)receiver, args);
+            return null;
+        }
+
+        Object perform(Object receiver, String method, Object... args) {
+            return null;
+        }
+    }
+
     public static class ThisConstructorWrapper {
         private final Object[] args;
         ThisConstructorWrapper(Object[] args) {
@@ -290,17 +503,29 @@ public class Checker {
         // Make sure that the call to this synthetic constructor is not illegal.
         GroovyCallSiteSelector.findConstructor(clazz, thisCallArgs, ThisConstructorWrapper.class);
         explicitConstructorCallSanity(clazz, ThisConstructorWrapper.class, constructorArgs, constructorParamTypes);
-        new VarArgInvokerChain(clazz) {
-            public Object call(Object receiver, String method, Object... args) throws Throwable {
-                if (chain.hasNext()) {
-                    chain.next().onNewInstance(this, clazz, args);
-                }
-                return null;
-            }
-        }.call(clazz, null, fixNull(thisCallArgs));
+        InvokerChain.of(clazz, clazz, CHECK_NEW_INSTANCE).call(clazz, null, fixNull(thisCallArgs));
         return new ThisConstructorWrapper(thisCallArgs);
     }
 
+    /**
+     * Only consults the interceptors about an object instantiation, which is then performed by the caller.
+     */
+    private static final Kind CHECK_NEW_INSTANCE = new Kind(CheckNewInstanceChain::new, Event.NEW_INSTANCE);
+
+    private static final class CheckNewInstanceChain extends VarArgInvokerChain {
+        CheckNewInstanceChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            return interceptor().onNewInstance(next, (Class)receiver, args);
+        }
+
+        Object perform(Object receiver, String method, Object... args) {
+            return null;
+        }
+    }
+
     /**
      * Makes sure that explicit constructor calls inside of synthetic constructors will go to the intended constructor
      * at runtime (Part of SECURITY-1754).
@@ -320,10 +545,11 @@ public class Checker {
             throw new AssertionError("Unable to find original constructor", e);
         }
         ParameterTypes expectedParamTypes = new ParameterTypes(paramsIncludingWrapper);
-        for (Constructor<?> c : thisClass.getDeclaredConstructors()) {
+        for (GroovyCallSiteSelector.Candidate candidate : GroovyCallSiteSelector.candidates(thisClass)) {
             // Make sure that no other constructor matches the arguments better than the constructor we are expecting to
             // call, because otherwise that would be the constructor that would actually be invoked.
-            ParameterTypes cParamTypes = new ParameterTypes(c.getParameterTypes());
+            Constructor<?> c = candidate.constructor;
+            ParameterTypes cParamTypes = candidate.parameterTypes;
             if (!c.equals(expectedConstructor) && cParamTypes.isValidMethod(argTypes) && GroovyCallSiteSelector.isMoreSpecific(cParamTypes, expectedParamTypes, argTypes)) {
                 throw new SecurityException("Rejecting unexpected invocation of constructor: " + c + ". Expected to invoke synthetic constructor: " + expectedConstructor);
             }
@@ -331,28 +557,64 @@ public class Checker {
     }
 
     public static Object checkedGetProperty(final Object _receiver, boolean safe, boolean spread, Object _property) throws Throwable {
+        return checkedGetProperty(null, _receiver, safe, spread, _property);
+    }
+
+    /**
+     * Same as {@link #checkedGetProperty(Object, boolean, boolean, Object)}, for code in the given class.
+     */
+    public static Object checkedGetProperty(Class<?> owner, final Object _receiver, boolean safe, boolean spread, Object _property) throws Throwable {
         if (safe && _receiver==null)     return null;
 
         if (spread || (_receiver instanceof Collection && !BUILTIN_PROPERTIES.contains(_property))) {
-            List<Object> r = new ArrayList<Object>();
+            List<Object> r = spreadResults(_receiver);
             Iterator itr = InvokerHelper.asIterator(_receiver);
+            // elements of the last class that needs no special treatment below go straight to the chain
+            Class<?> plain = null;
+            InvokerChain chain = null;
+            // the chain, or its end once the interceptors are known to let elements of the plain class through
+            InvokerChain target = null;
+            boolean decided = false;
+            String property = _property.toString();
             while (itr.hasNext()) {
                 Object it = itr.next();
-                if (it!=null)
-                    r.add(checkedGetProperty(it,true,false,_property));
+                if (it==null) {
+                    // Groovy keeps null elements in spreads, but not in the properties of a collection
+                    if (spread)
+                        r.add(null);
+                    continue;
+                }
+                if (it.getClass() != plain) {
+                    if (it instanceof Collection || it instanceof Map || it instanceof Closure) {
+                        r.add(checkedGetProperty(owner, it,true,false,_property));
+                        continue;
+                    }
+                    if (chain == null)
+                        chain = InvokerChain.of(owner, it, GET_PROPERTY);
+                    plain = it.getClass();
+                    target = chain;
+                    // verdicts about a Class are about that very class, not about all of them
+                    decided = it instanceof Class;
+                } else if (!decided) {
+                    // the first element of this class went through the chain, so the verdicts are known by now
+                    decided = true;
+                    if (chain.isAllowed(it, property))
+                        target = chain.end();
+                }
+                r.add(target.call(it, property));
             }
             return r;
         }
 // 1st try: do the same call site stuff
 //            return fakeCallSite(property.toString()).callGetProperty(receiver);
 
-        if (isInvokingMethodOnClosure(_receiver, "getProperty", _property) && !BUILTIN_PROPERTIES.contains(_property)) {
+        if (_receiver instanceof Closure && isInvokingMethodOnClosure(_receiver, "getProperty", _property) && !BUILTIN_PROPERTIES.contains(_property)) {
             // if we are trying to invoke Closure.getProperty(),
             // we want to find out where the call is going to, and check that target
             MissingPropertyException x=null;
             for (Object candidate : ClosureSupport.targetsOf((Closure) _receiver)) {
                 try {
-                    return checkedGetProperty(candidate, false, false, _property);
+                    return checkedGetProperty(owner, candidate, false, false, _property);
                 } catch (MissingPropertyException e) {
                     x = e;
                     // try the next one
@@ -366,26 +628,66 @@ public class Checker {
                 MetaClassImpl.getProperty looks for Map subtype and handles it as Map.get call,
                 so dispatch that call accordingly.
              */
-            return checkedCall(_receiver,false,false,"get",new Object[]{_property});
+            return InvokerChain.of(owner, _receiver, MAP_GET).call(_receiver, "get", _property);
         }
 
-        return new ZeroArgInvokerChain(_receiver) {
-            public Object call(Object receiver, String property) throws Throwable {
-                if (chain.hasNext())
-                    return chain.next().onGetProperty(this,receiver,property);
-                else
-                    return ScriptBytecodeAdapter.getProperty(null, receiver, property);
-            }
-        }.call(_receiver,_property.toString());
+        return InvokerChain.of(owner, _receiver, GET_PROPERTY).call(_receiver,_property.toString());
+    }
+
+    /**
+     * Intercepts {@code map.get(property)} like {@link #checkedCall} would, but without putting the argument in an
+     * array unless an interceptor needs it.
+     */
+    private static final Kind MAP_GET = new Kind(MapGetChain::new, Event.METHOD_CALL);
+
+    private static final class MapGetChain extends SingleArgInvokerChain {
+        MapGetChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object key) throws Throwable {
+            return interceptor().onMethodCall(next, receiver, method, key);
+        }
+
+        Object perform(Object receiver, String method, Object key) throws Throwable {
+            return CallSitePool.call(receiver, method).call(receiver, key);
+        }
+    }
+
+    private static final Kind GET_PROPERTY = new Kind(GetPropertyChain::new, Event.GET_PROPERTY);
+
+    private static final class GetPropertyChain extends ZeroArgInvokerChain {
+        GetPropertyChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String property) throws Throwable {
+            return interceptor().onGetProperty(next,receiver,property);
+        }
+
+        Object perform(Object receiver, String property) throws Throwable {
+            return ScriptBytecodeAdapter.getProperty(null, receiver, property);
+        }
     }
 
     public static Object checkedSetProperty(Object _receiver, Object _property, boolean safe, boolean spread, int op, Object _value) throws Throwable {
+        return checkedSetProperty(null, _receiver, _property, safe, spread, op, _value);
+    }
+
+    /**
+     * Same as {@link #checkedSetProperty(Object, Object, boolean, boolean, int, Object)}, for code in the given class.
+     */
+    public static Object checkedSetProperty(Class<?> owner, Object _receiver, Object _property, boolean safe, boolean spread, int op, Object _value) throws Throwable {
         if (op!=Types.ASSIGN) {
+            InvokerChain update = spread ? null : fusedUpdate(owner, _receiver, Target.PROPERTY, Form.COMPOUND);
+            if (update != null) {
+                return callUpdate(owner, update, _receiver, compoundOperatorMethod(op), _property.toString(), _value);
+            }
             // a compound assignment operator is decomposed into get+op+set
             // for example, a.x += y  => a.x=a.x+y
-            Object v = checkedGetProperty(_receiver, safe, spread, _property);
-            return checkedSetProperty(_receiver, _property, safe, spread, Types.ASSIGN,
-                    checkedBinaryOp(v, Ops.compoundAssignmentToBinaryOperator(op), _value));
+            Object v = checkedGetProperty(owner, _receiver, safe, spread, _property);
+            return checkedSetProperty(owner, _receiver, _property, safe, spread, Types.ASSIGN,
+                    checkedBinaryOp(owner, v, Ops.compoundAssignmentToBinaryOperator(op), _value));
         }
         if (safe && _receiver==null)     return _value;
         if (spread) {
@@ -393,18 +695,18 @@ public class Checker {
             while (itr.hasNext()) {
                 Object it = itr.next();
                 if (it!=null)
-                    checkedSetProperty(it, _property, true, false, op, _value);
+                    checkedSetProperty(owner, it, _property, true, false, op, _value);
             }
             return _value;
         }
 
-        if (isInvokingMethodOnClosure(_receiver, "setProperty", _property, _value) && !BUILTIN_PROPERTIES.contains(_property)) {
+        if (_receiver instanceof Closure && isInvokingMethodOnClosure(_receiver, "setProperty", _property, _value) && !BUILTIN_PROPERTIES.contains(_property)) {
             // if we are trying to invoke Closure.setProperty(),
             // we want to find out where the call is going to, and check that target
             GroovyRuntimeException x=null;
             for (Object candidate : ClosureSupport.targetsOf((Closure) _receiver)) {
                 try {
-                    return checkedSetProperty(candidate, _property, false, false, op, _value);
+                    return checkedSetProperty(owner, candidate, _property, false, false, op, _value);
                 } catch (GroovyRuntimeException e) {
                     // Cathing GroovyRuntimeException feels questionable, but this is how Groovy does it in
                     // Closure.setPropertyTryThese().
@@ -421,47 +723,113 @@ public class Checker {
                 MetaClassImpl.setProperty looks for Map subtype and handles it as Map.put call,
                 so dispatch that call accordingly.
              */
-            checkedCall(_receiver,false,false,"put",new Object[]{_property,_value});
+            InvokerChain.of(owner, _receiver, MAP_PUT).call(_receiver, "put", _property, _value);
             return _value;
         }
 
-        return new SingleArgInvokerChain(_receiver) {
-            public Object call(Object receiver, String property, Object value) throws Throwable {
-                if (chain.hasNext())
-                    return chain.next().onSetProperty(this,receiver,property,value);
-                else {
-                    // according to AsmClassGenerator this is how the compiler maps it to
-                    // TODO: There is an implicit cast here. Very awkward for us to handle because we have to fully
-                    // understand the meaning of receiver.property to know the target type of the cast.
-                    // For now, API consumers must handle it themselves in onSetProperty.
-                    ScriptBytecodeAdapter.setProperty(value,null,receiver,property);
-                    return value;
-                }
-            }
-        }.call(_receiver,_property.toString(),_value);
+        return InvokerChain.of(owner, _receiver, SET_PROPERTY).call(_receiver,_property.toString(),_value);
+    }
+
+    /**
+     * Intercepts {@code map.put(property, value)} like {@link #checkedCall} would, but without putting the arguments
+     * in an array unless an interceptor needs them.
+     */
+    private static final Kind MAP_PUT = new Kind(MapPutChain::new, Event.METHOD_CALL);
+
+    private static final class MapPutChain extends TwoArgInvokerChain {
+        MapPutChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object key, Object value) throws Throwable {
+            return interceptor().onMethodCall(next, receiver, method, key, value);
+        }
+
+        Object perform(Object receiver, String method, Object key, Object value) throws Throwable {
+            return CallSitePool.call(receiver, method).call(receiver, key, value);
+        }
+    }
+
+    private static final Kind SET_PROPERTY = new Kind(SetPropertyChain::new, Event.SET_PROPERTY);
+
+    private static final class SetPropertyChain extends SingleArgInvokerChain {
+        SetPropertyChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String property, Object value) throws Throwable {
+            return interceptor().onSetProperty(next,receiver,property,value);
+        }
+
+        Object perform(Object receiver, String property, Object value) throws Throwable {
+            // according to AsmClassGenerator this is how the compiler maps it to
+            // TODO: There is an implicit cast here. Very awkward for us to handle because we have to fully
+            // understand the meaning of receiver.property to know the target type of the cast.
+            // For now, API consumers must handle it themselves in onSetProperty.
+            ScriptBytecodeAdapter.setProperty(value,null,receiver,property);
+            return value;
+        }
     }
 
     public static Object checkedGetAttribute(Object _receiver, boolean safe, boolean spread, Object _property) throws Throwable {
+        return checkedGetAttribute(null, _receiver, safe, spread, _property);
+    }
+
+    /**
+     * Same as {@link #checkedGetAttribute(Object, boolean, boolean, Object)}, for code in the given class.
+     */
+    public static Object checkedGetAttribute(Class<?> owner, Object _receiver, boolean safe, boolean spread, Object _property) throws Throwable {
         if (safe && _receiver==null)     return null;
         if (spread) {
-            List<Object> r = new ArrayList<Object>();
+            List<Object> r = spreadResults(_receiver);
             Iterator itr = InvokerHelper.asIterator(_receiver);
+            Class<?> plain = null;
+            InvokerChain chain = null;
+            // the chain, or its end once the interceptors are known to let elements of the plain class through
+            InvokerChain target = null;
+            boolean decided = false;
+            String property = _property.toString();
             while (itr.hasNext()) {
                 Object it = itr.next();
-                if (it!=null)
-                    r.add(checkedGetAttribute(it, true, false, _property));
+                if (it==null) {
+                    r.add(null);
+                } else {
+                    if (it.getClass() != plain) {
+                        if (chain == null)
+                            chain = InvokerChain.of(owner, it, GET_ATTRIBUTE);
+                        plain = it.getClass();
+                        target = chain;
+                        // verdicts about a Class are about that very class, not about all of them
+                        decided = it instanceof Class;
+                    } else if (!decided) {
+                        // the first element of this class went through the chain, so the verdicts are known by now
+                        decided = true;
+                        if (chain.isAllowed(it, property))
+                            target = chain.end();
+                    }
+                    r.add(target.call(it, property));
+                }
             }
             return r;
         } else {
-            return new ZeroArgInvokerChain(_receiver) {
-                public Object call(Object receiver, String property) throws Throwable {
-                    if (chain.hasNext())
-                        return chain.next().onGetAttribute(this,receiver,property);
-                    else
-                        // according to AsmClassGenerator this is how the compiler maps it to
-                        return ScriptBytecodeAdapter.getField(null,receiver,property);
-                }
-            }.call(_receiver,_property.toString());
+            return InvokerChain.of(owner, _receiver, GET_ATTRIBUTE).call(_receiver,_property.toString());
+        }
+    }
+
+    private static final Kind GET_ATTRIBUTE = new Kind(GetAttributeChain::new, Event.GET_ATTRIBUTE);
+
+    private static final class GetAttributeChain extends ZeroArgInvokerChain {
+        GetAttributeChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String property) throws Throwable {
+            return interceptor().onGetAttribute(next,receiver,property);
+        }
+
+        Object perform(Object receiver, String property) throws Throwable {
+            // according to AsmClassGenerator this is how the compiler maps it to
+            return ScriptBytecodeAdapter.getField(null,receiver,property);
         }
     }
 
@@ -472,12 +840,23 @@ public class Checker {
      *      One of the assignment operators of {@link Types}
      */
     public static Object checkedSetAttribute(Object _receiver, Object _property, boolean safe, boolean spread, int op, Object _value) throws Throwable {
+        return checkedSetAttribute(null, _receiver, _property, safe, spread, op, _value);
+    }
+
+    /**
+     * Same as {@link #checkedSetAttribute(Object, Object, boolean, boolean, int, Object)}, for code in the given class.
+     */
+    public static Object checkedSetAttribute(Class<?> owner, Object _receiver, Object _property, boolean safe, boolean spread, int op, Object _value) throws Throwable {
         if (op!=Types.ASSIGN) {
+            InvokerChain update = spread ? null : fusedUpdate(owner, _receiver, Target.ATTRIBUTE, Form.COMPOUND);
+            if (update != null) {
+                return callUpdate(owner, update, _receiver, compoundOperatorMethod(op), _property.toString(), _value);
+            }
             // a compound assignment operator is decomposed into get+op+set
             // for example, a.@x += y  => a.@x=a.@x+y
-            Object v = checkedGetAttribute(_receiver, safe, spread, _property);
-            return checkedSetAttribute(_receiver, _property, safe, spread, Types.ASSIGN,
-                    checkedBinaryOp(v, Ops.compoundAssignmentToBinaryOperator(op), _value));
+            Object v = checkedGetAttribute(owner, _receiver, safe, spread, _property);
+            return checkedSetAttribute(owner, _receiver, _property, safe, spread, Types.ASSIGN,
+                    checkedBinaryOp(owner, v, Ops.compoundAssignmentToBinaryOperator(op), _value));
         }
         if (safe && _receiver==null)     return _value;
         if (spread) {
@@ -485,33 +864,65 @@ public class Checker {
             while (itr.hasNext()) {
                 Object it = itr.next();
                 if (it!=null)
-                    checkedSetAttribute(it,_property,true,false,op,_value);
+                    checkedSetAttribute(owner, it,_property,true,false,op,_value);
             }
         } else {
-            return new SingleArgInvokerChain(_receiver) {
-                public Object call(Object receiver, String property, Object value) throws Throwable {
-                    if (chain.hasNext())
-                        return chain.next().onSetAttribute(this,receiver,property,value);
-                    else {
-                        ScriptBytecodeAdapter.setField(value,null,receiver,property);
-                        return value;
-                    }
-                }
-            }.call(_receiver,_property.toString(),_value);
+            return InvokerChain.of(owner, _receiver, SET_ATTRIBUTE).call(_receiver,_property.toString(),_value);
         }
         return _value;
     }
 
+    private static final Kind SET_ATTRIBUTE = new Kind(SetAttributeChain::new, Event.SET_ATTRIBUTE);
+
+    private static final class SetAttributeChain extends SingleArgInvokerChain {
+        SetAttributeChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String property, Object value) throws Throwable {
+            return interceptor().onSetAttribute(next,receiver,property,value);
+        }
+
+        Object perform(Object receiver, String property, Object value) throws Throwable {
+            ScriptBytecodeAdapter.setField(value,null,receiver,property);
+            return value;
+        }
+    }
+
     public static Object checkedGetArray(Object _receiver, Object _index) throws Throwable {
-        return new SingleArgInvokerChain(_receiver) {
-            public Object call(Object receiver, String method, Object index) throws Throwable {
-                if (chain.hasNext())
-                    return chain.next().onGetArray(this,receiver,index);
-                else
-                    // BinaryExpressionHelper.eval maps this to "getAt" call
-                    return fakeCallSite("getAt").call(receiver,index);
-            }
-        }.call(_receiver,null,_index);
+        return checkedGetArray(null, _receiver, _index);
+    }
+
+    /**
+     * Same as {@link #checkedGetArray(Object, Object)}, for code in the given class.
+     */
+    public static Object checkedGetArray(Class<?> owner, Object _receiver, Object _index) throws Throwable {
+        return InvokerChain.of(owner, _receiver, GET_ARRAY).call(_receiver,null,_index);
+    }
+
+    private static final Kind GET_ARRAY = new Kind(GetArrayChain::new, Event.GET_ARRAY);
+
+    private static final class GetArrayChain extends SingleArgInvokerChain {
+        GetArrayChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object index) throws Throwable {
+            return interceptor().onGetArray(next,receiver,index);
+        }
+
+        Object perform(Object receiver, String method, Object index) throws Throwable {
+            return getAt(receiver, index);
+        }
+    }
+
+    private static Object getAt(Object receiver, Object index) throws Throwable {
+        Object value = IndexedAccess.get(receiver, index);
+        if (value != IndexedAccess.UNHANDLED) {
+            return value;
+        }
+        // BinaryExpressionHelper.eval maps this to "getAt" call
+        return CallSitePool.call(receiver,"getAt").call(receiver,index);
     }
 
     /**
@@ -521,89 +932,348 @@ public class Checker {
      *      One of the assignment operators of {@link Types}
      */
     public static Object checkedSetArray(Object _receiver, Object _index, int op, Object _value) throws Throwable {
+        return checkedSetArray(null, _receiver, _index, op, _value);
+    }
+
+    /**
+     * Same as {@link #checkedSetArray(Object, Object, int, Object)}, for code in the given class.
+     */
+    public static Object checkedSetArray(Class<?> owner, Object _receiver, Object _index, int op, Object _value) throws Throwable {
         if (op!=Types.ASSIGN) {
+            InvokerChain update = fusedUpdate(owner, _receiver, Target.ARRAY, Form.COMPOUND);
+            if (update != null) {
+                return callUpdate(owner, update, _receiver, compoundOperatorMethod(op), _index, _value);
+            }
             // a compound assignment operator is decomposed into get+op+set
             // for example, a[x] += y  => a[x]=a[x]+y
-            Object v = checkedGetArray(_receiver, _index);
-            return checkedSetArray(_receiver, _index, Types.ASSIGN,
-                    checkedBinaryOp(v, Ops.compoundAssignmentToBinaryOperator(op), _value));
+            Object v = checkedGetArray(owner, _receiver, _index);
+            return checkedSetArray(owner, _receiver, _index, Types.ASSIGN,
+                    checkedBinaryOp(owner, v, Ops.compoundAssignmentToBinaryOperator(op), _value));
         } else {
             // Note that in regular Groovy, value is cast to the component type of the array, but this code does not do that.
-            return new TwoArgInvokerChain(_receiver) {
-                public Object call(Object receiver, String method, Object index, Object value) throws Throwable {
-                    if (chain.hasNext())
-                        return chain.next().onSetArray(this,receiver,index,value);
-                    else {
-                        // BinaryExpressionHelper.assignToArray maps this to "putAt" call
-                        fakeCallSite("putAt").call(receiver,index,value);
-                        return value;
+            return InvokerChain.of(owner, _receiver, SET_ARRAY).call(_receiver,null,_index,_value);
+        }
+    }
+
+    private static final Kind SET_ARRAY = new Kind(SetArrayChain::new, Event.SET_ARRAY);
+
+    private static final class SetArrayChain extends TwoArgInvokerChain {
+        SetArrayChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object index, Object value) throws Throwable {
+            return interceptor().onSetArray(next,receiver,index,value);
+        }
+
+        Object perform(Object receiver, String method, Object index, Object value) throws Throwable {
+            putAt(receiver, index, value);
+            return value;
+        }
+    }
+
+    private static void putAt(Object receiver, Object index, Object value) throws Throwable {
+        if (!IndexedAccess.set(receiver, index, value)) {
+            // BinaryExpressionHelper.assignToArray maps this to "putAt" call
+            CallSitePool.call(receiver,"putAt").call(receiver,index,value);
+        }
+    }
+
+    /**
+     * a[i]++ / a[i]--
+     *
+     * @param op
+     *      "next" for ++, "previous" for --. These names are defined by Groovy.
+     */
+    public static Object checkedPostfixArray(Object r, Object i, String op) throws Throwable {
+        return checkedPostfixArray(null, r, i, op);
+    }
+
+    /**
+     * Same as {@link #checkedPostfixArray(Object, Object, String)}, for code in the given class.
+     */
+    public static Object checkedPostfixArray(Class<?> owner, Object r, Object i, String op) throws Throwable {
+        InvokerChain update = fusedUpdate(owner, r, Target.ARRAY, Form.POSTFIX);
+        if (update != null) {
+            return callUpdate(owner, update, r, op, i, null);
+        }
+        Object o = checkedGetArray(owner, r, i);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetArray(owner, r,i,Types.ASSIGN,n);
+        return o;
+    }
+
+    /**
+     * ++a[i] / --a[i]
+     */
+    public static Object checkedPrefixArray(Object r, Object i, String op) throws Throwable {
+        return checkedPrefixArray(null, r, i, op);
+    }
+
+    /**
+     * Same as {@link #checkedPrefixArray(Object, Object, String)}, for code in the given class.
+     */
+    public static Object checkedPrefixArray(Class<?> owner, Object r, Object i, String op) throws Throwable {
+        InvokerChain update = fusedUpdate(owner, r, Target.ARRAY, Form.PREFIX);
+        if (update != null) {
+            return callUpdate(owner, update, r, op, i, null);
+        }
+        Object o = checkedGetArray(owner, r, i);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetArray(owner, r,i,Types.ASSIGN,n);
+        return n;
+    }
+
+    /**
+     * a.x++ / a.x--
+     */
+    public static Object checkedPostfixProperty(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        return checkedPostfixProperty(null, receiver, property, safe, spread, op);
+    }
+
+    /**
+     * Same as {@link #checkedPostfixProperty(Object, Object, boolean, boolean, String)}, for code in the given class.
+     */
+    public static Object checkedPostfixProperty(Class<?> owner, Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        InvokerChain update = spread ? null : fusedUpdate(owner, receiver, Target.PROPERTY, Form.POSTFIX);
+        if (update != null) {
+            return callUpdate(owner, update, receiver, op, property.toString(), null);
+        }
+        Object o = checkedGetProperty(owner, receiver, safe, spread, property);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetProperty(owner, receiver, property, safe, spread, Types.ASSIGN, n);
+        return o;
+    }
+
+    /**
+     * ++a.x / --a.x
+     */
+    public static Object checkedPrefixProperty(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        return checkedPrefixProperty(null, receiver, property, safe, spread, op);
+    }
+
+    /**
+     * Same as {@link #checkedPrefixProperty(Object, Object, boolean, boolean, String)}, for code in the given class.
+     */
+    public static Object checkedPrefixProperty(Class<?> owner, Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        InvokerChain update = spread ? null : fusedUpdate(owner, receiver, Target.PROPERTY, Form.PREFIX);
+        if (update != null) {
+            return callUpdate(owner, update, receiver, op, property.toString(), null);
+        }
+        Object o = checkedGetProperty(owner, receiver, safe, spread, property);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetProperty(owner, receiver, property, safe, spread, Types.ASSIGN, n);
+        return n;
+    }
+
+    /**
+     * a.@x++ / a.@x--
+     */
+    public static Object checkedPostfixAttribute(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        return checkedPostfixAttribute(null, receiver, property, safe, spread, op);
+    }
+
+    /**
+     * Same as {@link #checkedPostfixAttribute(Object, Object, boolean, boolean, String)}, for code in the given class.
+     */
+    public static Object checkedPostfixAttribute(Class<?> owner, Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        InvokerChain update = spread ? null : fusedUpdate(owner, receiver, Target.ATTRIBUTE, Form.POSTFIX);
+        if (update != null) {
+            return callUpdate(owner, update, receiver, op, property.toString(), null);
+        }
+        Object o = checkedGetAttribute(owner, receiver, safe, spread, property);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetAttribute(owner, receiver, property, safe, spread, Types.ASSIGN, n);
+        return o;
+    }
+
+    /**
+     * ++a.@x / --a.@x
+     */
+    public static Object checkedPrefixAttribute(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        return checkedPrefixAttribute(null, receiver, property, safe, spread, op);
+    }
+
+    /**
+     * Same as {@link #checkedPrefixAttribute(Object, Object, boolean, boolean, String)}, for code in the given class.
+     */
+    public static Object checkedPrefixAttribute(Class<?> owner, Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
+        InvokerChain update = spread ? null : fusedUpdate(owner, receiver, Target.ATTRIBUTE, Form.PREFIX);
+        if (update != null) {
+            return callUpdate(owner, update, receiver, op, property.toString(), null);
+        }
+        Object o = checkedGetAttribute(owner, receiver, safe, spread, property);
+        Object n = checkedCall(owner, null, o, false, false, op, new Object[0]);
+        checkedSetAttribute(owner, receiver, property, safe, spread, Types.ASSIGN, n);
+        return n;
+    }
+
+    /**
+     * Forms of the updates that {@link GroovyInterceptor#onUpdate} intercepts as a whole.
+     */
+    private enum Form {
+        /** {@code a.x += y}, which results in the new value */
+        COMPOUND,
+        /** {@code ++a.x}, which results in the new value */
+        PREFIX,
+        /** {@code a.x++}, which results in the old value */
+        POSTFIX
+    }
+
+    /**
+     * {@link Kind#mask} of the events an update of each {@link Target} is decomposed into, indexed by its ordinal.
+     * The operator method is called on a value that is neither a number nor a string like {@link #checkedCall} does,
+     * which may end up in a static call if the value is a {@link Class}.
+     */
+    private static final int[] UPDATE_STEPS = new int[Target.values().length];
+
+    private static final int UPDATE = Kind.mask(EnumSet.of(Event.UPDATE));
+
+    /**
+     * {@link Kind} of the update of each {@link Target} in each {@link Form}.
+     */
+    private static final Kind[] UPDATES = new Kind[Target.values().length * Form.values().length];
+
+    static {
+        for (Target t : Target.values()) {
+            Event get, set;
+            switch (t) {
+            case PROPERTY:  get = Event.GET_PROPERTY;   set = Event.SET_PROPERTY;   break;
+            case ATTRIBUTE: get = Event.GET_ATTRIBUTE;  set = Event.SET_ATTRIBUTE;  break;
+            default:        get = Event.GET_ARRAY;      set = Event.SET_ARRAY;      break;
+            }
+            UPDATE_STEPS[t.ordinal()] = Kind.mask(EnumSet.of(get, set, Event.METHOD_CALL, Event.STATIC_CALL));
+            for (Form f : Form.values()) {
+                UPDATES[t.ordinal() * Form.values().length + f.ordinal()] = new Kind((kind, interceptors, index) -> {
+                    switch (t) {
+                    case PROPERTY:  return new PropertyUpdateChain(kind, interceptors, index, f);
+                    case ATTRIBUTE: return new AttributeUpdateChain(kind, interceptors, index, f);
+                    default:        return new ArrayUpdateChain(kind, interceptors, index, f);
                     }
-                }
-            }.call(_receiver,null,_index,_value);
+                }, Event.UPDATE);
+            }
         }
     }
 
     /**
-     * a[i]++ / a[i]--
-     *
-     * @param op
-     *      "next" for ++, "previous" for --. These names are defined by Groovy.
+     * Returns the chain that intercepts an update as a whole, or null if it has to be decomposed into its steps,
+     * because one of the interceptors consulted about them has not opted in to {@link Event#UPDATE}, or because the
+     * receiver is one whose steps are not what they seem, like a {@link Closure} that delegates them.
      */
-    public static Object checkedPostfixArray(Object r, Object i, String op) throws Throwable {
-        Object o = checkedGetArray(r, i);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetArray(r,i,Types.ASSIGN,n);
-        return o;
+    private static InvokerChain fusedUpdate(Class<?> owner, Object receiver, Target target, Form form) {
+        if (receiver == null || receiver instanceof Closure) {
+            return null;
+        }
+        Interceptors interceptors = Interceptors.of(owner);
+        if (!interceptors.isCovered(UPDATE_STEPS[target.ordinal()], UPDATE)) {
+            return null;
+        }
+        return interceptors.chain(UPDATES[target.ordinal() * Form.values().length + form.ordinal()]);
     }
 
     /**
-     * ++a[i] / --a[i]
+     * Class of the code that performs the update in progress on the current thread, if any.
+     * Links cannot be told, since they are shared by all the code that uses the same interceptors.
      */
-    public static Object checkedPrefixArray(Object r, Object i, String op) throws Throwable {
-        Object o = checkedGetArray(r, i);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetArray(r,i,Types.ASSIGN,n);
-        return n;
-    }
+    private static final ThreadLocal<Class<?>> UPDATE_OWNER = new ThreadLocal<>();
 
     /**
-     * a.x++ / a.x--
+     * Performs an update through the chain {@link #fusedUpdate} returned, for code in the given class.
      */
-    public static Object checkedPostfixProperty(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
-        Object o = checkedGetProperty(receiver, safe, spread, property);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetProperty(receiver, property, safe, spread, Types.ASSIGN, n);
-        return o;
+    private static Object callUpdate(Class<?> owner, InvokerChain update, Object receiver, String operator, Object key, Object operand) throws Throwable {
+        Class<?> outer = UPDATE_OWNER.get();
+        UPDATE_OWNER.set(owner);
+        try {
+            return update.call(receiver, operator, key, operand);
+        } finally {
+            UPDATE_OWNER.set(outer);
+        }
     }
 
-    /**
-     * ++a.x / --a.x
-     */
-    public static Object checkedPrefixProperty(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
-        Object o = checkedGetProperty(receiver, safe, spread, property);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetProperty(receiver, property, safe, spread, Types.ASSIGN, n);
-        return n;
+    private static String compoundOperatorMethod(int op) {
+        return Ops.binaryOperatorMethods(Ops.compoundAssignmentToBinaryOperator(op));
     }
 
     /**
-     * a.@x++ / a.@x--
+     * Reads the current value, computes the new one and writes it back, once all the interceptors let the whole
+     * update through. There is one subtype per {@link Target}, since {@link VerdictCache} tells decisions apart by
+     * the class of the link.
      */
-    public static Object checkedPostfixAttribute(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
-        Object o = checkedGetAttribute(receiver, safe, spread, property);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetAttribute(receiver, property, safe, spread, Types.ASSIGN, n);
-        return o;
+    private static abstract class UpdateChain extends TwoArgInvokerChain {
+        private final Target target;
+        private final Form form;
+
+        UpdateChain(Kind kind, GroovyInterceptor[] interceptors, int index, Target target, Form form) {
+            super(kind, interceptors, index);
+            this.target = target;
+            this.form = form;
+        }
+
+        Object intercept(Invoker next, Object receiver, String operator, Object key, Object operand) throws Throwable {
+            return interceptor().onUpdate(next, target, receiver, key, operator, operand);
+        }
+
+        Object perform(Object receiver, String operator, Object key, Object operand) throws Throwable {
+            Object o = get(receiver, key);
+            Object n;
+            if (o != null && !Intrinsics.isOperand(o)) {
+                // only calls on numbers and strings are part of the update, see GroovyInterceptor.onUpdate.
+                // Others go through checkedCall, which tells static calls on a Class and calls a Closure delegates.
+                n = checkedCall(UPDATE_OWNER.get(), null, o, false, false, operator, form == Form.COMPOUND ? new Object[]{operand} : new Object[0]);
+            } else if (form == Form.COMPOUND) {
+                n = CallSitePool.call(o, operator).call(o, operand);
+            } else {
+                n = CallSitePool.call(o, operator).call(o);
+            }
+            set(receiver, key, n);
+            return form == Form.POSTFIX ? o : n;
+        }
+
+        abstract Object get(Object receiver, Object key) throws Throwable;
+
+        abstract void set(Object receiver, Object key, Object value) throws Throwable;
     }
 
-    /**
-     * ++a.@x / --a.@x
-     */
-    public static Object checkedPrefixAttribute(Object receiver, Object property, boolean safe, boolean spread, String op) throws Throwable {
-        Object o = checkedGetAttribute(receiver, safe, spread, property);
-        Object n = checkedCall(o, false, false, op, new Object[0]);
-        checkedSetAttribute(receiver, property, safe, spread, Types.ASSIGN, n);
-        return n;
+    private static final class PropertyUpdateChain extends UpdateChain {
+        PropertyUpdateChain(Kind kind, GroovyInterceptor[] interceptors, int index, Form form) {
+            super(kind, interceptors, index, Target.PROPERTY, form);
+        }
+
+        Object get(Object receiver, Object property) throws Throwable {
+            return ScriptBytecodeAdapter.getProperty(null, receiver, (String) property);
+        }
+
+        void set(Object receiver, Object property, Object value) throws Throwable {
+            ScriptBytecodeAdapter.setProperty(value, null, receiver, (String) property);
+        }
+    }
+
+    private static final class AttributeUpdateChain extends UpdateChain {
+        AttributeUpdateChain(Kind kind, GroovyInterceptor[] interceptors, int index, Form form) {
+            super(kind, interceptors, index, Target.ATTRIBUTE, form);
+        }
+
+        Object get(Object receiver, Object attribute) throws Throwable {
+            return ScriptBytecodeAdapter.getField(null, receiver, (String) attribute);
+        }
+
+        void set(Object receiver, Object attribute, Object value) throws Throwable {
+            ScriptBytecodeAdapter.setField(value, null, receiver, (String) attribute);
+        }
+    }
+
+    private static final class ArrayUpdateChain extends UpdateChain {
+        ArrayUpdateChain(Kind kind, GroovyInterceptor[] interceptors, int index, Form form) {
+            super(kind, interceptors, index, Target.ARRAY, form);
+        }
+
+        Object get(Object receiver, Object index) throws Throwable {
+            return getAt(receiver, index);
+        }
+
+        void set(Object receiver, Object index, Object value) throws Throwable {
+            putAt(receiver, index, value);
+        }
     }
 
     /**
@@ -616,7 +1286,62 @@ public class Checker {
      * @see BinaryExpressionHelper#evaluateBinaryExpressionWithAssignment
      */
     public static Object checkedBinaryOp(Object lhs, int op, Object rhs) throws Throwable {
-        return checkedCall(lhs,false,false,Ops.binaryOperatorMethods(op),new Object[]{rhs});
+        return checkedBinaryOp(null, lhs, op, rhs);
+    }
+
+    /**
+     * Same as {@link #checkedBinaryOp(Object, int, Object)}, for code in the given class.
+     */
+    public static Object checkedBinaryOp(Class<?> owner, Object lhs, int op, Object rhs) throws Throwable {
+        Kind kind = binaryOp(op);
+        if (kind != null && Intrinsics.isOperand(lhs)) {
+            // same as below, minus the special cases for Class and Closure receivers, and without allocating
+            return InvokerChain.of(owner, lhs, kind).call(lhs, Ops.binaryOperatorMethods(op), rhs);
+        }
+        return checkedCall(owner, null, lhs,false,false,Ops.binaryOperatorMethods(op),new Object[]{rhs});
+    }
+
+    /**
+     * {@link Kind} of {@link #checkedBinaryOp} for each arithmetic operator, indexed by {@code op-PLUS}.
+     */
+    private static final Kind[] BINARY_OPS = new Kind[Types.POWER - Types.PLUS + 1];
+    static {
+        for (int op = Types.PLUS; op <= Types.POWER; op++) {
+            if (Ops.hasBinaryOperatorMethod(op)) {
+                final int operator = op;
+                BINARY_OPS[op - Types.PLUS] = new Kind((kind, interceptors, index) -> new BinaryOpChain(kind, interceptors, index, operator), Event.METHOD_CALL);
+            }
+        }
+    }
+
+    private static Kind binaryOp(int op) {
+        return op >= Types.PLUS && op <= Types.POWER ? BINARY_OPS[op - Types.PLUS] : null;
+    }
+
+    private static final class BinaryOpChain extends SingleArgInvokerChain {
+        private final int op;
+        private final String operatorMethod;
+
+        BinaryOpChain(Kind kind, GroovyInterceptor[] interceptors, int index, int op) {
+            super(kind, interceptors, index);
+            this.op = op;
+            this.operatorMethod = Ops.binaryOperatorMethods(op);
+        }
+
+        Object intercept(Invoker next, Object lhs, String method, Object rhs) throws Throwable {
+            return interceptor().onMethodCall(next, lhs, method, rhs);
+        }
+
+        Object perform(Object lhs, String method, Object rhs) throws Throwable {
+            // interceptors may have passed on a different method
+            if (method.equals(operatorMethod)) {
+                Object result = Intrinsics.binaryOp(op, lhs, rhs);
+                if (result != Intrinsics.UNHANDLED) {
+                    return result;
+                }
+            }
+            return CallSitePool.call(lhs, method).call(lhs, rhs);
+        }
     }
 
     /**
@@ -630,6 +1355,13 @@ public class Checker {
      * @see InvokerHelper#bitwiseNegate
      */
     public static Object checkedBitwiseNegate(Object value) throws Throwable {
+        return checkedBitwiseNegate(null, value);
+    }
+
+    /**
+     * Same as {@link #checkedBitwiseNegate(Object)}, for code in the given class.
+     */
+    public static Object checkedBitwiseNegate(Class<?> owner, Object value) throws Throwable {
         if (value instanceof Integer) {
             return ~((Integer)value);
         }
@@ -637,25 +1369,25 @@ public class Checker {
             return ~((Long)value);
         }
         if (value instanceof BigInteger) {
-            return checkedCall(value, false, false, "not", new Object[]{});
+            return checkedCall(owner, null, value, false, false, "not", new Object[]{});
         }
         if (value instanceof String) {
             // value is a regular expression.
-            return checkedStaticCall(StringGroovyMethods.class, "bitwiseNegate", new Object[]{ value.toString() });
+            return checkedStaticCall(owner, null, StringGroovyMethods.class, "bitwiseNegate", new Object[]{ value.toString() });
         }
         if (value instanceof GString) {
             // value is a regular expression.
-            return checkedStaticCall(StringGroovyMethods.class, "bitwiseNegate", new Object[]{ value.toString() });
+            return checkedStaticCall(owner, null, StringGroovyMethods.class, "bitwiseNegate", new Object[]{ value.toString() });
         }
         if (value instanceof ArrayList) { // ArrayList is the exact type that Groovy checks in InvokerHelper.bitwiseNegate.
             // value is a list.
             List newlist = new ArrayList();
             for (Object element : ((ArrayList) value)) {
-                newlist.add(checkedBitwiseNegate(element));
+                newlist.add(checkedBitwiseNegate(owner, element));
             }
             return newlist;
         }
-        return checkedCall(value, false, false, "bitwiseNegate", EMPTY_ARRAY);
+        return checkedCall(owner, null, value, false, false, "bitwiseNegate", EMPTY_ARRAY);
     }
 
     /**
@@ -671,27 +1403,34 @@ public class Checker {
      * @see ObjectRange
      */
     public static Object checkedCreateRange(Object from, Object to, boolean inclusive) throws Throwable {
+        return checkedCreateRange(null, from, to, inclusive);
+    }
+
+    /**
+     * Same as {@link #checkedCreateRange(Object, Object, boolean)}, for code in the given class.
+     */
+    public static Object checkedCreateRange(Class<?> owner, Object from, Object to, boolean inclusive) throws Throwable {
         if (from instanceof Integer && to instanceof Integer) {
             if (inclusive || from != to) {
-                return checkedConstructor(IntRange.class, new Object[] { inclusive, from, to });
+                return checkedConstructor(owner, null, IntRange.class, new Object[] { inclusive, from, to });
             }
             // Fallthrough for EmptyRange
         }
         if (!inclusive) {
-            if (Boolean.TRUE.equals(checkedComparison(from, Types.COMPARE_EQUAL, to))) {
+            if (Boolean.TRUE.equals(checkedComparison(owner, from, Types.COMPARE_EQUAL, to))) {
                 // Unchecked cast to Comparable matches the behavior of ScriptBytecodeAdapter.createRange.
-                return checkedConstructor(EmptyRange.class, new Object[] { (Comparable)from });
+                return checkedConstructor(owner, null, EmptyRange.class, new Object[] { (Comparable)from });
             }
-            if (Boolean.TRUE.equals(checkedComparison(from, Types.COMPARE_GREATER_THAN, to))) {
-                to = checkedCall(to, false, false, "next", EMPTY_ARRAY);
+            if (Boolean.TRUE.equals(checkedComparison(owner, from, Types.COMPARE_GREATER_THAN, to))) {
+                to = checkedCall(owner, null, to, false, false, "next", EMPTY_ARRAY);
             } else {
-                to = checkedCall(to, false, false, "previous", EMPTY_ARRAY);
+                to = checkedCall(owner, null, to, false, false, "previous", EMPTY_ARRAY);
             }
         }
         // Unlike IntRange and EmptyRange, ObjectRange calls various methods reflectively, so we cannot allow users to
         // create an ObjectRange directly. Instead, we intercept potential reflective calls and create the range ourselves.
-        interceptRangeMethods((Comparable)from);
-        interceptRangeMethods((Comparable)to);
+        interceptRangeMethods(owner, (Comparable)from);
+        interceptRangeMethods(owner, (Comparable)to);
         // Unchecked cast to Comparable matches the behavior of ScriptBytecodeAdapter.createRange.
         return new ObjectRange((Comparable)from, (Comparable)to);
     }
@@ -702,7 +1441,7 @@ public class Checker {
      * Rather than trying to intercept those calls as they happen (by implementing a sandbox-aware {@link ObjectRange} subclass),
      * we intercept all of the possible calls that might be made before we even create the range.
      */
-    private static void interceptRangeMethods(Comparable value) throws Throwable {
+    private static void interceptRangeMethods(Class<?> owner, Comparable value) throws Throwable {
         if (value == null) {
             return;
         }
@@ -711,15 +1450,26 @@ public class Checker {
             if (method.equals("compareTo")) {
                 args = new Object[]{ null };
             }
-            new VarArgInvokerChain(value) {
-                public Object call(Object receiver, String method, Object... args) throws Throwable {
-                    if (chain.hasNext()) {
-                        return chain.next().onMethodCall(this, receiver, method, args);
-                    } else {
-                        return null;
-                    }
-                }
-            }.call(value, method, args);
+            InvokerChain.of(owner, value, CHECK_METHOD_CALL).call(value, method, args);
+        }
+    }
+
+    /**
+     * Only consults the interceptors about an instance method call, which is then performed elsewhere (if at all).
+     */
+    private static final Kind CHECK_METHOD_CALL = new Kind(CheckMethodCallChain::new, Event.METHOD_CALL);
+
+    private static final class CheckMethodCallChain extends VarArgInvokerChain {
+        CheckMethodCallChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            return interceptor().onMethodCall(next, receiver, method, args);
+        }
+
+        Object perform(Object receiver, String method, Object... args) {
+            return null;
         }
     }
 
@@ -734,6 +1484,13 @@ public class Checker {
      * @see InvokerHelper#unaryMinus
      */
     public static Object checkedUnaryMinus(Object value) throws Throwable {
+        return checkedUnaryMinus(null, value);
+    }
+
+    /**
+     * Same as {@link #checkedUnaryMinus(Object)}, for code in the given class.
+     */
+    public static Object checkedUnaryMinus(Class<?> owner, Object value) throws Throwable {
         if (value instanceof Integer) {
             Integer number = (Integer) value;
             return -number;
@@ -743,10 +1500,10 @@ public class Checker {
             return -number;
         }
         if (value instanceof BigInteger) {
-            return checkedCall(value, false, false, "negate", new Object[]{});
+            return checkedCall(owner, null, value, false, false, "negate", new Object[]{});
         }
         if (value instanceof BigDecimal) {
-            return checkedCall(value, false, false, "negate", new Object[]{});
+            return checkedCall(owner, null, value, false, false, "negate", new Object[]{});
         }
         if (value instanceof Double) {
             Double number = (Double) value;
@@ -768,11 +1525,11 @@ public class Checker {
             // value is a list.
             List newlist = new ArrayList();
             for (Object element : ((ArrayList) value)) {
-                newlist.add(checkedUnaryMinus(element));
+                newlist.add(checkedUnaryMinus(owner, element));
             }
             return newlist;
         }
-        return checkedCall(value, false, false, "negative", EMPTY_ARRAY);
+        return checkedCall(owner, null, value, false, false, "negative", EMPTY_ARRAY);
     }
 
     /**
@@ -786,6 +1543,13 @@ public class Checker {
      * @see InvokerHelper#unaryPlus
      */
     public static Object checkedUnaryPlus(Object value) throws Throwable {
+        return checkedUnaryPlus(null, value);
+    }
+
+    /**
+     * Same as {@link #checkedUnaryPlus(Object)}, for code in the given class.
+     */
+    public static Object checkedUnaryPlus(Class<?> owner, Object value) throws Throwable {
         if (value instanceof Integer ||
                 value instanceof Long ||
                 value instanceof BigInteger ||
@@ -800,34 +1564,190 @@ public class Checker {
             // value is a list.
             List newlist = new ArrayList();
             for (Object element : ((ArrayList) value)) {
-                newlist.add(checkedUnaryPlus(element));
+                newlist.add(checkedUnaryPlus(owner, element));
             }
             return newlist;
         }
-        return checkedCall(value, false, false, "positive", EMPTY_ARRAY);
+        return checkedCall(owner, null, value, false, false, "positive", EMPTY_ARRAY);
     }
 
     /**
      * A compare method that invokes a.equals(b) or a.compareTo(b)==0
      */
     public static Object checkedComparison(Object lhs, final int op, Object rhs) throws Throwable {
+        return checkedComparison(null, lhs, op, rhs);
+    }
+
+    /**
+     * Same as {@link #checkedComparison(Object, int, Object)}, for code in the given class.
+     */
+    public static Object checkedComparison(Class<?> owner, Object lhs, final int op, Object rhs) throws Throwable {
         if (lhs==null) {// bypass the checker if lhs is null, as it will not result in any calls that will require protection anyway
-            return InvokerHelper.invokeStaticMethod(ScriptBytecodeAdapter.class,
-                    Ops.binaryOperatorMethods(op), new Object[]{null, rhs});
+            return compare(op, null, rhs);
         }
 
-        return new SingleArgInvokerChain(lhs) {
-            public Object call(Object lhs, String method, Object rhs) throws Throwable {
-                if (chain.hasNext()) {
-                    // based on what ScriptBytecodeAdapter actually does
-                    return chain.next().onMethodCall(this, lhs,
-                            lhs instanceof Comparable ? "compareTo" : "equals",rhs);
-                } else {
-                    return InvokerHelper.invokeStaticMethod(ScriptBytecodeAdapter.class,
-                            Ops.binaryOperatorMethods(op), new Object[]{lhs,rhs});
-                }
+        return InvokerChain.of(owner, lhs, comparison(op)).call(lhs, null, rhs);
+    }
+
+    /**
+     * {@link Kind} of {@link #checkedComparison} for each comparison operator, indexed by {@code op-COMPARE_NOT_EQUAL}.
+     */
+    private static final Kind[] COMPARISONS = new Kind[Types.COMPARE_TO - Types.COMPARE_NOT_EQUAL + 1];
+    static {
+        for (int op = Types.COMPARE_NOT_EQUAL; op <= Types.COMPARE_TO; op++) {
+            if (Ops.isComparisionOperator(op) && Ops.hasBinaryOperatorMethod(op)) {
+                final int operator = op;
+                COMPARISONS[op - Types.COMPARE_NOT_EQUAL] = new Kind((kind, interceptors, index) -> new ComparisonChain(kind, interceptors, index, operator), Event.METHOD_CALL);
             }
-        }.call(lhs, null, rhs);
+        }
+    }
+
+    private static Kind comparison(int op) {
+        Kind kind = null;
+        if (op >= Types.COMPARE_NOT_EQUAL && op <= Types.COMPARE_TO) {
+            kind = COMPARISONS[op - Types.COMPARE_NOT_EQUAL];
+        }
+        if (kind == null)   throw new IllegalArgumentException(""+op);
+        return kind;
+    }
+
+    /**
+     * Performs a comparison the way {@link ScriptBytecodeAdapter} does.
+     */
+    private static Object compare(int op, Object lhs, Object rhs) {
+        Object result = Intrinsics.compare(op, lhs, rhs);
+        if (result != Intrinsics.UNHANDLED) {
+            return result;
+        }
+        switch (op) {
+        case Types.COMPARE_EQUAL:               return ScriptBytecodeAdapter.compareEqual(lhs, rhs);
+        case Types.COMPARE_NOT_EQUAL:           return ScriptBytecodeAdapter.compareNotEqual(lhs, rhs);
+        case Types.COMPARE_LESS_THAN:           return ScriptBytecodeAdapter.compareLessThan(lhs, rhs);
+        case Types.COMPARE_LESS_THAN_EQUAL:     return ScriptBytecodeAdapter.compareLessThanEqual(lhs, rhs);
+        case Types.COMPARE_GREATER_THAN:        return ScriptBytecodeAdapter.compareGreaterThan(lhs, rhs);
+        case Types.COMPARE_GREATER_THAN_EQUAL:  return ScriptBytecodeAdapter.compareGreaterThanEqual(lhs, rhs);
+        case Types.COMPARE_TO:                  return ScriptBytecodeAdapter.compareTo(lhs, rhs);
+        default:                                throw new IllegalArgumentException(""+op);
+        }
+    }
+
+    private static final class ComparisonChain extends SingleArgInvokerChain {
+        private final int op;
+
+        ComparisonChain(Kind kind, GroovyInterceptor[] interceptors, int index, int op) {
+            super(kind, interceptors, index);
+            this.op = op;
+        }
+
+        Object intercept(Invoker next, Object lhs, String method, Object rhs) throws Throwable {
+            // based on what ScriptBytecodeAdapter actually does
+            return interceptor().onMethodCall(next, lhs,
+                    lhs instanceof Comparable ? "compareTo" : "equals",rhs);
+        }
+
+        Object perform(Object lhs, String method, Object rhs) throws Throwable {
+            return compare(op, lhs, rhs);
+        }
+    }
+
+    /*
+        Arithmetic on literals, which SandboxTransformer computes at compile time.
+     */
+
+    /**
+     * Returns {@code lhs op rhs} for literal operands, or null if it has to be computed at runtime as usual.
+     * Only used by {@link SandboxTransformer}, at compile time.
+     *
+     * @param op
+     *      One of the binary operators of {@link Types}
+     */
+    public static Object foldConstants(int op, Object lhs, Object rhs) {
+        try {
+            Object r = Intrinsics.binaryOp(op, lhs, rhs);
+            return r == Intrinsics.UNHANDLED ? null : r;
+        } catch (ArithmeticException e) {
+            return null; // like 1 % 0, which should fail when run, not when compiled
+        }
+    }
+
+    /**
+     * Returns true if the values computed by {@link #foldConstants} are still what the operators would produce in
+     * the current thread, that is unless a category is in use or some metaclass has been replaced.
+     */
+    public static boolean isFoldingValid() {
+        return Intrinsics.isArithmeticEligible();
+    }
+
+    /*
+        Variants of checkedBinaryOp and checkedComparison for operands that SandboxTransformer knows to be of the same
+        primitive type, which it calls without going through a call site, so that nothing needs to be boxed.
+
+        Interceptors are asked about the same boxed operation as usual, except that when they are all known by their
+        VerdictCache to allow it, we compute the result right away. Only operators whose result is of the type of the
+        operands (or a boolean) are supported, and the result of an interceptor is converted to that type.
+     */
+
+    public static int checkedIntBinaryOp(Class<?> owner, int lhs, int op, int rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveBinaryOp(op, false));
+        String method = Ops.binaryOperatorMethods(op);
+        if (Intrinsics.isArithmeticEligible() && chain.isAllowed(Integer.class, method, Integer.class)) {
+            return Intrinsics.intOp(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.intUnbox(chain.call((Object) lhs, method, (Object) rhs));
+    }
+
+    public static long checkedLongBinaryOp(Class<?> owner, long lhs, int op, long rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveBinaryOp(op, false));
+        String method = Ops.binaryOperatorMethods(op);
+        if (Intrinsics.isArithmeticEligible() && chain.isAllowed(Long.class, method, Long.class)) {
+            return Intrinsics.longOp(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.longUnbox(chain.call((Object) lhs, method, (Object) rhs));
+    }
+
+    public static double checkedDoubleBinaryOp(Class<?> owner, double lhs, int op, double rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveBinaryOp(op, true));
+        String method = Ops.binaryOperatorMethods(op);
+        if (Intrinsics.isArithmeticEligible() && chain.isAllowed(Double.class, method, Double.class)) {
+            return Intrinsics.doubleOp(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.doubleUnbox(chain.call((Object) lhs, method, (Object) rhs));
+    }
+
+    public static boolean checkedIntComparison(Class<?> owner, int lhs, int op, int rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveComparison(op));
+        if (chain.isAllowed(Integer.class, null, Integer.class)) {
+            return Intrinsics.intComparison(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.booleanUnbox(chain.call((Object) lhs, null, (Object) rhs));
+    }
+
+    public static boolean checkedLongComparison(Class<?> owner, long lhs, int op, long rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveComparison(op));
+        if (chain.isAllowed(Long.class, null, Long.class)) {
+            return Intrinsics.longComparison(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.booleanUnbox(chain.call((Object) lhs, null, (Object) rhs));
+    }
+
+    public static boolean checkedDoubleComparison(Class<?> owner, double lhs, int op, double rhs) throws Throwable {
+        InvokerChain chain = Interceptors.of(owner).chain(primitiveComparison(op));
+        if (chain.isAllowed(Double.class, null, Double.class)) {
+            return Intrinsics.doubleComparison(op, lhs, rhs);
+        }
+        return DefaultTypeTransformation.booleanUnbox(chain.call((Object) lhs, null, (Object) rhs));
+    }
+
+    private static Kind primitiveBinaryOp(int op, boolean floatingPoint) {
+        boolean supported = op == Types.PLUS || op == Types.MINUS || op == Types.MULTIPLY || op == Types.MOD
+                || (op == Types.DIVIDE && floatingPoint); // dividing integers gives a BigDecimal
+        if (!supported)   throw new IllegalArgumentException(""+op);
+        return binaryOp(op);
+    }
+
+    private static Kind primitiveComparison(int op) {
+        if (!Intrinsics.isBooleanComparison(op))   throw new IllegalArgumentException(""+op);
+        return comparison(op);
     }
 
     /**
@@ -835,7 +1755,23 @@ public class Checker {
      * For example, might run {@code receiver.method1(null, false)} and {@code receiver.method2(0, null)} if methods with matching signatures were defined in the interfaces.
      */
     public static Object checkedCast(Class<?> clazz, Object exp, boolean ignoreAutoboxing, boolean coerce, boolean strict) throws Throwable {
-        return preCheckedCast(clazz, exp, ignoreAutoboxing, coerce, strict).call();
+        return checkedCast(null, clazz, exp, ignoreAutoboxing, coerce, strict);
+    }
+
+    /**
+     * Same as {@link #checkedCast(Class, Object, boolean, boolean, boolean)}, for code in the given class.
+     */
+    public static Object checkedCast(Class<?> owner, Class<?> clazz, Object exp, boolean ignoreAutoboxing, boolean coerce, boolean strict) throws Throwable {
+        // Most casts need no interceptor at all, so we skip preCheckedCast and the Thunk it allocates
+        CastCache.Action action = exp == null ? CastCache.Action.CONVERT : CastCache.of(clazz, exp.getClass());
+        switch (action) {
+        case RETURN:
+            return exp;
+        case CONVERT:
+            return cast(clazz, exp, coerce, strict);
+        default:
+            return preCheckedCast(owner, clazz, exp, ignoreAutoboxing, coerce, strict).call();
+        }
     }
 
     /** Same as {@link Callable} but can throw {@link Throwable}. */
@@ -845,6 +1781,13 @@ public class Checker {
     }
 
     public static Thunk preCheckedCast(Class<?> clazz, Object exp, boolean ignoreAutoboxing, boolean coerce, boolean strict) throws Throwable {
+        return preCheckedCast(null, clazz, exp, ignoreAutoboxing, coerce, strict);
+    }
+
+    /**
+     * Same as {@link #preCheckedCast(Class, Object, boolean, boolean, boolean)}, for code in the given class.
+     */
+    public static Thunk preCheckedCast(Class<?> owner, Class<?> clazz, Object exp, boolean ignoreAutoboxing, boolean coerce, boolean strict) throws Throwable {
         // Note: Be careful calling methods on exp here since the user has control over that object.
         if (exp != null &&
                 // Ignore some things handled by DefaultGroovyMethods.asType(Collection, Class), e.g., `[1, 2, 3] as Set` (interface → first clause) or `[1, 2, 3] as HashSet` (collection assigned to concrete class → second clause):
@@ -853,26 +1796,8 @@ public class Checker {
             if (clazz.isAssignableFrom(exp.getClass())) {
                 return () -> exp;
             } else if (clazz.isInterface()) {
-                for (Method m : clazz.getMethods()) {
-                    Object[] args = new Object[m.getParameterTypes().length];
-                    for (int i = 0; i < args.length; i++) {
-                        args[i] = getDefaultValue(m.getParameterTypes()[i]);
-                    }
-                    // We intercept all methods defined on the interface to ensure they are permitted, and deliberately ignore the return value:
-                    new VarArgInvokerChain(exp) {
-                        public Object call(Object receiver, String method, Object... args) throws Throwable {
-                            if (chain.hasNext()) {
-                                if (receiver instanceof Class) {
-                                    return chain.next().onStaticCall(this, (Class) receiver, method, args);
-                                } else {
-                                    return chain.next().onMethodCall(this, receiver, method, args);
-                                }
-                            } else {
-                                return null;
-                            }
-                        }
-                    }.call(exp, m.getName(), args);
-                }
+                // We intercept all methods defined on the interface to ensure they are permitted
+                InterfaceCast.check(InvokerChain.of(owner, exp, CHECK_CALL), clazz, exp);
             } else if (Modifier.isAbstract(clazz.getModifiers()) && !Modifier.isFinal(clazz.getModifiers()) && (exp instanceof Closure || exp instanceof Map)) {
                 // Groovy will create a proxy object whose methods will delegate to the closure or map values.
                 // The bodies of any closures cast using this mechanism will be be sandbox transformed, but we check
@@ -885,27 +1810,11 @@ public class Checker {
                     for (int i = 0; i < args.length; i++) {
                         args[i] = getDefaultValue(c.getParameterTypes()[i]);
                     }
-                    new VarArgInvokerChain(exp) {
-                        public Object call(Object receiver, String method, Object... args) throws Throwable {
-                            if (chain.hasNext()) {
-                                return chain.next().onNewInstance(this, clazz, args);
-                            } else {
-                                return null;
-                            }
-                        }
-                    }.call(clazz, null, args);
+                    InvokerChain.of(owner, exp, CHECK_NEW_INSTANCE).call(clazz, null, args);
                 }
             } else if ((clazz == boolean.class || clazz == Boolean.class) && exp.getClass() != Boolean.class) {
                 // Boolean casts must never be handled as constructor invocation.
-                new ZeroArgInvokerChain(exp) {
-                    public Object call(Object receiver, String method) throws Throwable {
-                        if (chain.hasNext()) {
-                            return chain.next().onMethodCall(this, receiver, method);
-                        } else {
-                            return null;
-                        }
-                    }
-                }.call(exp, "asBoolean");
+                InvokerChain.of(owner, exp, CHECK_METHOD_CALL).call(exp, "asBoolean", EMPTY_ARRAY);
             } else if (unbox(clazz).isPrimitive() || clazz == String.class) {
                 // Casts to non-boolean primitives (and their boxed equivalents) and to String never
                 // perform any reflective operations, so we do not care about them, and they should never be handled as
@@ -928,15 +1837,7 @@ public class Checker {
                 }
                 if (args != null) {
                     // We intercept the constructor that will be used for the cast, and again, deliberately ignore the return value:
-                    new VarArgInvokerChain(clazz) {
-                        public Object call(Object receiver, String method, Object... args) throws Throwable {
-                            if (chain.hasNext()) {
-                                return chain.next().onNewInstance(this, (Class) receiver, args);
-                            } else {
-                                return null;
-                            }
-                        }
-                    }.call(clazz, null, args);
+                    InvokerChain.of(owner, clazz, CHECK_NEW_INSTANCE).call(clazz, null, args);
                 } else {
                     throw new IllegalStateException(exp.getClass() + ".toArray() must not return null");
                 }
@@ -955,52 +1856,82 @@ public class Checker {
                 }
                 // We intercept the per-element casts.
                 for (Object element : array) {
-                    preCheckedCast(clazz.getComponentType(), element, coerce, strict, ignoreAutoboxing);
+                    preCheckedCast(owner, clazz.getComponentType(), element, coerce, strict, ignoreAutoboxing);
                 }
             } else if (clazz == File.class && exp instanceof CharSequence) {
                 Object[] args = new Object[]{exp.toString()};
                 // We intercept the constructor that will be used for the cast, and again, deliberately ignore the return value:
-                new VarArgInvokerChain(clazz) {
-                    public Object call(Object receiver, String method, Object... args) throws Throwable {
-                        if (chain.hasNext()) {
-                            return chain.next().onNewInstance(this, (Class) receiver, args);
-                        } else {
-                            return null;
-                        }
-                    }
-                }.call(clazz, null, args);
+                InvokerChain.of(owner, clazz, CHECK_NEW_INSTANCE).call(clazz, null, args);
             } else if (exp instanceof File && (clazz.isArray() || Collection.class.isAssignableFrom(clazz))) {
                 // see https://github.com/apache/groovy/blob/edcd6c4435138733668cd75ac0d3342efb39dc05/src/main/org/codehaus/groovy/runtime/typehandling/DefaultTypeTransformation.java#L472-L479
                 // We intercept the method that will be used for the cast, and again, deliberately ignore the return value:
-                new VarArgInvokerChain(clazz) {
-                    public Object call(Object receiver, String method, Object... args) throws Throwable {
-                        if (chain.hasNext() && receiver instanceof Class) {
-                            return chain.next().onStaticCall(this, (Class) receiver, method, args);
-                        } else {
-                            return null;
-                        }
-                    }
-                }.call(ResourceGroovyMethods.class, "readLines", exp);
+                InvokerChain.of(owner, clazz, CHECK_CALL).call(ResourceGroovyMethods.class, "readLines", exp);
             } else if (exp instanceof Class && ((Class) exp).isEnum() && (clazz.isArray() || Collection.class.isAssignableFrom(clazz))) {
                 // see https://github.com/apache/groovy/blob/edcd6c4435138733668cd75ac0d3342efb39dc05/src/main/org/codehaus/groovy/runtime/typehandling/DefaultTypeTransformation.java#L480-L483
                 for (Field f : ((Class) exp).getFields()) {
                     if (f.isEnumConstant()) {
                         // We intercept all Enum constants to ensure they are permitted, and deliberately ignore the return value:
-                        new ZeroArgInvokerChain(exp) {
-                            public Object call(Object receiver, String field) throws Throwable {
-                                if (chain.hasNext() && receiver instanceof Class) {
-                                    return chain.next().onGetProperty(this, receiver, field);
-                                } else {
-                                    return null;
-                                }
-                            }
-                        }.call(exp, f.getName());
+                        InvokerChain.of(owner, exp, CHECK_GET_PROPERTY).call(exp, f.getName());
                     }
                 }
             }
         }
         // TODO what does ignoreAutoboxing do?
-        return () -> strict ? clazz.cast(exp) : coerce ? ScriptBytecodeAdapter.asType(exp, clazz) : ScriptBytecodeAdapter.castToType(exp, clazz);
+        return () -> cast(clazz, exp, coerce, strict);
+    }
+
+    /**
+     * Performs a cast once the interceptors have been asked about whatever it involves.
+     */
+    private static Object cast(Class<?> clazz, Object exp, boolean coerce, boolean strict) throws Throwable {
+        return strict ? clazz.cast(exp) : coerce ? ScriptBytecodeAdapter.asType(exp, clazz) : ScriptBytecodeAdapter.castToType(exp, clazz);
+    }
+
+    /**
+     * Only consults the interceptors about a method call, which is then performed elsewhere (if at all).
+     * Calls on a {@link Class} are treated as static calls.
+     */
+    private static final Kind CHECK_CALL = new Kind(CheckCallChain::new, Event.METHOD_CALL, Event.STATIC_CALL);
+
+    private static final class CheckCallChain extends VarArgInvokerChain {
+        CheckCallChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable {
+            if (receiver instanceof Class) {
+                return interceptor().onStaticCall(next, (Class) receiver, method, args);
+            } else {
+                return interceptor().onMethodCall(next, receiver, method, args);
+            }
+        }
+
+        Object perform(Object receiver, String method, Object... args) {
+            return null;
+        }
+    }
+
+    /**
+     * Only consults the interceptors about a static property access, which is then performed elsewhere (if at all).
+     */
+    private static final Kind CHECK_GET_PROPERTY = new Kind(CheckGetPropertyChain::new, Event.GET_PROPERTY);
+
+    private static final class CheckGetPropertyChain extends ZeroArgInvokerChain {
+        CheckGetPropertyChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+            super(kind, interceptors, index);
+        }
+
+        Object intercept(Invoker next, Object receiver, String field) throws Throwable {
+            if (receiver instanceof Class) {
+                return interceptor().onGetProperty(next, receiver, field);
+            } else {
+                return null;
+            }
+        }
+
+        Object perform(Object receiver, String field) {
+            return null;
+        }
     }
     // https://stackoverflow.com/a/38243203/12916
     @SuppressWarnings("unchecked")
@@ -1033,59 +1964,7 @@ public class Checker {
         return "java.util".equals(packageName);
     }
 
-    /**
-     * Look in {@link #GROOVY_RUNTIME_REPLACEMENTS} to see if {@link Checker} defines a checked equivalent of the given
-     * method, and if so, return a {@link Thunk} that will invoke the checked method rather than the original.
-     *
-     * <p>Groovy uses runtime APIs (e.g. {@link ScriptByteCodeAdapter}) to support various standard language features
-     * such as unary operators. Some of these APIs invoke methods reflectively based on the runtime types of arguments,
-     * which the sandbox does not see and so it cannot intercept those calls. We define sandbox-aware replacements for
-     * these methods so that these reflective calls can be intercepted.
-     * <p>When using groovy-sandbox through script-security without groovy-cps, these replacements only take effect if
-     * a script directly calls one of the original methods. When using groovy-cps, these replacements also take effect
-     * when their corresponding AST nodes (e.g. unary operators) are used.
-     */
-    private static Thunk findCheckedReplacement(Class<?> clazz, String method, Object[] args) {
-        Method maybeReplacement = GROOVY_RUNTIME_REPLACEMENTS.get(new SimpleImmutableEntry(clazz, method));
-        if (maybeReplacement == null) {
-            return null;
-        }
-        ParameterTypes parameterTypes = new ParameterTypes(maybeReplacement.getParameterTypes());
-        if (!parameterTypes.isValidExactMethod(args)) {
-            return null;
-        }
-        return () -> {
-            try {
-                return maybeReplacement.invoke(null, args);
-            } catch (InvocationTargetException e) {
-                throw e.getCause(); // e.g. CpsCallableInvocation
-            }
-        };
-    }
-
-    /**
-     * A map from Groovy methods to checked replacements that will be used instead when the sandbox is active.
-     */
-    private static final HashMap<Map.Entry<Class<?>, String>, Method> GROOVY_RUNTIME_REPLACEMENTS = new HashMap<>();
-    static {
-        addReplacement(InvokerHelper.class, "bitwiseNegate", "checkedBitwiseNegate", Object.class);
-        addReplacement(InvokerHelper.class, "unaryMinus", "checkedUnaryMinus", Object.class);
-        addReplacement(InvokerHelper.class, "unaryPlus", "checkedUnaryPlus", Object.class);
-        addReplacement(ScriptBytecodeAdapter.class, "bitwiseNegate", "checkedBitwiseNegate", Object.class);
-        addReplacement(ScriptBytecodeAdapter.class, "unaryMinus", "checkedUnaryMinus", Object.class);
-        addReplacement(ScriptBytecodeAdapter.class, "unaryPlus", "checkedUnaryPlus", Object.class);
-        addReplacement(ScriptBytecodeAdapter.class, "createRange", "checkedCreateRange", Object.class, Object.class, boolean.class);
-    }
-
-    private static void addReplacement(Class<?> clazz, String name, String checkedName, Class<?>... parameterTypes) {
-        try {
-            GROOVY_RUNTIME_REPLACEMENTS.put(new SimpleImmutableEntry(clazz, name), Checker.class.getDeclaredMethod(checkedName, parameterTypes));
-        } catch (NoSuchMethodException e) {
-            throw new AssertionError(e); // Developer error.
-        }
-    }
-
-    private static Class<?> unbox(Class<?> clazz) {
+    static Class<?> unbox(Class<?> clazz) {
         return BOX_TO_PRIMITIVE.getOrDefault(clazz, clazz);
     }
 
@@ -0,0 +1,273 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.Closure;
+import groovy.lang.GroovyInterceptable;
+import groovy.lang.GroovyObject;
+import groovy.lang.GroovyObjectSupport;
+import groovy.lang.MetaClass;
+import groovy.lang.MetaClassImpl;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.GroovyCategorySupport;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.codehaus.groovy.runtime.MetaClassHelper.convertToTypeArray;
+
+/**
+ * Decides where a method call on a {@link Closure} that the closure does not define itself goes to,
+ * and remembers the decision, since DSLs written as {@code closure { step(...) }} make the same calls over and over.
+ *
+ * <p>
+ * Decisions are kept per closure class, resolution strategy, classes of the {@linkplain ClosureSupport#targetsOf
+ * targets}, method name, and argument types, and are only reused while all the metaclasses involved are the same
+ * and unmodified. Nothing is remembered while a category is in use, since categories add methods per thread.
+ */
+final class ClosureDispatchCache {
+    private ClosureDispatchCache() {}
+
+    /**
+     * See {@link StaticDispatchCache#MAX_NAMES}.
+     */
+    private static final int MAX_NAMES = 256;
+    private static final int MAX_ENTRIES_PER_NAME = 8;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final int[] NO_FALLBACKS = new int[0];
+
+    /**
+     * Where a call goes to.
+     */
+    static final class Resolution {
+        /**
+         * The closure itself has the method, so this is an ordinary call.
+         */
+        static final Resolution CLOSURE = new Resolution(-1, NO_FALLBACKS);
+
+        /**
+         * Index of the target that has the method, or -1.
+         */
+        final int target;
+        /**
+         * If none does, indices of the targets that might still handle the call if asked through {@code invokeMethod},
+         * in the order they should be tried. Others would certainly throw {@link groovy.lang.MissingMethodException}.
+         */
+        final int[] fallbacks;
+
+        Resolution(int target, int[] fallbacks) {
+            this.target = target;
+            this.fallbacks = fallbacks;
+        }
+    }
+
+    /**
+     * Decision for one combination of resolution strategy, targets, and argument types.
+     */
+    private static final class Entry {
+        final int strategy;
+        final MetaClassImpl metaClass;
+        final int version;
+        final Class<?>[] targetTypes;
+        final MetaClassImpl[] targetMetaClasses;
+        final int[] targetVersions;
+        final Class<?>[] argTypes;
+        /**
+         * Set before the entry is published.
+         */
+        Resolution resolution;
+
+        /**
+         * Captures the current state of the metaclasses, before the decision is made.
+         */
+        Entry(int strategy, MetaClassImpl metaClass, List<Object> targets, MetaClassImpl[] targetMetaClasses, Object[] args) {
+            this.strategy = strategy;
+            this.metaClass = metaClass;
+            this.version = metaClass.getVersion();
+            this.targetTypes = new Class<?>[targets.size()];
+            this.targetMetaClasses = targetMetaClasses;
+            this.targetVersions = new int[targets.size()];
+            for (int i = 0; i < targetTypes.length; i++) {
+                targetTypes[i] = targets.get(i).getClass();
+                targetVersions[i] = targetMetaClasses[i].getVersion();
+            }
+            this.argTypes = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                argTypes[i] = args[i] == null ? null : args[i].getClass();
+            }
+        }
+
+        boolean isCurrent() {
+            if (version != metaClass.getVersion()) {
+                return false;
+            }
+            for (int i = 0; i < targetMetaClasses.length; i++) {
+                if (targetVersions[i] != targetMetaClasses[i].getVersion()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matches(int strategy, MetaClass metaClass, List<Object> targets, Object[] args) {
+            if (this.strategy != strategy || this.metaClass != metaClass || targets.size() != targetTypes.length
+                    || args.length != argTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (argTypes[i] != (args[i] == null ? null : args[i].getClass())) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < targetTypes.length; i++) {
+                Object t = targets.get(i);
+                if (targetTypes[i] != t.getClass() || targetMetaClasses[i] != InvokerHelper.getMetaClass(t)) {
+                    return false;
+                }
+            }
+            return isCurrent();
+        }
+    }
+
+    private static final class Entries {
+        final ConcurrentMap<String, Entry[]> byName = new ConcurrentHashMap<>();
+
+        synchronized void add(String method, Entry e) {
+            Entry[] current = byName.getOrDefault(method, NO_ENTRIES);
+            if (current.length == 0 && byName.size() >= MAX_NAMES) {
+                return;
+            }
+            Entry[] updated = new Entry[current.length + 1];
+            int n = 0;
+            for (Entry old : current) {
+                if (old.isCurrent()) {
+                    updated[n++] = old;
+                }
+            }
+            if (n >= MAX_ENTRIES_PER_NAME) {
+                return;
+            }
+            updated[n++] = e;
+            byName.put(method, Arrays.copyOf(updated, n));
+        }
+    }
+
+    private static final ClassValue<Entries> ENTRIES = new ClassValue<Entries>() {
+        @Override
+        protected Entries computeValue(Class<?> type) {
+            return new Entries();
+        }
+    };
+
+    /**
+     * Decides where {@code closure.method(args)} goes to.
+     *
+     * @param targets
+     *      {@link ClosureSupport#targetsOf} the closure.
+     */
+    static Resolution resolve(Closure<?> closure, List<Object> targets, String method, Object[] args) {
+        MetaClass mc = InvokerHelper.getMetaClass(closure);
+        int strategy = closure.getResolveStrategy();
+        boolean cacheable = mc instanceof MetaClassImpl && !GroovyCategorySupport.hasCategoryInCurrentThread();
+        Entries entries = null;
+        if (cacheable) {
+            entries = ENTRIES.get(closure.getClass());
+            Entry[] candidates = entries.byName.get(method);
+            if (candidates != null) {
+                for (Entry e : candidates) {
+                    if (e.matches(strategy, mc, targets, args)) {
+                        return e.resolution;
+                    }
+                }
+            }
+        }
+
+        Entry entry = cacheable ? newEntry(strategy, (MetaClassImpl) mc, targets, args) : null;
+        Resolution r = compute(mc, targets, method, convertToTypeArray(args));
+        if (entry != null) {
+            entry.resolution = r;
+            entries.add(method, entry);
+        }
+        return r;
+    }
+
+    /**
+     * @return
+     *      null if some of the metaclasses are not {@link MetaClassImpl}s, so we cannot tell when they change.
+     */
+    private static Entry newEntry(int strategy, MetaClassImpl mc, List<Object> targets, Object[] args) {
+        MetaClassImpl[] targetMetaClasses = new MetaClassImpl[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            MetaClass t = InvokerHelper.getMetaClass(targets.get(i));
+            if (!(t instanceof MetaClassImpl)) {
+                return null;
+            }
+            targetMetaClasses[i] = (MetaClassImpl) t;
+        }
+        return new Entry(strategy, mc, targets, targetMetaClasses, args);
+    }
+
+    private static Resolution compute(MetaClass mc, List<Object> targets, String method, Class[] argTypes) {
+        // if we are trying to call a method that's actually defined in Closure, then we'll get non-null 'm'
+        // in that case, treat it like normal method call
+        if (mc.pickMethod(method, argTypes) != null) {
+            return Resolution.CLOSURE;
+        }
+        // in the first phase, we look for exact method match
+        for (int i = 0; i < targets.size(); i++) {
+            if (InvokerHelper.getMetaClass(targets.get(i)).pickMethod(method, argTypes) != null) {
+                return new Resolution(i, NO_FALLBACKS);
+            }
+        }
+        // in the second phase, the targets that might dynamically handle the call
+        int[] fallbacks = new int[targets.size()];
+        int n = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            if (mayHandle(targets.get(i), method)) {
+                fallbacks[n++] = i;
+            }
+        }
+        return new Resolution(-1, Arrays.copyOf(fallbacks, n));
+    }
+
+    /**
+     * Returns false if calling {@code target.invokeMethod(method, ...)} would certainly throw a
+     * {@link groovy.lang.MissingMethodException}, given that its metaclass has no such method.
+     * This mirrors what {@link MetaClassImpl#invokeMethod(Class, Object, String, Object[], boolean, boolean)}
+     * does when it cannot find a method, and errs on the side of true.
+     */
+    private static boolean mayHandle(Object target, String method) {
+        MetaClass mc = InvokerHelper.getMetaClass(target);
+        if (mc.getClass() != MetaClassImpl.class) {
+            return true; // for example an ExpandoMetaClass
+        }
+        if (target instanceof Map || target instanceof Closure || target instanceof Script || target instanceof GroovyInterceptable) {
+            return true; // may have a closure of that name, or handle anything
+        }
+        if (target instanceof GroovyObject && !USES_META_CLASS_TO_INVOKE.get(target.getClass())) {
+            return true;
+        }
+        // a property holding a closure, or methodMissing
+        return mc.getMetaProperty(method) != null || !mc.respondsTo(target, "methodMissing").isEmpty();
+    }
+
+    /**
+     * Whether {@link GroovyObject#invokeMethod} of a class is the one that groovyc generates or the one of
+     * {@link GroovyObjectSupport}, which just ask the metaclass.
+     */
+    private static final ClassValue<Boolean> USES_META_CLASS_TO_INVOKE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                Method m = type.getMethod("invokeMethod", String.class, Object.class);
+                return m.isSynthetic() || m.getDeclaringClass() == GroovyObjectSupport.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+}
@@ -25,9 +25,11 @@
 package org.kohsuke.groovy.sandbox.impl;
 
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.codehaus.groovy.runtime.wrappers.Wrapper;
 import org.codehaus.groovy.reflection.ParameterTypes;
 import org.codehaus.groovy.runtime.MetaClassHelper;
 
@@ -42,13 +44,14 @@ public class GroovyCallSiteSelector {
      * added by SandboxTransformer and the constructor wrapper argument is invalid.
      */
     public static Constructor<?> findConstructor(Class<?> type, Object[] args, Class<?> expectedConstructorWrapper) {
-        Constructor<?> c = constructor(type, args);
-        if (c == null) {
+        Candidate r = CONSTRUCTORS.get(type).resolve(args);
+        if (r == null) {
             throw new SecurityException("Unable to find constructor: " + GroovyCallSiteSelector.formatConstructor(type, args));
         }
+        Constructor<?> c = r.constructor;
         // Check to make sure that users are not directly calling synthetic constructors without going through
         // `Checker.checkedSuperConstructor` or `Checker.checkedThisConstructor`. Part of SECURITY-1754.
-        if (isSandboxGeneratedConstructor(c) && (
+        if (r.sandboxGenerated && (
                 expectedConstructorWrapper == null || // Generated constructors should never be called directly, so any call from Checker.checkedConstructor should be rejected
                 args.length < 1 || // Should always be false since isSandboxGeneratedConstructor returned true
                 args[0] == null || // The wrapper argument must not be null
@@ -64,37 +67,182 @@ public class GroovyCallSiteSelector {
     }
 
     static Constructor<?> constructor(Class<?> receiver, Object[] args) {
-        Constructor<?>[] constructors = receiver.getDeclaredConstructors();
-        Constructor<?> bestMatch = null;
-        ParameterTypes bestMatchParamTypes = null;
-        Class<?>[] argTypes = MetaClassHelper.convertToTypeArray(args);
-        for (Constructor<?> c : constructors) {
-            ParameterTypes cParamTypes = new ParameterTypes(c.getParameterTypes());
-            if (cParamTypes.isValidMethod(argTypes)) {
-                if (bestMatch == null || isMoreSpecific(cParamTypes, bestMatchParamTypes, argTypes)) {
-                    bestMatch = c;
-                    bestMatchParamTypes = cParamTypes;
+        Candidate c = CONSTRUCTORS.get(receiver).resolve(args);
+        return c == null ? null : c.constructor;
+    }
+
+    /**
+     * The declared constructors of the given class, along with their parameter types.
+     */
+    static Candidate[] candidates(Class<?> type) {
+        return CONSTRUCTORS.get(type).candidates;
+    }
+
+    /**
+     * A declared constructor, with what we need to know about it to pick it.
+     */
+    static final class Candidate {
+        final Constructor<?> constructor;
+        final ParameterTypes parameterTypes;
+        final boolean sandboxGenerated;
+
+        Candidate(Constructor<?> constructor) {
+            this.constructor = constructor;
+            this.parameterTypes = new ParameterTypes(constructor.getParameterTypes());
+            this.sandboxGenerated = isSandboxGeneratedConstructor(constructor);
+        }
+    }
+
+    /**
+     * The constructor picked for arguments of the given classes, or null if there is none.
+     */
+    private static final class Resolution {
+        final Class<?>[] classes;
+        final Candidate candidate;
+
+        Resolution(Class<?>[] classes, Candidate candidate) {
+            this.classes = classes;
+            this.candidate = candidate;
+        }
+
+        boolean matches(Object[] args) {
+            if (args.length != classes.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (classes[i] != classOf(args[i])) {
+                    return false;
                 }
             }
+            return true;
         }
-        if (bestMatch != null) {
-            return bestMatch;
+    }
+
+    private static Class<?> classOf(Object o) {
+        return o == null ? null : o.getClass();
+    }
+
+    /**
+     * Constructors of one class, and the last few constructors we picked among them.
+     *
+     * <p>
+     * Which constructor we pick depends only on the classes of the arguments, so we remember that for
+     * up to {@link #MAX_RESOLUTIONS} lists of argument types per class, including when there is no match.
+     * This does not hold for a {@link Wrapper}, which stands for the type it wraps, so calls with one are
+     * always resolved from scratch.
+     */
+    private static final class Constructors {
+        private static final int MAX_RESOLUTIONS = 16;
+        private static final Resolution[] NO_RESOLUTIONS = new Resolution[0];
+
+        final Candidate[] candidates;
+        private final ClassLoader loader;
+        private volatile Resolution[] resolutions = NO_RESOLUTIONS;
+
+        Constructors(Class<?> type) {
+            loader = type.getClassLoader();
+            Constructor<?>[] constructors = type.getDeclaredConstructors();
+            candidates = new Candidate[constructors.length];
+            for (int i = 0; i < constructors.length; i++) {
+                candidates[i] = new Candidate(constructors[i]);
+            }
         }
 
-        // Only check for the magic Map constructor if we haven't already found a real constructor.
-        // Also note that this logic is derived from how Groovy itself decides to use the magic Map constructor, at
-        // MetaClassImpl#invokeConstructor(Class, Object[]).
-        if (args.length == 1 && args[0] instanceof Map) {
-            for (Constructor<?> c : constructors) {
-                if (c.getParameterTypes().length == 0 && !c.isVarArgs()) {
+        Candidate resolve(Object[] args) {
+            for (Resolution r : resolutions) {
+                if (r.matches(args)) {
+                    return r.candidate;
+                }
+            }
+            // argument types as Groovy sees them, which differ from the classes of the arguments for Wrapper
+            Class<?>[] argTypes = MetaClassHelper.convertToTypeArray(args);
+            Candidate c = select(argTypes, args);
+            Class<?>[] classes = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] instanceof Wrapper) {
+                    // all wrappers of a class share it, whatever type they wrap, so do not remember anything
                     return c;
                 }
+                classes[i] = classOf(args[i]);
+            }
+            remember(new Resolution(classes, c));
+            return c;
+        }
+
+        private Candidate select(Class<?>[] argTypes, Object[] args) {
+            Candidate bestMatch = null;
+            for (Candidate c : candidates) {
+                if (c.parameterTypes.isValidMethod(argTypes)) {
+                    if (bestMatch == null || isMoreSpecific(c.parameterTypes, bestMatch.parameterTypes, argTypes)) {
+                        bestMatch = c;
+                    }
+                }
+            }
+            if (bestMatch != null) {
+                return bestMatch;
+            }
+
+            // Only check for the magic Map constructor if we haven't already found a real constructor.
+            // Also note that this logic is derived from how Groovy itself decides to use the magic Map constructor, at
+            // MetaClassImpl#invokeConstructor(Class, Object[]).
+            if (args.length == 1 && args[0] instanceof Map) {
+                for (Candidate c : candidates) {
+                    if (c.constructor.getParameterTypes().length == 0 && !c.constructor.isVarArgs()) {
+                        return c;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        private synchronized void remember(Resolution r) {
+            Resolution[] current = resolutions;
+            for (Resolution existing : current) {
+                if (Arrays.equals(existing.classes, r.classes)) {
+                    return; // another thread got here first
+                }
+            }
+            if (current.length < MAX_RESOLUTIONS && isVisible(r.classes)) {
+                Resolution[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = r;
+                resolutions = updated;
             }
         }
 
-        return null;
+        /**
+         * Whether all the given classes can be seen from the class whose constructors these are,
+         * since if not, remembering them could keep their class loader from being garbage collected.
+         */
+        private boolean isVisible(Class<?>[] classes) {
+            for (Class<?> t : classes) {
+                if (t != null && !isAncestor(t.getClassLoader(), loader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isAncestor(ClassLoader ancestor, ClassLoader loader) {
+            if (ancestor == null) {
+                return true; // the bootstrap class loader
+            }
+            for (ClassLoader l = loader; l != null; l = l.getParent()) {
+                if (l == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
+    private static final ClassValue<Constructors> CONSTRUCTORS = new ClassValue<Constructors>() {
+        @Override
+        protected Constructors computeValue(Class<?> type) {
+            return new Constructors(type);
+        }
+    };
+
     public static boolean isMoreSpecific(ParameterTypes paramsForCandidate, ParameterTypes paramsForBaseline, Class<?>[] argTypes) {
         long candidateDistance = MetaClassHelper.calculateParameterDistance(argTypes, paramsForCandidate);
         long currentBestDistance = MetaClassHelper.calculateParameterDistance(argTypes, paramsForBaseline);
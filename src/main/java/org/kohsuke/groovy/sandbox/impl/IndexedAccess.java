@@ -0,0 +1,155 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.GroovySystem;
+import groovy.lang.MetaClassImpl;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+import org.codehaus.groovy.runtime.GroovyCategorySupport;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.List;
+
+/**
+ * Performs {@code receiver[index]} and {@code receiver[index] = value} directly when the receiver is an array or one of
+ * the {@link List}s of {@code java.util} and the index is an {@link Integer}, the way the {@code getAt} and
+ * {@code putAt} methods of {@link DefaultGroovyMethods} do, rather than looking those up through a call site.
+ *
+ * <p>
+ * This only applies as long as Groovy would pick those very methods, so not while a category is in use, not once the
+ * metaclass of the receiver class has been replaced (say, to add a {@code getAt} method with an
+ * {@link groovy.lang.ExpandoMetaClass}), and not to values that Groovy would convert before storing them in an array.
+ * Interceptors are consulted before we get here, as usual.
+ */
+final class IndexedAccess {
+    private IndexedAccess() {}
+
+    /**
+     * Returned by {@link #get} when it does not handle the receiver.
+     */
+    static final Object UNHANDLED = new Object();
+
+    /**
+     * Whether a class of receivers is handled here, as of some {@link CallSitePool#generation()}.
+     */
+    private static final class Eligibility {
+        final int generation;
+        final boolean eligible;
+        /**
+         * For arrays, the type of values that are stored in them without conversion, boxed if primitive.
+         */
+        final Class<?> component;
+
+        Eligibility(Class<?> type, int generation, boolean eligible) {
+            this.generation = generation;
+            this.eligible = eligible;
+            this.component = type.isArray() ? MethodType.methodType(type.getComponentType()).wrap().returnType() : null;
+        }
+    }
+
+    private static final ClassValue<Eligibility> ELIGIBILITY = new ClassValue<Eligibility>() {
+        @Override
+        protected Eligibility computeValue(Class<?> type) {
+            int generation = CallSitePool.generation();
+            Package p = type.getPackage();
+            boolean wellKnown = type.isArray() || (List.class.isAssignableFrom(type) && p != null && p.getName().equals("java.util"));
+            return new Eligibility(type, generation, wellKnown
+                    && GroovySystem.getMetaClassRegistry().getMetaClass(type).getClass() == MetaClassImpl.class);
+        }
+    };
+
+    private static Eligibility eligibility(Class<?> type) {
+        Eligibility e = ELIGIBILITY.get(type);
+        if (e.generation != CallSitePool.generation()) {
+            ELIGIBILITY.remove(type);
+            e = ELIGIBILITY.get(type);
+        }
+        return e;
+    }
+
+    /**
+     * Returns {@code receiver[index]}, or {@link #UNHANDLED} if Groovy has to do it.
+     */
+    static Object get(Object receiver, Object index) {
+        if (!(index instanceof Integer) || !eligibility(receiver.getClass()).eligible || GroovyCategorySupport.hasCategoryInCurrentThread()) {
+            return UNHANDLED;
+        }
+        int i = (Integer) index;
+        if (receiver instanceof Object[]) {
+            Object[] array = (Object[]) receiver;
+            return array[normaliseIndex(i, array.length)];
+        }
+        if (receiver instanceof List) {
+            List<?> list = (List<?>) receiver;
+            int size = list.size();
+            i = normaliseIndex(i, size);
+            return i < size ? list.get(i) : null;
+        }
+        return Array.get(receiver, normaliseIndex(i, Array.getLength(receiver)));
+    }
+
+    /**
+     * Performs {@code receiver[index] = value} and returns true, or returns false if Groovy has to do it.
+     */
+    @SuppressWarnings("unchecked")
+    static boolean set(Object receiver, Object index, Object value) {
+        Eligibility e;
+        if (!(index instanceof Integer) || !(e = eligibility(receiver.getClass())).eligible || GroovyCategorySupport.hasCategoryInCurrentThread()) {
+            return false;
+        }
+        int i = (Integer) index;
+        if (receiver instanceof List) {
+            List<Object> list = (List<Object>) receiver;
+            int size = list.size();
+            i = normaliseIndex(i, size);
+            if (i < size) {
+                list.set(i, value);
+            } else {
+                while (size < i) {
+                    list.add(size++, null);
+                }
+                list.add(i, value);
+            }
+            return true;
+        }
+        if (!isStoredAsIs(e.component, value)) {
+            return false;
+        }
+        if (receiver instanceof Object[]) {
+            Object[] array = (Object[]) receiver;
+            array[normaliseIndex(i, array.length)] = value;
+        } else {
+            Array.set(receiver, normaliseIndex(i, Array.getLength(receiver)), value);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if Groovy would store the value in an array of the given (boxed) component type without
+     * converting it.
+     */
+    private static boolean isStoredAsIs(Class<?> component, Object value) {
+        if (value == null) {
+            return false;
+        }
+        Class<?> type = value.getClass();
+        if (type == component) {
+            return true;
+        }
+        return !(value instanceof Number) && component.isAssignableFrom(type) && !component.isArray()
+                && !Character.class.isAssignableFrom(component) && !Number.class.isAssignableFrom(component);
+    }
+
+    /**
+     * Same as the method of {@link DefaultGroovyMethods} that lets negative indices count from the end.
+     */
+    private static int normaliseIndex(int i, int size) {
+        int temp = i;
+        if (i < 0) {
+            i += size;
+        }
+        if (i < 0) {
+            throw new ArrayIndexOutOfBoundsException("Negative array index [" + temp + "] too large for array size " + size);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,276 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.MetaClass;
+import org.codehaus.groovy.runtime.callsite.CallSite;
+import org.codehaus.groovy.runtime.callsite.CallSiteArray;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.kohsuke.groovy.sandbox.impl.InvokerChain.Kind;
+
+import java.util.Arrays;
+
+/**
+ * Inline cache for one checked call site in sandbox-transformed code.
+ *
+ * <p>
+ * {@link SandboxTransformer} numbers the call sites of every class it transforms and passes the class and that
+ * number to {@link Checker}, which looks up the cache here. Each cache remembers the {@link CallSite}s it used for
+ * the last few receiver types it saw (so it is polymorphic up to {@link #MAX_ENTRIES}), and the {@link InvokerChain}
+ * it used for each of the last few sets of {@link Interceptors} (up to {@link #MAX_CHAINS}), so that a site that keeps
+ * seeing the same types resolves them once.
+ * Once a site has seen too many receiver types, it goes back to {@link CallSitePool}, and once it has seen too many
+ * sets of interceptors, it uses the chains that {@link Interceptors} caches for all sites.
+ *
+ * <p>
+ * This only caches how calls are dispatched, not what interceptors decide about them: they are still asked about every
+ * single call, and are free to change the receiver, the method name, or the arguments they pass on, since the cached
+ * call sites are looked up for whatever actually reaches the end of the chain. Decisions are remembered per receiver
+ * class and argument classes by the {@link VerdictCache} of the interceptors that have one, for all sites at once.
+ * The call sites Groovy installs check the metaclass of the receiver and the types of the arguments on every call, and
+ * we drop all entries when a {@link MetaClass} is replaced, as {@link CallSitePool} does.
+ */
+final class InlineCache {
+    /**
+     * Number of receiver types (and method names) a site remembers before we give up on it.
+     */
+    static final int MAX_ENTRIES = 4;
+
+    /**
+     * Site numbers come from bytecode, so make sure a bogus one cannot make us allocate a huge table.
+     */
+    static final int MAX_SITES_PER_CLASS = 1 << 16;
+
+    /**
+     * Number of sets of interceptors a site keeps a chain for, since code whose class loader is not bound uses those
+     * of whichever thread runs it.
+     */
+    static final int MAX_CHAINS = 4;
+
+    /**
+     * Creates the links of the chains used by a cache.
+     */
+    interface Factory {
+        InvokerChain create(Kind kind, GroovyInterceptor[] interceptors, int index, InlineCache cache);
+    }
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final Chain[] NO_CHAINS = new Chain[0];
+
+    /**
+     * Cached call site for one receiver type and method name.
+     */
+    private static final class Entry {
+        final Class<?> type;
+        final String name;
+        final CallSiteArray sites;
+        final int generation;
+
+        Entry(Class<?> type, String name, int generation) {
+            this.type = type;
+            this.name = name;
+            this.sites = CallSitePool.newArray(name);
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Chain we built for one set of interceptors.
+     */
+    private static final class Chain {
+        final Interceptors interceptors;
+        final InvokerChain head;
+
+        Chain(Interceptors interceptors, InvokerChain head) {
+            this.interceptors = interceptors;
+            this.head = head;
+        }
+    }
+
+    private final Factory factory;
+    private final Kind kind;
+    /**
+     * Kind of the chains used once the site has seen too many sets of interceptors.
+     */
+    private final Kind uncached;
+    /**
+     * Decides which interceptors apply to the class the site is in.
+     */
+    private final Interceptors.Scope scope;
+    private volatile Entry[] entries = NO_ENTRIES;
+    /**
+     * Set once the site has seen more than {@link #MAX_ENTRIES} receivers.
+     */
+    private volatile boolean megamorphic;
+    private volatile Chain[] chains = NO_CHAINS;
+    /**
+     * Set once the site has seen more than {@link #MAX_CHAINS} sets of interceptors.
+     */
+    private volatile boolean shared;
+
+    private InlineCache(Kind uncached, Factory factory, Interceptors.Scope scope) {
+        this.factory = factory;
+        this.scope = scope;
+        this.uncached = uncached;
+        this.kind = uncached.withFactory((k, interceptors, index) -> factory.create(k, interceptors, index, this));
+    }
+
+    /**
+     * Returns the chain to use for the given receiver, which ends by calling back into this cache.
+     */
+    InvokerChain chain(Object receiver) {
+        // see InvokerChain.of for why a null receiver is not intercepted
+        Interceptors interceptors = receiver == null ? Interceptors.NONE : scope.get();
+        if (shared) {
+            return interceptors.chain(uncached);
+        }
+        for (Chain c : chains) {
+            if (c.interceptors == interceptors) {
+                return c.head;
+            }
+        }
+        return addChain(interceptors);
+    }
+
+    private synchronized InvokerChain addChain(Interceptors interceptors) {
+        Chain[] current = chains;
+        for (Chain c : current) {
+            if (c.interceptors == interceptors) {
+                return c.head; // somebody else got here first
+            }
+        }
+        if (current.length >= MAX_CHAINS) {
+            shared = true;
+            chains = NO_CHAINS;
+            return interceptors.chain(uncached);
+        }
+        Chain c = new Chain(interceptors, interceptors.newChain(kind));
+        Chain[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = c;
+        chains = updated;
+        return c.head;
+    }
+
+    /**
+     * Call site for an instance method call, like {@code receiver.method(...)}.
+     */
+    CallSite call(Object receiver, String method) {
+        if (megamorphic) {
+            return CallSitePool.call(receiver, method);
+        }
+        return site(CallSitePool.typeOf(receiver), method);
+    }
+
+    /**
+     * Call site for a static method call, like {@code Receiver.method(...)}.
+     */
+    CallSite callStatic(Class<?> receiver, String method) {
+        if (megamorphic) {
+            return CallSitePool.callStatic(receiver, method);
+        }
+        return site(receiver, method);
+    }
+
+    /**
+     * Call site for an object instantiation, like {@code new Type(...)}.
+     */
+    CallSite callConstructor(Class<?> type) {
+        if (megamorphic) {
+            return CallSitePool.callConstructor(type);
+        }
+        return site(type, "<init>");
+    }
+
+    private CallSite site(Class<?> type, String name) {
+        int generation = CallSitePool.generation();
+        for (Entry e : entries) {
+            if (e.type == type && e.generation == generation && e.name.equals(name)) {
+                // Groovy replaces array[0] with a specialized call site on the first call, so always read it from the array.
+                return e.sites.array[0];
+            }
+        }
+        return addEntry(type, name, generation);
+    }
+
+    private synchronized CallSite addEntry(Class<?> type, String name, int generation) {
+        Entry[] current = entries;
+        Entry[] updated = new Entry[current.length + 1];
+        int n = 0;
+        for (Entry e : current) {
+            if (e.type == type && e.generation == generation && e.name.equals(name)) {
+                return e.sites.array[0]; // somebody else got here first
+            }
+            if (e.generation == generation) {
+                updated[n++] = e;
+            }
+        }
+        Entry e = new Entry(type, name, generation);
+        if (n >= MAX_ENTRIES) {
+            megamorphic = true;
+            entries = NO_ENTRIES;
+        } else {
+            updated[n++] = e;
+            entries = Arrays.copyOf(updated, n);
+        }
+        return e.sites.array[0];
+    }
+
+    /**
+     * Inline caches of one class, indexed by the numbers {@link SandboxTransformer} gave to its call sites.
+     */
+    private static final class Table {
+        private final Interceptors.Scope scope;
+        private volatile InlineCache[] caches = new InlineCache[0];
+
+        Table(Interceptors.Scope scope) {
+            this.scope = scope;
+        }
+
+        InlineCache get(int site, Kind uncached, Factory factory) {
+            InlineCache[] c = caches;
+            InlineCache cache;
+            if (site < c.length && (cache = c[site]) != null) {
+                return cache.factory == factory ? cache : null;
+            }
+            return create(site, uncached, factory);
+        }
+
+        private synchronized InlineCache create(int site, Kind uncached, Factory factory) {
+            InlineCache[] c = caches;
+            if (site >= c.length) {
+                c = Arrays.copyOf(c, Math.min(Math.max(site + 1, c.length * 2), MAX_SITES_PER_CLASS));
+            }
+            InlineCache cache = c[site];
+            if (cache == null) {
+                c[site] = cache = new InlineCache(uncached, factory, scope);
+            }
+            caches = c;
+            return cache.factory == factory ? cache : null;
+        }
+    }
+
+    private static final ClassValue<Table> TABLES = new ClassValue<Table>() {
+        @Override
+        protected Table computeValue(Class<?> type) {
+            return new Table(Interceptors.scope(type));
+        }
+    };
+
+    /**
+     * Returns the inline cache for the given call site of the given class.
+     *
+     * @param uncached
+     *      Kind of the chains used when the operation is not cached, which consult the same interceptors.
+     * @param factory
+     *      Creates the links of the chain for this kind of operation. A site always performs the same kind of
+     *      operation, so if we are given a different factory than the one the cache was created with,
+     *      we do not cache anything rather than risk dispatching one kind of operation as another.
+     * @return
+     *      null if the site should not be cached.
+     */
+    static InlineCache of(Class<?> owner, int site, Kind uncached, Factory factory) {
+        if (owner == null || site < 0 || site >= MAX_SITES_PER_CLASS) {
+            return null;
+        }
+        return TABLES.get(owner).get(site, uncached, factory);
+    }
+}
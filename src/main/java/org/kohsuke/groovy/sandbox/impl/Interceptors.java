@@ -0,0 +1,228 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.SandboxContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable snapshot of the {@link GroovyInterceptor}s that apply to the current thread or to a {@link SandboxContext},
+ * along with the {@link InvokerChain}s built over them.
+ *
+ * <p>
+ * {@link GroovyInterceptor#getApplicableInterceptors()} is a live view, so we take a snapshot of it
+ * the first time it is needed and keep it until {@link GroovyInterceptor#register()} or
+ * {@link GroovyInterceptor#unregister()} changes it.
+ *
+ * <p>
+ * Code that {@link Checker} is called from is identified by its class, which may be bound to a {@link SandboxContext}
+ * through its class loader. Such code uses the interceptors of the context rather than those of the current thread.
+ */
+public final class Interceptors {
+    /**
+     * Used when the checker is bypassed.
+     */
+    static final Interceptors NONE = new Interceptors(new GroovyInterceptor[0]);
+
+    /**
+     * Used when we are running sandbox-transformed code, but there is no interceptor on the current thread.
+     * This is dangerous (SECURITY-2020), so we reject everything.
+     */
+    static final Interceptors REJECT_EVERYTHING = new Interceptors(new GroovyInterceptor[] {new RejectEverythingInterceptor()});
+
+    private static final ThreadLocal<Interceptors> CURRENT = new ThreadLocal<Interceptors>() {
+        @Override
+        protected Interceptors initialValue() {
+            List<GroovyInterceptor> interceptors = GroovyInterceptor.getApplicableInterceptors();
+            return snapshot(interceptors);
+        }
+    };
+
+    /**
+     * Interceptors bound to a class loader, or to none.
+     */
+    static final class Scope {
+        private volatile Interceptors bound;
+
+        /**
+         * The interceptors bound to this scope, or else those of the current thread.
+         */
+        Interceptors get() {
+            Interceptors i = bound;
+            return i != null ? i : current();
+        }
+    }
+
+    /**
+     * Scope of classes whose loader has never been bound.
+     */
+    private static final Scope UNBOUND = new Scope();
+
+    /**
+     * Scopes of the class loaders that have been bound. Also guards the computation of {@link #SCOPES}.
+     */
+    private static final Map<ClassLoader, Scope> LOADER_SCOPES = new WeakHashMap<>();
+
+    private static final ClassValue<Scope> SCOPES = new ClassValue<Scope>() {
+        @Override
+        protected Scope computeValue(Class<?> type) {
+            synchronized (LOADER_SCOPES) {
+                for (ClassLoader l = type.getClassLoader(); l != null; l = l.getParent()) {
+                    Scope s = LOADER_SCOPES.get(l);
+                    if (s != null) {
+                        return s;
+                    }
+                }
+            }
+            return UNBOUND;
+        }
+    };
+
+    private final GroovyInterceptor[] interceptors;
+
+    /**
+     * {@link GroovyInterceptor#getInterests()} of each interceptor, as a {@link InvokerChain.Kind#mask}.
+     */
+    private final int[] interests;
+
+    /**
+     * Head of the chain for each {@link InvokerChain.Kind}, indexed by {@link InvokerChain.Kind#id}.
+     * Grown as needed under the lock, but elements are written in place since links only have final fields.
+     */
+    private volatile InvokerChain[] chains;
+
+    private Interceptors(GroovyInterceptor[] interceptors) {
+        this.interceptors = interceptors;
+        this.interests = new int[interceptors.length];
+        for (int i = 0; i < interceptors.length; i++) {
+            interests[i] = InvokerChain.Kind.mask(interceptors[i].getInterests());
+        }
+        this.chains = new InvokerChain[InvokerChain.Kind.count()];
+    }
+
+    /**
+     * Snapshot of the interceptors of the current thread.
+     */
+    static Interceptors current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Scope of code in the given class, or of code that did not say where it is from if null.
+     */
+    static Scope scope(Class<?> owner) {
+        return owner == null ? UNBOUND : SCOPES.get(owner);
+    }
+
+    /**
+     * Snapshot of the interceptors that apply to code in the given class.
+     */
+    static Interceptors of(Class<?> owner) {
+        return scope(owner).get();
+    }
+
+    /**
+     * Takes a snapshot of the given interceptors.
+     * Since there is no legitimate reason to run sandbox-transformed code outside the sandbox, an empty list
+     * results in rejecting everything (SECURITY-2020).
+     */
+    public static Interceptors snapshot(List<GroovyInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return REJECT_EVERYTHING;
+        }
+        return new Interceptors(interceptors.toArray(new GroovyInterceptor[0]));
+    }
+
+    /**
+     * Makes code in the classes defined by the given class loader and its descendants use the given interceptors.
+     * Classes that called into {@link Checker} before their loader was first bound keep using those of the current thread.
+     *
+     * @see SandboxContext#bind(ClassLoader)
+     */
+    public static void bind(ClassLoader loader, Interceptors interceptors) {
+        synchronized (LOADER_SCOPES) {
+            Scope s = LOADER_SCOPES.get(loader);
+            if (s == null) {
+                LOADER_SCOPES.put(loader, s = new Scope());
+            }
+            s.bound = interceptors;
+        }
+    }
+
+    /**
+     * Discards the snapshot of the current thread. Called whenever its interceptors change.
+     */
+    public static void reset() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Returns the chain of the given kind, building it the first time.
+     */
+    InvokerChain chain(InvokerChain.Kind kind) {
+        int id = kind.id();
+        InvokerChain[] c = chains;
+        InvokerChain head;
+        if (id < c.length && (head = c[id]) != null) {
+            return head;
+        }
+        return createChain(kind, id);
+    }
+
+    private synchronized InvokerChain createChain(InvokerChain.Kind kind, int id) {
+        InvokerChain[] c = chains;
+        if (id >= c.length) {
+            chains = c = Arrays.copyOf(c, Math.max(id + 1, InvokerChain.Kind.count()));
+        }
+        InvokerChain head = c[id];
+        if (head == null) {
+            c[id] = head = newChain(kind);
+        }
+        return head;
+    }
+
+    /**
+     * Returns true if every interceptor interested in some of the events of the first {@link InvokerChain.Kind#mask}
+     * is also interested in all the events of the second one, so that chains consulting interceptors about the latter
+     * consult all the interceptors that would be consulted about the former.
+     */
+    boolean isCovered(int events, int by) {
+        for (int i : interests) {
+            if ((i & events) != 0 && (i & by) != by) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a new chain of the given kind without caching it here.
+     * The chain only has links for the interceptors interested in that kind of operation.
+     */
+    InvokerChain newChain(InvokerChain.Kind kind) {
+        return kind.create(interestedIn(kind), 0);
+    }
+
+    private GroovyInterceptor[] interestedIn(InvokerChain.Kind kind) {
+        int n = 0;
+        for (int i : interests) {
+            if (kind.isOfInterest(i)) {
+                n++;
+            }
+        }
+        if (n == interceptors.length) {
+            return interceptors;
+        }
+        GroovyInterceptor[] r = new GroovyInterceptor[n];
+        n = 0;
+        for (int i = 0; i < interceptors.length; i++) {
+            if (kind.isOfInterest(interests[i])) {
+                r[n++] = interceptors[i];
+            }
+        }
+        return r;
+    }
+}
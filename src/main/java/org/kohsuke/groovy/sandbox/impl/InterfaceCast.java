@@ -0,0 +1,128 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * Checks that all the methods of an interface may be called on a value before {@link Checker#preCheckedCast} lets
+ * Groovy cast it to the interface, which would let any of them be called from outside of the sandbox.
+ *
+ * <p>
+ * The methods of each interface and the arguments we ask the interceptors about are computed once. Once every
+ * interceptor has let all of the methods through for a given class of value, and remembers that in its
+ * {@link VerdictCache}, we also remember that the whole interface is allowed for that class, so that casting
+ * another such value to the interface is a single lookup per interceptor.
+ */
+final class InterfaceCast {
+    private InterfaceCast() {}
+
+    /**
+     * One method of an interface, and the arguments we ask the interceptors about.
+     */
+    private static final class Signature {
+        final String name;
+        /**
+         * Default values of the parameter types. Copied for every check, since interceptors may modify arguments.
+         */
+        final Object[] args;
+
+        Signature(Method m) {
+            this.name = m.getName();
+            Class<?>[] types = m.getParameterTypes();
+            this.args = new Object[types.length];
+            for (int i = 0; i < types.length; i++) {
+                args[i] = getDefaultValue(types[i]);
+            }
+        }
+
+        Object[] args() {
+            return args.length == 0 ? args : args.clone();
+        }
+    }
+
+    private static final ClassValue<Signature[]> METHODS = new ClassValue<Signature[]>() {
+        @Override
+        protected Signature[] computeValue(Class<?> type) {
+            Method[] methods = type.getMethods();
+            Signature[] signatures = new Signature[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                signatures[i] = new Signature(methods[i]);
+            }
+            return signatures;
+        }
+    };
+
+    /**
+     * Asks the interceptors of the given chain about all the methods of the interface, as if they were called on
+     * the given value, and throws if one of them is rejected.
+     */
+    static void check(InvokerChain chain, Class<?> iface, Object exp) throws Throwable {
+        Class<?> type = CallSitePool.typeOf(exp);
+        if (isKnownAllowed(chain, type, iface)) {
+            return;
+        }
+        Signature[] signatures = METHODS.get(iface);
+        int[] generations = generations(chain);
+        for (Signature s : signatures) {
+            // We deliberately ignore the return value
+            chain.call(exp, s.name, s.args());
+        }
+        if (generations != null) {
+            remember(chain, generations, type, iface, signatures, exp);
+        }
+    }
+
+    private static boolean isKnownAllowed(InvokerChain chain, Class<?> type, Class<?> iface) throws Throwable {
+        for (InvokerChain link = chain; link.hasNext(); link = link.next()) {
+            VerdictCache verdicts = link.interceptor().getVerdictCache();
+            if (verdicts == null || !verdicts.checkTypes(InterfaceCast.class, type, null, iface)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the generation of the {@link VerdictCache} of each interceptor before we ask them, or null if one of
+     * them has none, in which case there is nothing we can remember.
+     */
+    private static int[] generations(InvokerChain chain) {
+        int n = 0;
+        for (InvokerChain link = chain; link.hasNext(); link = link.next()) {
+            if (link.interceptor().getVerdictCache() == null) {
+                return null;
+            }
+            n++;
+        }
+        int[] generations = new int[n];
+        int i = 0;
+        for (InvokerChain link = chain; link.hasNext(); link = link.next()) {
+            generations[i++] = link.interceptor().getVerdictCache().generation();
+        }
+        return generations;
+    }
+
+    /**
+     * Remembers that the interface is allowed, if every interceptor remembered that it let each method through
+     * unchanged. Otherwise, some decision was not a plain verdict, or was evicted, and we ask again next time.
+     */
+    private static void remember(InvokerChain chain, int[] generations, Class<?> type, Class<?> iface,
+                                 Signature[] signatures, Object exp) throws Throwable {
+        for (InvokerChain link = chain; link.hasNext(); link = link.next()) {
+            VerdictCache verdicts = link.interceptor().getVerdictCache();
+            for (Signature s : signatures) {
+                if (!verdicts.check(link.getClass(), exp, s.name, s.args)) {
+                    return;
+                }
+            }
+        }
+        int i = 0;
+        for (InvokerChain link = chain; link.hasNext(); link = link.next(), i++) {
+            link.interceptor().getVerdictCache().putTypes(generations[i], InterfaceCast.class, type, null, iface);
+        }
+    }
+
+    private static Object getDefaultValue(Class<?> clazz) {
+        return Array.get(Array.newInstance(clazz, 1), 0);
+    }
+}
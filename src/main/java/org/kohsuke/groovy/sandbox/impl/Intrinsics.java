@@ -0,0 +1,259 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.GroovySystem;
+import groovy.lang.MetaClassImpl;
+import groovy.lang.MetaClassRegistry;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+import org.codehaus.groovy.runtime.GroovyCategorySupport;
+import org.codehaus.groovy.runtime.ScriptBytecodeAdapter;
+import org.codehaus.groovy.runtime.typehandling.NumberMath;
+import org.codehaus.groovy.syntax.Types;
+
+import java.math.BigDecimal;
+
+/**
+ * Computes binary operators and comparisons on {@link Integer}s, {@link Long}s, {@link Double}s, {@link BigDecimal}s,
+ * and {@link String}s directly, the way {@link NumberMath} and {@link ScriptBytecodeAdapter} do, rather than
+ * dispatching a method call through a call site, since scripts spend a lot of time doing {@code i + 1} and
+ * {@code i < n}.
+ *
+ * <p>
+ * Arithmetic only applies as long as Groovy would pick the methods of {@link DefaultGroovyMethods}, so not while a
+ * category is in use, and not once the metaclass of one of these types has been replaced (say, to add a {@code plus}
+ * method with an {@link groovy.lang.ExpandoMetaClass}). Comparisons do not involve metaclasses at all.
+ * Interceptors are consulted before we get here, as usual.
+ */
+final class Intrinsics {
+    private Intrinsics() {}
+
+    /**
+     * Returned when we do not handle the operands.
+     */
+    static final Object UNHANDLED = new Object();
+
+    /**
+     * Kinds of numbers, in increasing order of precedence, as in {@link NumberMath#getMath(Number, Number)}.
+     */
+    private static final int NOT_NUMBER = -1, INTEGER = 0, LONG = 1, BIG_DECIMAL = 2, DOUBLE = 3;
+
+    private static int kindOf(Object o) {
+        Class<?> c = o == null ? null : o.getClass();
+        if (c == Integer.class) {
+            return INTEGER;
+        }
+        if (c == Long.class) {
+            return LONG;
+        }
+        if (c == BigDecimal.class) {
+            return BIG_DECIMAL;
+        }
+        if (c == Double.class) {
+            return DOUBLE;
+        }
+        return NOT_NUMBER;
+    }
+
+    /**
+     * Whether the types above all had their default metaclass, as of some {@link CallSitePool#generation()}.
+     */
+    private static final class Eligibility {
+        final int generation;
+        final boolean eligible;
+
+        Eligibility(int generation) {
+            this.generation = generation;
+            MetaClassRegistry registry = GroovySystem.getMetaClassRegistry();
+            boolean eligible = true;
+            for (Class<?> type : new Class<?>[] {Integer.class, Long.class, BigDecimal.class, Double.class, String.class}) {
+                eligible &= registry.getMetaClass(type).getClass() == MetaClassImpl.class;
+            }
+            this.eligible = eligible;
+        }
+    }
+
+    private static volatile Eligibility eligibility = new Eligibility(CallSitePool.generation());
+
+    /**
+     * Returns true if arithmetic on these types does what {@link NumberMath} does, in the current thread.
+     */
+    static boolean isArithmeticEligible() {
+        Eligibility e = eligibility;
+        int generation = CallSitePool.generation();
+        if (e.generation != generation) {
+            eligibility = e = new Eligibility(generation);
+        }
+        return e.eligible && !GroovyCategorySupport.hasCategoryInCurrentThread();
+    }
+
+    /**
+     * Returns true if {@link #binaryOp} may handle this left-hand side.
+     */
+    static boolean isOperand(Object lhs) {
+        return lhs instanceof String || kindOf(lhs) != NOT_NUMBER;
+    }
+
+    /**
+     * Returns {@code lhs op rhs}, or {@link #UNHANDLED} if Groovy has to do it.
+     *
+     * @param op
+     *      One of the binary operators of {@link Types}
+     */
+    static Object binaryOp(int op, Object lhs, Object rhs) {
+        if (lhs instanceof String) {
+            if (op == Types.PLUS && rhs instanceof String && isArithmeticEligible()) {
+                return ((String) lhs).concat((String) rhs);
+            }
+            return UNHANDLED;
+        }
+        int l = kindOf(lhs), r = kindOf(rhs);
+        if (l == NOT_NUMBER || r == NOT_NUMBER || !isArithmeticEligible()) {
+            return UNHANDLED;
+        }
+        Number a = (Number) lhs, b = (Number) rhs;
+        switch (Math.max(l, r)) {
+        case INTEGER:
+            switch (op) {
+            case Types.PLUS:        return a.intValue() + b.intValue();
+            case Types.MINUS:       return a.intValue() - b.intValue();
+            case Types.MULTIPLY:    return a.intValue() * b.intValue();
+            case Types.MOD:         return a.intValue() % b.intValue();
+            }
+            break;
+        case LONG:
+            switch (op) {
+            case Types.PLUS:        return a.longValue() + b.longValue();
+            case Types.MINUS:       return a.longValue() - b.longValue();
+            case Types.MULTIPLY:    return a.longValue() * b.longValue();
+            case Types.MOD:         return a.longValue() % b.longValue();
+            }
+            break;
+        case BIG_DECIMAL:
+            switch (op) {
+            case Types.PLUS:        return NumberMath.toBigDecimal(a).add(NumberMath.toBigDecimal(b));
+            case Types.MINUS:       return NumberMath.toBigDecimal(a).subtract(NumberMath.toBigDecimal(b));
+            case Types.MULTIPLY:    return NumberMath.toBigDecimal(a).multiply(NumberMath.toBigDecimal(b));
+            }
+            break;
+        case DOUBLE:
+            switch (op) {
+            case Types.PLUS:        return a.doubleValue() + b.doubleValue();
+            case Types.MINUS:       return a.doubleValue() - b.doubleValue();
+            case Types.MULTIPLY:    return a.doubleValue() * b.doubleValue();
+            case Types.DIVIDE:      return a.doubleValue() / b.doubleValue();
+            case Types.MOD:         return a.doubleValue() % b.doubleValue();
+            }
+            break;
+        }
+        // division of integers produces a BigDecimal of a scale that depends on the operands, etc.
+        return UNHANDLED;
+    }
+
+    /**
+     * Returns the result of the given comparison, or {@link #UNHANDLED} if Groovy has to do it.
+     *
+     * @param op
+     *      One of the comparison operators of {@link Types}
+     */
+    static Object compare(int op, Object lhs, Object rhs) {
+        int c;
+        if (lhs instanceof String && rhs instanceof String) {
+            c = ((String) lhs).compareTo((String) rhs);
+        } else {
+            int l = kindOf(lhs), r = kindOf(rhs);
+            if (l == NOT_NUMBER || r == NOT_NUMBER) {
+                return UNHANDLED;
+            }
+            Number a = (Number) lhs, b = (Number) rhs;
+            switch (Math.max(l, r)) {
+            case INTEGER:
+                c = Integer.compare(a.intValue(), b.intValue());
+                break;
+            case LONG:
+                c = Long.compare(a.longValue(), b.longValue());
+                break;
+            case BIG_DECIMAL:
+                c = NumberMath.toBigDecimal(a).compareTo(NumberMath.toBigDecimal(b));
+                break;
+            default:
+                c = Double.compare(a.doubleValue(), b.doubleValue());
+                break;
+            }
+        }
+        if (op == Types.COMPARE_TO) {
+            return Integer.signum(c);
+        }
+        return isBooleanComparison(op) ? test(op, c) : UNHANDLED;
+    }
+
+    /*
+        Same as binaryOp and compare for two operands of the same primitive type, for SandboxTransformer,
+        and only for the operators that give a result of that type.
+     */
+
+    static int intOp(int op, int a, int b) {
+        switch (op) {
+        case Types.PLUS:        return a + b;
+        case Types.MINUS:       return a - b;
+        case Types.MULTIPLY:    return a * b;
+        case Types.MOD:         return a % b;
+        default:                throw new IllegalArgumentException(""+op);
+        }
+    }
+
+    static long longOp(int op, long a, long b) {
+        switch (op) {
+        case Types.PLUS:        return a + b;
+        case Types.MINUS:       return a - b;
+        case Types.MULTIPLY:    return a * b;
+        case Types.MOD:         return a % b;
+        default:                throw new IllegalArgumentException(""+op);
+        }
+    }
+
+    static double doubleOp(int op, double a, double b) {
+        switch (op) {
+        case Types.PLUS:        return a + b;
+        case Types.MINUS:       return a - b;
+        case Types.MULTIPLY:    return a * b;
+        case Types.DIVIDE:      return a / b;
+        case Types.MOD:         return a % b;
+        default:                throw new IllegalArgumentException(""+op);
+        }
+    }
+
+    static boolean intComparison(int op, int a, int b) {
+        return test(op, Integer.compare(a, b));
+    }
+
+    static boolean longComparison(int op, long a, long b) {
+        return test(op, Long.compare(a, b));
+    }
+
+    static boolean doubleComparison(int op, double a, double b) {
+        // not a == b, since Groovy considers NaN equal to itself, and 0.0 different from -0.0
+        return test(op, Double.compare(a, b));
+    }
+
+    /**
+     * Returns true if the comparison operators that give a boolean accept the operands.
+     */
+    static boolean isBooleanComparison(int op) {
+        return op >= Types.COMPARE_NOT_EQUAL && op <= Types.COMPARE_GREATER_THAN_EQUAL
+                && op != Types.COMPARE_IDENTICAL && op != Types.COMPARE_NOT_IDENTICAL;
+    }
+
+    /**
+     * Applies a comparison operator that gives a boolean to the result of a {@code compareTo}.
+     */
+    private static boolean test(int op, int c) {
+        switch (op) {
+        case Types.COMPARE_EQUAL:               return c == 0;
+        case Types.COMPARE_NOT_EQUAL:           return c != 0;
+        case Types.COMPARE_LESS_THAN:           return c < 0;
+        case Types.COMPARE_LESS_THAN_EQUAL:     return c <= 0;
+        case Types.COMPARE_GREATER_THAN:        return c > 0;
+        case Types.COMPARE_GREATER_THAN_EQUAL:  return c >= 0;
+        default:                                throw new IllegalArgumentException(""+op);
+        }
+    }
+}
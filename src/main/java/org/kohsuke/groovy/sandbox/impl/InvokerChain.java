@@ -1,38 +1,226 @@
 package org.kohsuke.groovy.sandbox.impl;
 
 import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Event;
 import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
 
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * One link of a chain of {@link GroovyInterceptor}s.
+ *
+ * <p>
+ * A chain has one link per interceptor plus one last link that performs the actual operation,
+ * and the {@link Invoker} given to each interceptor is simply the following link.
+ * Interceptors that are not {@linkplain GroovyInterceptor#getInterests() interested} in the kind of operation
+ * have no link at all, so they cost nothing.
+ * Links are immutable, so a chain is built the first time an operation of a given {@link Kind}
+ * is intercepted with a given set of {@link Interceptors} and then reused from there on.
+ * This way, intercepting an operation does not allocate anything.
+ *
  * @author Kohsuke Kawaguchi
  */
 abstract class InvokerChain implements Invoker {
-    protected final Iterator<GroovyInterceptor> chain;
+    private final Kind kind;
+    private final GroovyInterceptor[] interceptors;
+    private final int index;
+    /**
+     * Lazily created. Racing threads may end up creating more than one, but they are all equivalent.
+     */
+    private InvokerChain next;
 
-    protected InvokerChain(Object receiver) {
+    protected InvokerChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+        this.kind = kind;
+        this.interceptors = interceptors;
+        this.index = index;
+    }
+
+    /**
+     * Returns true if there's an interceptor to consult at this link,
+     * false if this is the end of the chain and the operation should be performed.
+     */
+    protected final boolean hasNext() {
+        return index < interceptors.length;
+    }
+
+    /**
+     * The interceptor to consult at this link.
+     */
+    protected final GroovyInterceptor interceptor() {
+        return interceptors[index];
+    }
+
+    /**
+     * The {@link VerdictCache} of {@link #interceptor()}, or null if it has none or if it cannot be used for the
+     * given receiver. The decision about a {@link Super} call depends on more than the class of the receiver.
+     */
+    protected final VerdictCache verdicts(Object receiver) {
+        return receiver instanceof Super ? null : interceptor().getVerdictCache();
+    }
+
+    /**
+     * Returns true if the remaining interceptors are all known by their {@link VerdictCache} to let through an
+     * operation of this kind on a receiver of the given type with one argument of the given type, so that it can be
+     * performed without asking them, which is what {@link #call(Object, String, Object)} would end up doing.
+     *
+     * @throws Throwable
+     *      if one of them is known to reject it, as it would if asked.
+     */
+    final boolean isAllowed(Class<?> type, String method, Class<?> argType) throws Throwable {
+        for (InvokerChain link = this; link.hasNext(); link = link.next()) {
+            VerdictCache verdicts = link.interceptor().getVerdictCache();
+            if (verdicts == null || !verdicts.checkTypes(link.getClass(), type, method, argType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #isAllowed(Class, String, Class)}, for an operation on the given receiver and arguments.
+     */
+    final boolean isAllowed(Object receiver, String method, Object... args) throws Throwable {
+        for (InvokerChain link = this; link.hasNext(); link = link.next()) {
+            VerdictCache verdicts = link.verdicts(receiver);
+            if (verdicts == null || !verdicts.check(link.getClass(), receiver, method, args)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The last link of the chain, which performs the operation without asking any interceptor.
+     * Only use it for operations that {@link #isAllowed} lets through.
+     */
+    final InvokerChain end() {
+        InvokerChain link = this;
+        while (link.hasNext()) {
+            link = link.next();
+        }
+        return link;
+    }
+
+    /**
+     * The {@link Invoker} to pass to {@link #interceptor()}.
+     */
+    protected final InvokerChain next() {
+        InvokerChain n = next;
+        if (n == null) {
+            next = n = kind.create(interceptors, index + 1);
+        }
+        return n;
+    }
+
+    /**
+     * Builds a new chain of another kind over the interceptors of this chain that are interested in it,
+     * for an operation that one of this kind performs as one of its steps.
+     */
+    final InvokerChain chainOf(Kind other) {
+        GroovyInterceptor[] r = new GroovyInterceptor[interceptors.length];
+        int n = 0;
+        for (GroovyInterceptor i : interceptors) {
+            if (other.isOfInterest(Kind.mask(i.getInterests()))) {
+                r[n++] = i;
+            }
+        }
+        return other.create(Arrays.copyOf(r, n), 0);
+    }
+
+    /**
+     * Returns the chain that intercepts an operation of the given kind on the given receiver.
+     *
+     * @param owner
+     *      Class of the code that performs the operation, which decides which interceptors apply,
+     *      or null to use those of the current thread.
+     */
+    static InvokerChain of(Class<?> owner, Object receiver, Kind kind) {
         // See issue #6, #15. When receiver is null, technically speaking Groovy handles this
         // as if NullObject.INSTANCE is the receiver. OTOH, it's confusing
         // to GroovyInterceptor that the receiver can be null, so I'm
         // bypassing the checker in this case.
-        if (receiver==null) {
-            chain = EMPTY_ITERATOR;
-        } else {
-            List<GroovyInterceptor> interceptors = GroovyInterceptor.getApplicableInterceptors();
-            if (interceptors.isEmpty()) {
-                // We are running sandbox-transformed code, but there is no interceptor on the current thread.
-                // This is dangerous (SECURITY-2020), so we reject everything.
-                chain = REJECT_EVERYTHING.iterator();
-            } else {
-                chain = interceptors.iterator();
+        Interceptors interceptors = receiver == null ? Interceptors.NONE : Interceptors.of(owner);
+        return interceptors.chain(kind);
+    }
+
+    /**
+     * Creates links of chains of one {@link Kind}, typically the constructor of an {@link InvokerChain} subtype.
+     */
+    interface Factory {
+        InvokerChain create(Kind kind, GroovyInterceptor[] interceptors, int index);
+    }
+
+    /**
+     * Identifies one kind of intercepted operation, so that {@link Interceptors} can cache one chain for each.
+     */
+    static final class Kind {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        /**
+         * Assigned the first time {@link Interceptors} caches a chain of this kind, since kinds created for
+         * an {@link InlineCache} never are.
+         */
+        private int id = -1;
+        private final Factory factory;
+        /**
+         * {@link #mask} of the kinds of events the links of this kind consult their interceptor about.
+         */
+        private final int events;
+
+        Kind(Factory factory, Event... events) {
+            this(factory, mask(Arrays.asList(events)));
+        }
+
+        private Kind(Factory factory, int events) {
+            this.factory = factory;
+            this.events = events;
+        }
+
+        /**
+         * Creates another kind of chain that consults interceptors about the same events.
+         */
+        Kind withFactory(Factory factory) {
+            return new Kind(factory, events);
+        }
+
+        /**
+         * Returns true if chains of this kind need to consult interceptors interested in the given {@link #mask}.
+         */
+        boolean isOfInterest(int interests) {
+            return (events & interests) != 0;
+        }
+
+        InvokerChain create(GroovyInterceptor[] interceptors, int index) {
+            return factory.create(this, interceptors, index);
+        }
+
+        int id() {
+            int i = id;
+            return i >= 0 ? i : assignId();
+        }
+
+        private synchronized int assignId() {
+            if (id < 0) {
+                id = COUNT.getAndIncrement();
             }
+            return id;
+        }
+
+        static int count() {
+            return COUNT.get();
         }
-    }
 
-    private static final Iterator<GroovyInterceptor> EMPTY_ITERATOR = Collections.<GroovyInterceptor>emptyList().iterator();
-    private static final Set<GroovyInterceptor> REJECT_EVERYTHING = Collections.<GroovyInterceptor>singleton(new RejectEverythingInterceptor());
+        /**
+         * Turns a set of events into a bit mask.
+         */
+        static int mask(Collection<Event> events) {
+            int mask = 0;
+            for (Event e : events) {
+                mask |= 1 << e.ordinal();
+            }
+            return mask;
+        }
+    }
 }
@@ -2,9 +2,6 @@ package org.kohsuke.groovy.sandbox.impl;
 
 import org.codehaus.groovy.syntax.Types;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import static org.codehaus.groovy.syntax.Types.*;
 
 /**
@@ -14,22 +11,40 @@ import static org.codehaus.groovy.syntax.Types.*;
  * @see Types
  */
 public class Ops {
-    private static final Map<Integer,Integer> compoundAssignmentToBinaryOperator = new HashMap<Integer, Integer>();
+    /**
+     * The tables below are indexed by token type, and all the operators we map are below this.
+     */
+    private static final int TABLE_SIZE = 512;
+
+    /**
+     * Binary operator for each compound assignment operator, or {@link Types#UNKNOWN}.
+     */
+    private static final int[] compoundAssignmentToBinaryOperator = new int[TABLE_SIZE];
 
     public static int compoundAssignmentToBinaryOperator(int type) {
-        Integer o = compoundAssignmentToBinaryOperator.get(type);
-        if (o==null)    throw new IllegalArgumentException(""+type);
+        int o = type >= 0 && type < TABLE_SIZE ? compoundAssignmentToBinaryOperator[type] : UNKNOWN;
+        if (o==UNKNOWN)    throw new IllegalArgumentException(""+type);
         return o;
     }
 
-    private static final Map<Integer,String> binaryOperatorMethods = new HashMap<Integer, String>();
+    /**
+     * Method name for each binary operator, or null.
+     */
+    private static final String[] binaryOperatorMethods = new String[TABLE_SIZE];
 
     public static String binaryOperatorMethods(int type) {
-        String v = binaryOperatorMethods.get(type);
+        String v = type >= 0 && type < TABLE_SIZE ? binaryOperatorMethods[type] : null;
         if (v==null)    throw new IllegalArgumentException(""+type);
         return v;
     }
 
+    /**
+     * Returns true if {@link #binaryOperatorMethods(int)} knows the given operator.
+     */
+    public static boolean hasBinaryOperatorMethod(int type) {
+        return type >= 0 && type < TABLE_SIZE && binaryOperatorMethods[type] != null;
+    }
+
     public static boolean isComparisionOperator(int type) {
         return Types.ofType(type,COMPARISON_OPERATOR);
     }
@@ -45,47 +60,47 @@ public class Ops {
 
     // see http://groovy.codehaus.org/Operator+Overloading
     static {
-        Map<Integer, Integer> c = compoundAssignmentToBinaryOperator;
-        c.put(PLUS_EQUAL,PLUS);
-        c.put(MINUS_EQUAL,MINUS);
-        c.put(MULTIPLY_EQUAL,MULTIPLY);
-        c.put(DIVIDE_EQUAL,DIVIDE);
-        c.put(INTDIV_EQUAL,INTDIV);
-        c.put(MOD_EQUAL,MOD);
-        c.put(POWER_EQUAL,POWER);
-
-        c.put(LEFT_SHIFT_EQUAL, LEFT_SHIFT);
-        c.put(RIGHT_SHIFT_EQUAL, RIGHT_SHIFT);
-        c.put(RIGHT_SHIFT_UNSIGNED_EQUAL, RIGHT_SHIFT_UNSIGNED);
-
-        c.put(BITWISE_OR_EQUAL, BITWISE_OR);
-        c.put(BITWISE_AND_EQUAL, BITWISE_AND);
-        c.put(BITWISE_XOR_EQUAL, BITWISE_XOR);
+        int[] c = compoundAssignmentToBinaryOperator;
+        c[PLUS_EQUAL] = PLUS;
+        c[MINUS_EQUAL] = MINUS;
+        c[MULTIPLY_EQUAL] = MULTIPLY;
+        c[DIVIDE_EQUAL] = DIVIDE;
+        c[INTDIV_EQUAL] = INTDIV;
+        c[MOD_EQUAL] = MOD;
+        c[POWER_EQUAL] = POWER;
+
+        c[LEFT_SHIFT_EQUAL] = LEFT_SHIFT;
+        c[RIGHT_SHIFT_EQUAL] = RIGHT_SHIFT;
+        c[RIGHT_SHIFT_UNSIGNED_EQUAL] = RIGHT_SHIFT_UNSIGNED;
+
+        c[BITWISE_OR_EQUAL] = BITWISE_OR;
+        c[BITWISE_AND_EQUAL] = BITWISE_AND;
+        c[BITWISE_XOR_EQUAL] = BITWISE_XOR;
 
         // see BinaryExpressionHelper.eval
-        Map<Integer, String> b = binaryOperatorMethods;
-        b.put(PLUS,"plus");
-        b.put(MINUS,"minus");
-        b.put(MULTIPLY,"multiply");
-        b.put(POWER,"power");
-        b.put(DIVIDE,"div");
-        b.put(MOD,"mod");
-        b.put(BITWISE_OR,"or");
-        b.put(BITWISE_AND,"and");
-        b.put(BITWISE_XOR,"xor");
-        b.put(LEFT_SHIFT,"leftShift");
-        b.put(RIGHT_SHIFT,"rightShift");
-        b.put(RIGHT_SHIFT_UNSIGNED,"rightShiftUnsigned");
-
-        b.put(COMPARE_EQUAL,"compareEqual");
-        b.put(COMPARE_NOT_EQUAL,"compareNotEqual");
-        b.put(COMPARE_LESS_THAN,"compareLessThan");
-        b.put(COMPARE_LESS_THAN_EQUAL,"compareLessThanEqual");
-        b.put(COMPARE_GREATER_THAN,"compareGreaterThan");
-        b.put(COMPARE_GREATER_THAN_EQUAL,"compareGreaterThanEqual");
-        b.put(COMPARE_TO,"compareTo");
-
-        b.put(FIND_REGEX,"findRegex");
-        b.put(MATCH_REGEX,"matchRegex");
+        String[] b = binaryOperatorMethods;
+        b[PLUS] = "plus";
+        b[MINUS] = "minus";
+        b[MULTIPLY] = "multiply";
+        b[POWER] = "power";
+        b[DIVIDE] = "div";
+        b[MOD] = "mod";
+        b[BITWISE_OR] = "or";
+        b[BITWISE_AND] = "and";
+        b[BITWISE_XOR] = "xor";
+        b[LEFT_SHIFT] = "leftShift";
+        b[RIGHT_SHIFT] = "rightShift";
+        b[RIGHT_SHIFT_UNSIGNED] = "rightShiftUnsigned";
+
+        b[COMPARE_EQUAL] = "compareEqual";
+        b[COMPARE_NOT_EQUAL] = "compareNotEqual";
+        b[COMPARE_LESS_THAN] = "compareLessThan";
+        b[COMPARE_LESS_THAN_EQUAL] = "compareLessThanEqual";
+        b[COMPARE_GREATER_THAN] = "compareGreaterThan";
+        b[COMPARE_GREATER_THAN_EQUAL] = "compareGreaterThanEqual";
+        b[COMPARE_TO] = "compareTo";
+
+        b[FIND_REGEX] = "findRegex";
+        b[MATCH_REGEX] = "matchRegex";
     }
 }
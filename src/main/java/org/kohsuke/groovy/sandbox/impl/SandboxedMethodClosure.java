@@ -12,8 +12,23 @@ import static org.codehaus.groovy.runtime.InvokerHelper.*;
  * @author Kohsuke Kawaguchi
  */
 public class SandboxedMethodClosure extends MethodClosure {
+    /**
+     * Class of the code that created the closure, or null.
+     */
+    private final Class<?> caller;
+
     public SandboxedMethodClosure(Object owner, String method) {
+        this(owner, method, null);
+    }
+
+    /**
+     * @param caller
+     *      Class of the code that created the closure, which decides which interceptors apply to calling it.
+     *      See {@link Checker} for the details.
+     */
+    public SandboxedMethodClosure(Object owner, String method, Class<?> caller) {
         super(owner, method);
+        this.caller = caller;
     }
 
     /**
@@ -23,7 +38,7 @@ public class SandboxedMethodClosure extends MethodClosure {
      */
     protected Object doCall(Object[] arguments) {
         try {
-            return Checker.checkedCall(getOwner(), false, false, getMethod(), arguments);
+            return Checker.checkedCall(caller, -1, getOwner(), false, false, getMethod(), arguments);
         } catch (Throwable e) {
             throw new InvokerInvocationException(e);
         }
@@ -1,8 +1,7 @@
 package org.kohsuke.groovy.sandbox.impl;
 
 import org.kohsuke.groovy.sandbox.GroovyInterceptor;
-
-import java.util.Iterator;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
 
 /**
  * {@link GroovyInterceptor.Invoker} that chains multiple {@link GroovyInterceptor} instances.
@@ -12,10 +11,40 @@ import java.util.Iterator;
  * @author Kohsuke Kawaguchi
  */
 abstract class SingleArgInvokerChain extends InvokerChain {
-    protected SingleArgInvokerChain(Object receiver) {
-        super(receiver);
+    protected SingleArgInvokerChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+        super(kind, interceptors, index);
+    }
+
+    public final Object call(Object receiver, String method, Object arg1) throws Throwable {
+        if (!hasNext()) {
+            return perform(receiver, method, arg1);
+        }
+        VerdictCache verdicts = verdicts(receiver);
+        if (verdicts == null) {
+            return intercept(next(), receiver, method, arg1);
+        }
+        if (verdicts.check(getClass(), receiver, method, arg1)) {
+            return next().call(receiver, method, arg1);
+        }
+        VerdictCache.Recorder recorder = verdicts.recorder(getClass(), next(), receiver, method, arg1);
+        try {
+            return intercept(recorder, receiver, method, arg1);
+        } catch (Throwable t) {
+            recorder.denied(t);
+            throw t;
+        }
     }
 
+    /**
+     * Consults {@link #interceptor()} about the operation.
+     */
+    abstract Object intercept(Invoker next, Object receiver, String method, Object arg1) throws Throwable;
+
+    /**
+     * Performs the operation, once all the interceptors have let it through.
+     */
+    abstract Object perform(Object receiver, String method, Object arg1) throws Throwable;
+
     public final Object call(Object receiver, String method) throws Throwable {
         throw new UnsupportedOperationException();
     }
@@ -0,0 +1,136 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import groovy.lang.MetaClassImpl;
+import groovy.lang.MetaMethod;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers whether Groovy resolves a method call on a {@link Class}, like {@code x.method(...)} with
+ * {@code x = Integer}, to a static method, so that {@link Checker} does not walk the metaclass of the receiver
+ * every time to decide whether to treat the call as a static call.
+ *
+ * <p>
+ * Decisions are kept per receiver class, method name, and argument types, and are dropped whenever the metaclass of
+ * the receiver is replaced or modified.
+ */
+final class StaticDispatchCache {
+    private StaticDispatchCache() {}
+
+    /**
+     * Method names come from the script and can be computed, so we stop remembering decisions for a class once
+     * there are this many names, and for a name once there are this many argument type combinations.
+     */
+    private static final int MAX_NAMES = 256;
+    private static final int MAX_ENTRIES_PER_NAME = 8;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    /**
+     * Decision for one method name and argument types.
+     */
+    private static final class Entry {
+        final Class<?>[] argTypes;
+        /**
+         * Class whose static method is called, or null if the call is not a static call.
+         */
+        final Class<?> target;
+
+        Entry(Class<?>[] argTypes, Class<?> target) {
+            this.argTypes = argTypes;
+            this.target = target;
+        }
+
+        boolean matches(Object[] args) {
+            if (args.length != argTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (argTypes[i] != (args[i] == null ? null : args[i].getClass())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Decisions made against one version of a metaclass.
+     */
+    private static final class Decisions {
+        final MetaClassImpl metaClass;
+        final int version;
+        final ConcurrentMap<String, Entry[]> entries = new ConcurrentHashMap<>();
+
+        Decisions(MetaClassImpl metaClass, int version) {
+            this.metaClass = metaClass;
+            this.version = version;
+        }
+
+        boolean isFor(MetaClassImpl metaClass) {
+            return this.metaClass == metaClass && version == metaClass.getVersion();
+        }
+
+        synchronized void add(String method, Entry e) {
+            Entry[] current = entries.getOrDefault(method, NO_ENTRIES);
+            if (current.length >= MAX_ENTRIES_PER_NAME || (current.length == 0 && entries.size() >= MAX_NAMES)) {
+                return;
+            }
+            Entry[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = e;
+            entries.put(method, updated);
+        }
+    }
+
+    private static final class Holder {
+        volatile Decisions decisions;
+    }
+
+    private static final ClassValue<Holder> HOLDERS = new ClassValue<Holder>() {
+        @Override
+        protected Holder computeValue(Class<?> type) {
+            return new Holder();
+        }
+    };
+
+    /**
+     * Returns the class whose static method Groovy calls for {@code receiver.method(args)}, or null if it does not
+     * resolve to a static method and should be treated as a call on the {@link Class} object itself.
+     *
+     * @param metaClass
+     *      The current metaclass of the receiver.
+     */
+    static Class<?> staticReceiver(Class<?> receiver, MetaClassImpl metaClass, String method, Object[] args) {
+        Holder h = HOLDERS.get(receiver);
+        Decisions d = h.decisions;
+        if (d == null || !d.isFor(metaClass)) {
+            h.decisions = d = new Decisions(metaClass, metaClass.getVersion());
+        }
+        Entry[] entries = d.entries.get(method);
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (e.matches(args)) {
+                    return e.target;
+                }
+            }
+        }
+        Class<?> target = resolve(receiver, metaClass, method, args);
+        Class<?>[] argTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argTypes[i] = args[i] == null ? null : args[i].getClass();
+        }
+        d.add(method, new Entry(argTypes, target));
+        return target;
+    }
+
+    private static Class<?> resolve(Class<?> receiver, MetaClassImpl metaClass, String method, Object[] args) {
+        MetaMethod m = metaClass.retrieveStaticMethod(method, args);
+        if (m == null || !m.isStatic()) {
+            return null;
+        }
+        // Foo.forName() still finds Class.forName() method, so we need to test for that
+        return m.getDeclaringClass().getTheClass() == Class.class ? Class.class : receiver;
+    }
+}
@@ -1,6 +1,7 @@
 package org.kohsuke.groovy.sandbox.impl;
 
 import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
 
 /**
  * {@link GroovyInterceptor.Invoker} that chains multiple {@link GroovyInterceptor} instances.
@@ -10,10 +11,40 @@ import org.kohsuke.groovy.sandbox.GroovyInterceptor;
  * @author Kohsuke Kawaguchi
  */
 abstract class VarArgInvokerChain extends InvokerChain {
-    protected VarArgInvokerChain(Object receiver) {
-        super(receiver);
+    protected VarArgInvokerChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+        super(kind, interceptors, index);
     }
 
+    public final Object call(Object receiver, String method, Object... args) throws Throwable {
+        if (!hasNext()) {
+            return perform(receiver, method, args);
+        }
+        VerdictCache verdicts = verdicts(receiver);
+        if (verdicts == null) {
+            return intercept(next(), receiver, method, args);
+        }
+        if (verdicts.check(getClass(), receiver, method, args)) {
+            return next().call(receiver, method, args);
+        }
+        VerdictCache.Recorder recorder = verdicts.recorder(getClass(), next(), receiver, method, args);
+        try {
+            return intercept(recorder, receiver, method, args);
+        } catch (Throwable t) {
+            recorder.denied(t);
+            throw t;
+        }
+    }
+
+    /**
+     * Consults {@link #interceptor()} about the operation.
+     */
+    abstract Object intercept(Invoker next, Object receiver, String method, Object... args) throws Throwable;
+
+    /**
+     * Performs the operation, once all the interceptors have let it through.
+     */
+    abstract Object perform(Object receiver, String method, Object... args) throws Throwable;
+
     public final Object call(Object receiver, String method) throws Throwable {
         return call(receiver,method,EMPTY_ARRAY);
     }
@@ -0,0 +1,337 @@
+package org.kohsuke.groovy.sandbox.impl;
+
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the decisions of a {@link GroovyInterceptor} whose decisions depend only on the signature of the
+ * operation, so that the sandbox does not have to ask it again.
+ *
+ * <p>
+ * An interceptor opts in by returning an instance of this class from {@link GroovyInterceptor#getVerdictCache()},
+ * which is a promise that when it is asked about an operation:
+ * <ul>
+ *     <li>it either lets it through, by calling the {@link Invoker} with exactly the receiver, the name, and the
+ *     arguments it was given and returning what it returns, or rejects it by throwing a {@link SecurityException}
+ *     whose message does not mention the values involved;
+ *     <li>the choice depends only on what kind of operation it is, the class of the receiver (or the receiver itself
+ *     if that is a {@link Class}), the name of the method or property, and the classes of the arguments.
+ * </ul>
+ * The sandbox watches what the interceptor does the first time it sees a signature. If it lets the operation through
+ * unchanged, later operations with the same signature go straight to the next interceptor. If it throws a
+ * {@link SecurityException} of a public class with a public constructor taking the message without letting the
+ * operation through, later operations with the same signature throw a new exception of the same class with the same
+ * message. Anything else, including other exceptions, is not remembered.
+ *
+ * <p>
+ * Call {@link #invalidate()} when the policy behind the interceptor changes. Several interceptors that apply the same
+ * policy may share a cache. The cache has a fixed number of slots, and entries that collide replace one another,
+ * so it never grows, and lookups and updates never lock. Entries refer to the classes involved, so a cache that
+ * outlives the scripts it has seen keeps at most that many of their classes from being unloaded.
+ */
+public final class VerdictCache {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    /**
+     * Incremented by {@link #invalidate()}. Entries from an earlier generation are ignored.
+     */
+    private volatile int generation;
+
+    public VerdictCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *      Number of signatures the cache can remember, rounded up to a power of two.
+     */
+    public VerdictCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, MAX_CAPACITY) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(Math.max(size, 1));
+        this.mask = table.length() - 1;
+    }
+
+    /**
+     * Forgets all decisions, for example because the policy behind the interceptor changed.
+     */
+    public void invalidate() {
+        generation++;
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the current generation, to pass to {@link #putTypes} once the decision is known.
+     */
+    int generation() {
+        return generation;
+    }
+
+    private static final class Entry {
+        final int generation;
+        final Class<?> op;
+        final Class<?> type;
+        final String name;
+        final Class<?>[] argTypes;
+        /**
+         * How the interceptor rejected the operation, or null if it let it through.
+         */
+        final Denial denial;
+
+        Entry(int generation, Class<?> op, Class<?> type, String name, Class<?>[] argTypes, Denial denial) {
+            this.generation = generation;
+            this.op = op;
+            this.type = type;
+            this.name = name;
+            this.argTypes = argTypes;
+            this.denial = denial;
+        }
+
+        boolean matches(int generation, Class<?> op, Class<?> type, String name, int argCount) {
+            return this.generation == generation && this.op == op && this.type == type
+                    && argTypes.length == argCount && (name == null ? this.name == null : name.equals(this.name));
+        }
+
+        /**
+         * Returns true if the operation is allowed, or throws the same kind of exception as the interceptor did.
+         * Returns false if that exception cannot be created, so that the interceptor is asked again.
+         */
+        boolean verdict() throws Throwable {
+            if (denial != null) {
+                SecurityException e = denial.create();
+                if (e == null) {
+                    return false;
+                }
+                throw e;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The class and message of a {@link SecurityException} thrown by the interceptor. We create a new exception for
+     * every operation it rejects, rather than throwing the same instance from different places and threads.
+     */
+    private static final class Denial {
+        final Constructor<? extends SecurityException> constructor;
+        final String message;
+
+        private Denial(Constructor<? extends SecurityException> constructor, String message) {
+            this.constructor = constructor;
+            this.message = message;
+        }
+
+        /**
+         * Returns how the given exception rejected an operation, or null if we could not throw the same kind of
+         * exception again.
+         */
+        static Denial of(Throwable t) {
+            if (!(t instanceof SecurityException) || !Modifier.isPublic(t.getClass().getModifiers())) {
+                return null;
+            }
+            try {
+                return new Denial(t.getClass().asSubclass(SecurityException.class).getConstructor(String.class), t.getMessage());
+            } catch (NoSuchMethodException | SecurityException e) {
+                return null;
+            }
+        }
+
+        SecurityException create() {
+            try {
+                return constructor.newInstance(message);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /*
+        Lookups come in one overload per arity, like Invoker, so that the common cases do not allocate.
+
+        @param op
+            The class of the chain link, which identifies what kind of operation this is.
+        @return
+            true if the operation is known to be allowed, false if we do not know.
+        @throws Throwable
+            if the operation is known to be rejected.
+     */
+
+    boolean check(Class<?> op, Object receiver, String name) throws Throwable {
+        Class<?> type = CallSitePool.typeOf(receiver);
+        Entry e = table.get(index(hash(op, type, name)));
+        return e != null && e.matches(generation, op, type, name, 0) && e.verdict();
+    }
+
+    boolean check(Class<?> op, Object receiver, String name, Object arg1) throws Throwable {
+        Class<?> type = CallSitePool.typeOf(receiver);
+        Entry e = table.get(index(hash(hash(op, type, name), arg1)));
+        return e != null && e.matches(generation, op, type, name, 1)
+                && e.argTypes[0] == typeOf(arg1) && e.verdict();
+    }
+
+    /**
+     * Same as {@link #check(Class, Object, String, Object)}, for an operation of which we only know the types,
+     * because the values are primitives that we would rather not box.
+     */
+    boolean checkTypes(Class<?> op, Class<?> type, String name, Class<?> argType) throws Throwable {
+        Entry e = table.get(index(31 * hash(op, type, name) + argType.hashCode()));
+        return e != null && e.matches(generation, op, type, name, 1)
+                && e.argTypes[0] == argType && e.verdict();
+    }
+
+    /**
+     * Remembers that an operation of which we only know the types is allowed, for {@link #checkTypes}, unless
+     * the cache was invalidated since the given {@link #generation()}.
+     * This is for decisions that the sandbox derives from others that the interceptor made, like {@link InterfaceCast}.
+     */
+    void putTypes(int generation, Class<?> op, Class<?> type, String name, Class<?> argType) {
+        if (generation == this.generation) {
+            table.set(index(31 * hash(op, type, name) + argType.hashCode()),
+                    new Entry(generation, op, type, name, new Class<?>[] { argType }, null));
+        }
+    }
+
+    boolean check(Class<?> op, Object receiver, String name, Object arg1, Object arg2) throws Throwable {
+        Class<?> type = CallSitePool.typeOf(receiver);
+        Entry e = table.get(index(hash(hash(hash(op, type, name), arg1), arg2)));
+        return e != null && e.matches(generation, op, type, name, 2)
+                && e.argTypes[0] == typeOf(arg1) && e.argTypes[1] == typeOf(arg2) && e.verdict();
+    }
+
+    boolean check(Class<?> op, Object receiver, String name, Object... args) throws Throwable {
+        Class<?> type = CallSitePool.typeOf(receiver);
+        int h = hash(op, type, name);
+        for (Object arg : args) {
+            h = hash(h, arg);
+        }
+        Entry e = table.get(index(h));
+        if (e == null || !e.matches(generation, op, type, name, args.length)) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (e.argTypes[i] != typeOf(args[i])) {
+                return false;
+            }
+        }
+        return e.verdict();
+    }
+
+    /**
+     * Creates the {@link Invoker} to give to the interceptor the first time we see a signature,
+     * which records what the interceptor does with it.
+     */
+    Recorder recorder(Class<?> op, Invoker next, Object receiver, String name, Object... args) {
+        return new Recorder(op, next, receiver, name, args);
+    }
+
+    /**
+     * Watches what the interceptor does with an operation and remembers it if we can.
+     */
+    final class Recorder implements Invoker {
+        private final int generation = VerdictCache.this.generation;
+        private final Class<?> op;
+        private final Invoker next;
+        private final Object receiver;
+        private final String name;
+        private final Object[] args;
+        private boolean invoked;
+
+        Recorder(Class<?> op, Invoker next, Object receiver, String name, Object[] args) {
+            this.op = op;
+            this.next = next;
+            this.receiver = receiver;
+            this.name = name;
+            this.args = args;
+        }
+
+        public Object call(Object receiver, String method) throws Throwable {
+            invoked(receiver, method);
+            return next.call(receiver, method);
+        }
+
+        public Object call(Object receiver, String method, Object arg1) throws Throwable {
+            invoked(receiver, method, arg1);
+            return next.call(receiver, method, arg1);
+        }
+
+        public Object call(Object receiver, String method, Object arg1, Object arg2) throws Throwable {
+            invoked(receiver, method, arg1, arg2);
+            return next.call(receiver, method, arg1, arg2);
+        }
+
+        public Object call(Object receiver, String method, Object... args) throws Throwable {
+            invoked(receiver, method, args);
+            return next.call(receiver, method, args);
+        }
+
+        private void invoked(Object receiver, String method, Object... args) {
+            if (invoked) {
+                return;
+            }
+            invoked = true;
+            // Operations that have no name to begin with (like constructors) ignore the one the interceptor passes on.
+            if (receiver != this.receiver || (name != null && !name.equals(method)) || args.length != this.args.length) {
+                return;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] != this.args[i]) {
+                    return;
+                }
+            }
+            put(null);
+        }
+
+        /**
+         * Called when the interceptor threw, which is a rejection unless it was the operation itself that failed.
+         */
+        void denied(Throwable t) {
+            if (!invoked) {
+                Denial d = Denial.of(t);
+                if (d != null) {
+                    put(d);
+                }
+            }
+        }
+
+        private void put(Denial denial) {
+            Class<?> type = CallSitePool.typeOf(receiver);
+            int h = hash(op, type, name);
+            Class<?>[] argTypes = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                argTypes[i] = typeOf(args[i]);
+                h = hash(h, args[i]);
+            }
+            if (generation == VerdictCache.this.generation) {
+                table.set(index(h), new Entry(generation, op, type, name, argTypes, denial));
+            }
+        }
+    }
+
+    private int index(int h) {
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int hash(Class<?> op, Class<?> type, String name) {
+        int h = 31 * op.hashCode() + type.hashCode();
+        return 31 * h + (name == null ? 0 : name.hashCode());
+    }
+
+    private static int hash(int h, Object arg) {
+        return 31 * h + (arg == null ? 0 : arg.getClass().hashCode());
+    }
+
+    private static Class<?> typeOf(Object arg) {
+        return arg == null ? null : arg.getClass();
+    }
+}
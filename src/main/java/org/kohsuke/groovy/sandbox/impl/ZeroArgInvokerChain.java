@@ -1,6 +1,7 @@
 package org.kohsuke.groovy.sandbox.impl;
 
 import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor.Invoker;
 
 /**
  * {@link GroovyInterceptor.Invoker} that chains multiple {@link GroovyInterceptor} instances.
@@ -10,10 +11,40 @@ import org.kohsuke.groovy.sandbox.GroovyInterceptor;
  * @author Kohsuke Kawaguchi
  */
 abstract class ZeroArgInvokerChain extends InvokerChain {
-    protected ZeroArgInvokerChain(Object receiver) {
-        super(receiver);
+    protected ZeroArgInvokerChain(Kind kind, GroovyInterceptor[] interceptors, int index) {
+        super(kind, interceptors, index);
     }
 
+    public final Object call(Object receiver, String method) throws Throwable {
+        if (!hasNext()) {
+            return perform(receiver, method);
+        }
+        VerdictCache verdicts = verdicts(receiver);
+        if (verdicts == null) {
+            return intercept(next(), receiver, method);
+        }
+        if (verdicts.check(getClass(), receiver, method)) {
+            return next().call(receiver, method);
+        }
+        VerdictCache.Recorder recorder = verdicts.recorder(getClass(), next(), receiver, method);
+        try {
+            return intercept(recorder, receiver, method);
+        } catch (Throwable t) {
+            recorder.denied(t);
+            throw t;
+        }
+    }
+
+    /**
+     * Consults {@link #interceptor()} about the operation.
+     */
+    abstract Object intercept(Invoker next, Object receiver, String method) throws Throwable;
+
+    /**
+     * Performs the operation, once all the interceptors have let it through.
+     */
+    abstract Object perform(Object receiver, String method) throws Throwable;
+
     public final Object call(Object receiver, String method, Object arg1) throws Throwable {
         throw new UnsupportedOperationException();
     }
@@ -0,0 +1,20 @@
+package org.kohsuke.groovy.sandbox;
+
+import groovy.lang.GroovyShell;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+
+/**
+ * Runs all of {@link TheTest} against code compiled with {@link SandboxTransformer#enableInvokeDynamic}.
+ */
+public class InvokeDynamicTest extends TheTest {
+    @Override
+    public void setUp() {
+        super.setUp();
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.addCompilationCustomizers(new ImportCustomizer().addImports(SandboxTransformerTest.class.getName()).addStarImports("org.kohsuke.groovy.sandbox"));
+        cc.addCompilationCustomizers(new SandboxTransformer());
+        SandboxTransformer.enableInvokeDynamic(cc);
+        sandboxedSh = new GroovyShell(binding,cc);
+    }
+}
@@ -1079,6 +1079,21 @@ public class SandboxTransformerTest {
                 "Script7$1.asBoolean()");
     }
 
+    @Test
+    public void sandboxRemembersCastsPerSourceClass() {
+        // Checker.checkedCast remembers what a cast takes for the last class it saw, so alternate between classes
+        assertIntercept("boolean b(x) { x }\n[b(true), b(1), b(true), b(1)]", Arrays.asList(true, true, true, true),
+                "Script1.b(Boolean)",
+                "Script1.b(Integer)",
+                "Integer.asBoolean()",
+                "Script1.b(Boolean)",
+                "Script1.b(Integer)",
+                "Integer.asBoolean()");
+        assertEvaluate("String s(x) { x }\n[s('a'), s(1), s('b'), s(null), s(2G)]", Arrays.asList("a", "1", "b", null, "2"));
+        assertEvaluate("int i(x) { x }\ni(1) + i('a')", 98);
+        assertFailsWithSameException("int i(x) { x }\ni(1) + i('ab')");
+    }
+
     @Test
     public void sandboxAllowsBoxedPrimitiveCasts() {
         assertIntercept("1.0 as Integer", 1);
@@ -1321,4 +1336,178 @@ public class SandboxTransformerTest {
                 "new Test([:]).map\n");
     }
 
+    @Test
+    public void directCalls() throws Exception {
+        SandboxTransformer transformer = new SandboxTransformer();
+        transformer.allowDirectCalls(Arrays.asList(
+                String.class.getMethod("trim"),
+                String.class.getMethod("length"),
+                String.class.getMethod("contains", CharSequence.class),
+                List.class.getMethod("size"),
+                List.class.getMethod("add", Object.class),
+                List.class.getMethod("get", int.class)));
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.addCompilationCustomizers(transformer);
+        sandboxedSh = new GroovyShell(binding, cc);
+        assertIntercept(
+                "String s = ' a '\n" +
+                "List l = [1, 2]\n" +
+                "def t = s; t = ' b '\n" +
+                "def u = l ? ' c ' : 1\n" +
+                "[s.trim(), s.trim().length(), l.add(s), l.size(), l.get(2), 'ab'.contains('b'), s.toUpperCase(), t.trim(), u.trim(), s?.trim()]\n",
+                Arrays.asList("a", 1, true, 3, " a ", true, " A ", "b", "c", "a"),
+                // Intercepted operations:
+                "String.toUpperCase()", // not allowed
+                "String.trim()", // not known to be a String, unlike t, which was last assigned one
+                "String.trim()"); // null-safe
+        try {
+            transformer.allowDirectCalls(Collections.singletonList(String.class.getMethod("valueOf", Object.class)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("valueOf"));
+        }
+    }
+
+    @Test
+    public void staticCompilation() throws Exception {
+        SandboxTransformer transformer = new SandboxTransformer();
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.addCompilationCustomizers(transformer);
+        transformer.enableStaticCompilation(cc, m -> m.getDeclaringClass() == String.class);
+        sandboxedSh = new GroovyShell(binding, cc);
+        assertIntercept(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test {\n" +
+                "  static String shout(String s) { twice(s.trim().toUpperCase()) }\n" +
+                "  static String twice(String s) { s.concat(s) }\n" +
+                "}\n" +
+                "Test.shout(' a ')\n",
+                "AA",
+                // Everything in Test is checked when compiling it.
+                "Test:shout(String)");
+        sandboxedEval(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test {\n" +
+                "  static void exit() { System.exit(1) }\n" +
+                "}\n" +
+                "Test.exit()\n",
+                ShouldFail.class,
+                e -> assertThat(e.getMessage(), containsString("java.lang.System.exit(int)")));
+        // @CompileDynamic code is sandboxed as usual.
+        assertIntercept(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test {\n" +
+                "  @groovy.transform.CompileDynamic static String f(String s) { s.trim() }\n" +
+                "}\n" +
+                "Test.f(' a ')\n",
+                "a",
+                "Test:f(String)",
+                "String.trim()");
+        assertIntercept(
+                "@groovy.transform.CompileStatic(groovy.transform.TypeCheckingMode.SKIP)\n" +
+                "class Test {\n" +
+                "  static String f(String s) { s.trim() }\n" +
+                "}\n" +
+                "Test.f(' a ')\n",
+                "a",
+                "Test:f(String)",
+                "String.trim()");
+        // Type checking extensions would run while compiling.
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic(extensions = 'Extension.groovy')\n" +
+                "class Test { }\n",
+                "type checking extensions");
+        // Constructors and initializers.
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { Test() { System.exit(1) } }\n",
+                "java.lang.System.exit(int)");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { { System.exit(1) } }\n",
+                "java.lang.System.exit(int)");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static { System.exit(1) } }\n",
+                "java.lang.System.exit(int)");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { String home = System.getProperty('user.home') }\n",
+                "java.lang.System.getProperty(java.lang.String)");
+        // Properties and fields.
+        assertEvaluate(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test {\n" +
+                "  String s\n" +
+                "  Test(String s) { this.s = s.trim() }\n" +
+                "  int f() { s.bytes.length }\n" +
+                "}\n" +
+                "new Test(' ab ').f()\n",
+                2);
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static String f(File f) { f.path } }\n",
+                "java.io.File.getPath()");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static Object f() { System.out } }\n",
+                "java.lang.System.out");
+        // Closures are checked like the code around them.
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static Object f() { return { String name -> System.getenv(name) } } }\n",
+                "java.lang.System.getenv(java.lang.String)");
+        // Casts are intercepted when they run.
+        assertIntercept(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static File f(String path) { (File) [path] } }\n" +
+                "Test.f('secret.key')\n",
+                new File("secret.key"),
+                "Test:f(String)",
+                "new File(String)");
+        // Method pointers are looked up when they are called.
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static Object f(String s) { s.&trim } }\n",
+                "method pointers");
+        // Indexing into arrays is fine, but anything else calls getAt or putAt.
+        assertEvaluate(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static String f(String[] a) { a[0] = a[1].trim(); a[0] } }\n" +
+                "Test.f([' x ', ' y '] as String[])\n",
+                "y");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static String f(List<String> l) { l[0] } }\n",
+                "resolved when it is compiled");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static void f(List<String> l) { l[0] = 'x' } }\n",
+                "resolved when it is compiled");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static Object f(String[] a) { a[0..1] } }\n",
+                "resolved when it is compiled");
+        // Static calls, and operators on numbers.
+        assertIntercept(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static String f(int x) { String.valueOf(-x * 2 + 1) } }\n" +
+                "Test.f(3)\n",
+                "-5",
+                "Test:f(Integer)");
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static int f(int x) { Math.abs(x) } }\n",
+                "java.lang.Math.abs(int)");
+        // The compiler gives nested classes methodMissing and propertyMissing, which dispatch dynamically.
+        assertStaticCompilationFails(
+                "@groovy.transform.CompileStatic\n" +
+                "class Test { static class Inner { static String f(String s) { s.trim() } } }\n",
+                "Statically compiled sandboxed code");
+    }
+
+    private void assertStaticCompilationFails(String script, String message) {
+        sandboxedEval(script, ShouldFail.class, e -> assertThat(e.getMessage(), containsString(message)));
+    }
+
 }
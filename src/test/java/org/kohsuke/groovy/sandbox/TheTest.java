@@ -1,5 +1,10 @@
 package org.kohsuke.groovy.sandbox;
 
+import groovy.lang.Closure;
+import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.runtime.NullObject;
 import org.codehaus.groovy.runtime.ProxyGeneratorAdapter;
 import org.jvnet.hudson.test.Issue;
@@ -7,18 +12,32 @@ import java.awt.Point;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 import org.junit.Test;
+import org.kohsuke.groovy.sandbox.impl.CheckedReplacements;
+import org.kohsuke.groovy.sandbox.impl.Checker;
+import org.kohsuke.groovy.sandbox.impl.VerdictCache;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
 
 /**
  *
@@ -124,6 +143,20 @@ public class TheTest extends SandboxTransformerTest {
         );
     }
 
+    @Test public void testSpreadOverMixedElements() throws Exception {
+        // elements that need special treatment are intercepted as such, wherever they are among plain ones
+        assertIntercept(
+                "String.size()/LinkedHashMap.size()/String.size()",
+                Arrays.asList(1, 1, null, 2),
+                "def m = [size: 5]; ['a', m, null, 'bb']*.size()"
+        );
+        assertIntercept(
+                "String.empty/LinkedHashMap.get(String)/String.empty",
+                Arrays.asList(false, null, null, false),
+                "def m = [size: 5]; ['a', m, null, 'bb']*.empty"
+        );
+    }
+
     @Test public void testClosure() throws Exception {
         assertIntercept(
                 "Script1$_run_closure1.call()/Integer.class/Class:forName(String)",
@@ -410,10 +443,16 @@ public class TheTest extends SandboxTransformerTest {
     }
 
     @Test public void testGString() throws Exception {
-        assertIntercept("Integer.plus(Integer)/Integer.plus(Integer)/GStringImpl.toString()", "answer=6",
+        // arithmetic on literals is computed when compiling
+        assertIntercept("GStringImpl.toString()", "answer=6",
             "def x = /answer=${1+2+3}/; x.toString()");
     }
 
+    @Test public void testGStringWithVariables() throws Exception {
+        assertIntercept("Integer.plus(Integer)/Integer.plus(Integer)/GStringImpl.toString()", "answer=6",
+            "def one = 1; def x = /answer=${one+2+3}/; x.toString()");
+    }
+
     @Test public void testClosurePropertyAccess() throws Exception {
         assertIntercept(Arrays.asList(
                 "Script1$_run_closure1.call()",
@@ -832,4 +871,529 @@ public class TheTest extends SandboxTransformerTest {
                 "def cl = l.class\n" +
                 "return nameList.join('') + ' ' + cl\n");
     }
+
+    @Test public void testMetaClassChangeAfterRepeatedCalls() throws Exception {
+        // Checker reuses call sites across calls, so make sure that they notice metaclass changes.
+        assertEvaluate(
+                "class Foo { def bar() { 1 } }\n" +
+                "def r = []\n" +
+                "for (int i = 0; i < 3; i++) { r << new Foo().bar() }\n" +
+                "Foo.metaClass.bar = { -> 2 }\n" +
+                "r << new Foo().bar()\n" +
+                "r\n",
+                Arrays.asList(1, 1, 1, 2));
+    }
+
+    @Test public void testStaticCallOnClassValueAfterMetaClassChange() throws Exception {
+        // Checker remembers which calls on a Class are static calls, so make sure that it notices metaclass changes.
+        sandboxedEval(
+                "class Foo { }\n" +
+                "def c = Foo\n" +
+                "def r = []\n" +
+                "for (int i = 0; i < 3; i++) { r << c.getSimpleName() }\n" +
+                "Foo.metaClass.static.getSimpleName = { -> 'Bar' }\n" +
+                "r << c.getSimpleName()\n" +
+                "r\n",
+                Arrays.asList("Foo", "Foo", "Foo", "Bar"), e -> fail(e.toString()));
+        List<String> calls = Arrays.asList(cr.toString().split("\n"));
+        assertEquals(3, Collections.frequency(calls, "Class.getSimpleName()"));
+        assertEquals(1, Collections.frequency(calls, "Foo:getSimpleName()"));
+    }
+
+    @Test public void testClosureDispatch() throws Exception {
+        // Checker remembers where calls from closures go, so make sure that it picks the same targets as Groovy every time.
+        assertEvaluate(
+                "class Dsl {\n" +
+                "  def steps = []\n" +
+                "  def echo(s) { steps << s }\n" +
+                "  def methodMissing(String name, args) { steps << name }\n" +
+                "}\n" +
+                "class Plain { }\n" +
+                "def run(d, Closure c) { c.delegate = d; c.resolveStrategy = Closure.DELEGATE_FIRST; c() }\n" +
+                "def d = new Dsl()\n" +
+                "for (int i = 0; i < 2; i++) { run(d) { echo('a'); custom(1) } }\n" +
+                "greet = { -> 'hi' }\n" +
+                "for (int i = 0; i < 2; i++) { d.steps << run(new Plain()) { greet() } }\n" +
+                "d.steps\n",
+                Arrays.asList("a", "custom", "a", "custom", "hi", "hi"));
+        // the binding is only reachable through Script.invokeMethod, but there is no point in asking Plain
+        List<String> calls = Arrays.asList(cr.toString().split("\n"));
+        assertEquals(2, Collections.frequency(calls, "Dsl.invokeMethod(String,Object[])"));
+        assertEquals(0, Collections.frequency(calls, "Plain.invokeMethod(String,Object[])"));
+    }
+
+    @Test public void testIndexedAccess() throws Exception {
+        // Checker accesses arrays and lists directly, so make sure it does what getAt/putAt would
+        assertIntercept(
+                "ArrayList[Integer]/ArrayList[Integer]=String/ArrayList[Integer]=Integer/ArrayList[Integer]/ArrayList[Integer]/ArrayList[Integer]",
+                Arrays.asList("b", "a", null, null, Arrays.asList("a", "c", null, null, 1)),
+                "def l = ['a', 'b']\n" +
+                "def x = l[1]\n" +
+                "l[-1] = 'c'\n" +
+                "l[4] = 1\n" +
+                "[x, l[-5], l[2], l[9], l]\n");
+        assertIntercept(
+                "String[][Integer]=String/int[][Integer]=Integer/int[][Integer]=String/Long[][Integer]=Integer/String[][Integer]/int[][Integer]/Long[][Integer]",
+                Arrays.asList("b", 99, 5L),
+                "String[] s = new String[2]; s[-1] = 'b'\n" +
+                "int[] i = new int[2]; i[0] = 1; i[1] = 'c'\n" +
+                "Long[] o = new Long[1]; o[0] = 5\n" +
+                "[s[1], i[1], o[0]]\n");
+        sandboxedEval("def a = new int[1]; a[-2]", ShouldFail.class, e -> assertThat(e, instanceOf(ArrayIndexOutOfBoundsException.class)));
+
+        // categories may change what indexing does
+        assertEvaluate(
+                "class Cat { static Object getAt(List l, int i) { 'category' }; static void putAt(List l, int i, Object v) { l.add(0, v) } }\n" +
+                "def l = [1, 2, 3]\n" +
+                "use(Cat) { l[0] = 'x'; [l[0], l] }\n",
+                Arrays.asList("category", Arrays.asList("x", 1, 2, 3)));
+    }
+
+    @Test public void testIntrinsics() throws Exception {
+        // Checker computes arithmetic and comparisons of common types directly, so make sure it does what Groovy would
+        String[] numbers = {"7", "-3", "2147483647", "5L", "-9223372036854775807L", "2.5d", "-0.0d", "1.10G", "-4G"};
+        for (String a : numbers) {
+            for (String b : numbers) {
+                boolean bigDecimal = a.endsWith("G") || b.endsWith("G");
+                String script = "def a = " + a + "; def b = " + b + "\n" +
+                        "[a + b, a - b, a * b, a / b, " + (bigDecimal ? "" : "a % b, ") +
+                        "a == b, a != b, a < b, a <= b, a > b, a >= b, a <=> b]\n";
+                assertEvaluate(script, new GroovyShell().evaluate(script));
+            }
+        }
+        assertIntercept("String.plus(String)/String.compareTo(String)/String.compareTo(String)/String.compareTo(String)",
+                Arrays.asList("abcd", -1, false, true),
+                "def a = 'ab'; def b = 'cd'\n" +
+                "[a + b, a <=> b, a == b, a < b]\n");
+        // arithmetic on literals is computed when compiling, but comparisons are not
+        assertIntercept("Integer.compareTo(Double)",
+                Arrays.asList(3L, 5.0d, true),
+                "[1 + 2L, 2.5d * 2, 1 < 1.5d]\n");
+        assertIntercept("Integer.plus(Long)/Double.multiply(Integer)/Integer.compareTo(Double)",
+                Arrays.asList(3L, 5.0d, true),
+                "def i = 1; def d = 2.5d\n" +
+                "[i + 2L, d * 2, i < 1.5d]\n");
+
+        // categories and metaclasses may change what operators do
+        assertEvaluate(
+                "class Always42 { static Integer plus(Integer a, Integer b) { 42 } }\n" +
+                "use(Always42) { 1 + 1 }\n",
+                42);
+        try {
+            assertEvaluate("Long.metaClass.minus = { Long b -> 42L }; 1L - 1L\n", 42L);
+        } finally {
+            GroovySystem.getMetaClassRegistry().removeMetaClass(Long.class);
+        }
+        assertEvaluate("1L - 1L\n", 0L);
+    }
+
+    @Test public void testPrimitiveOperators() throws Exception {
+        // operators on locals declared as primitives go through primitive variants of the checker methods
+        assertIntercept(
+                "Integer.compareTo(Integer)/Integer.multiply(Integer)/Integer.plus(Integer)/Integer.next()/ArrayList[Integer]/" +
+                "Integer.compareTo(Integer)/Integer.multiply(Integer)/Integer.plus(Integer)/Integer.next()/ArrayList[Integer]/" +
+                "Integer.compareTo(Integer)",
+                2,
+                "int total = 0\n" +
+                "for (int i = 0; i < 2; i++) { total = total + i * 2 }\n" +
+                "total\n");
+        assertIntercept("Long.minus(Long)/Long.mod(Long)/Double.div(Double)/Double.compareTo(Double)/Double.compareTo(Double)",
+                Arrays.asList(-2L, 1L, Double.POSITIVE_INFINITY, true, true),
+                "long a = -2; long b = 3; double c = 1; double z = 0.0d\n" +
+                "[a - 0L, b % 2L, c / 0.0d, c == 1.0d, c > z]\n");
+        assertIntercept("Integer.plus(Integer)", Integer.MIN_VALUE,
+                "int i = 2147483647; i + 1\n");
+        assertIntercept("Integer.div(Integer)", new BigDecimal("0.5"),
+                "int i = 1; int j = 2; i / j\n");
+
+        // once a pure interceptor allowed an operation, the operands are no longer boxed to ask it again
+        final VerdictCache cache = new VerdictCache();
+        final List<String> consulted = new ArrayList<>();
+        GroovyInterceptor pure = new GroovyInterceptor() {
+            @Override
+            public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+                consulted.add(method);
+                if (method.equals("minus")) {
+                    throw new SecurityException("no minus");
+                }
+                return super.onMethodCall(invoker, receiver, method, args);
+            }
+            @Override
+            public VerdictCache getVerdictCache() {
+                return cache;
+            }
+        };
+        pure.register();
+        try {
+            assertEquals(30, sandboxedSh.evaluate("int total = 0; for (int i = 0; i < 10; i++) { int j = i * 2; total = j > 10 ? total : total + j }; total"));
+            assertEquals(1, Collections.frequency(consulted, "plus"));
+            assertEquals(1, Collections.frequency(consulted, "multiply"));
+            assertEquals(1, Collections.frequency(consulted, "compareTo"));
+            for (int i = 0; i < 2; i++) {
+                try {
+                    sandboxedSh.evaluate("int a = 1; a - 1");
+                    fail();
+                } catch (SecurityException e) {
+                    assertEquals("no minus", e.getMessage());
+                }
+            }
+            assertEquals(1, Collections.frequency(consulted, "minus"));
+        } finally {
+            pure.unregister();
+        }
+    }
+
+    @Test public void testInterfaceCastVerdicts() throws Exception {
+        // once a pure interceptor allowed all the methods of an interface, casts to it are not checked method by method
+        // (not Runnable, which closures already are, so casting them to it does not involve the interceptor at all)
+        final VerdictCache cache = new VerdictCache();
+        final List<String> consulted = new ArrayList<>();
+        final AtomicLong denials = new AtomicLong();
+        GroovyInterceptor pure = new GroovyInterceptor() {
+            @Override
+            public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+                if (receiver instanceof Closure) {
+                    consulted.add(method);
+                    if (method.equals("compareTo") && denials.get() > 0) {
+                        throw new SecurityException("no compareTo");
+                    }
+                }
+                return super.onMethodCall(invoker, receiver, method, args);
+            }
+            @Override
+            public VerdictCache getVerdictCache() {
+                return cache;
+            }
+        };
+        pure.register();
+        try {
+            String script = "def c = { -> 1 }; int n = 0; for (int i = 0; i < 5; i++) { Comparable r = c; n++ }; n";
+            assertEquals(5, sandboxedSh.evaluate(script));
+            assertEquals(1, Collections.frequency(consulted, "compareTo"));
+            // the policy changed, so the interface has to be checked again
+            denials.incrementAndGet();
+            cache.invalidate();
+            // and the rejection is remembered too (within one script, since each one has its own closure classes)
+            assertEquals(2, sandboxedSh.evaluate("def c = { -> 1 }; int n = 0\n" +
+                    "for (int i = 0; i < 2; i++) { try { Comparable r = c } catch (SecurityException e) { assert e.message == 'no compareTo'; n++ } }\n" +
+                    "n"));
+            assertEquals(2, Collections.frequency(consulted, "compareTo"));
+        } finally {
+            pure.unregister();
+        }
+    }
+
+    @Test public void testFusedUpdates() throws Exception {
+        // an interceptor that opts in to updates is consulted once per update rather than about each of its steps
+        final List<String> consulted = new ArrayList<>();
+        GroovyInterceptor fused = new GroovyInterceptor() {
+            @Override
+            public Object onUpdate(Invoker invoker, Target target, Object receiver, Object key, String operator, Object operand) throws Throwable {
+                consulted.add(target + " " + key + " " + operator);
+                return super.onUpdate(invoker, target, receiver, key, operator, operand);
+            }
+            @Override
+            public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+                consulted.add(method);
+                return super.onMethodCall(invoker, receiver, method, args);
+            }
+            @Override
+            public Object onStaticCall(Invoker invoker, Class receiver, String method, Object... args) throws Throwable {
+                consulted.add(receiver.getSimpleName() + "." + method);
+                return super.onStaticCall(invoker, receiver, method, args);
+            }
+        };
+        String script = "def stats = [count: 0, total: 0]; def l = [1, 2]\n" +
+                "for (int i = 0; i < 3; ++i) { stats.count++; stats.total += i }\n" +
+                "l[0] += 1\n" +
+                "[stats.count, stats.total, l]\n";
+        fused.register();
+        try {
+            assertEquals(Arrays.asList(3, 3, Arrays.asList(2, 2)), sandboxedSh.evaluate(script));
+            assertEquals(3, Collections.frequency(consulted, "PROPERTY count next"));
+            assertEquals(3, Collections.frequency(consulted, "PROPERTY total plus"));
+            assertEquals(1, Collections.frequency(consulted, "ARRAY 0 plus"));
+            assertEquals(0, Collections.frequency(consulted, "put"));
+
+            // the operator on a value that is not a number is checked like any other call, static ones included
+            consulted.clear();
+            assertEquals("evil 1", sandboxedSh.evaluate("class Evil { static plus(x) { 'evil ' + x } }\n" +
+                    "def h = [c: Evil]; h.c += 1; h.c\n"));
+            assertEquals(1, Collections.frequency(consulted, "PROPERTY c plus"));
+            assertEquals(1, Collections.frequency(consulted, "Evil.plus"));
+
+            // updates whose steps an interceptor that has not opted in is interested in are decomposed, the others are not
+            consulted.clear();
+            GroovyInterceptor plain = new GroovyInterceptor() {
+                @Override
+                public Object onGetArray(Invoker invoker, Object receiver, Object index) throws Throwable {
+                    consulted.add("getAt");
+                    return super.onGetArray(invoker, receiver, index);
+                }
+            };
+            plain.register();
+            try {
+                assertEquals(Arrays.asList(3, 3, Arrays.asList(2, 2)), sandboxedSh.evaluate(script));
+                assertEquals(0, Collections.frequency(consulted, "ARRAY 0 plus"));
+                assertEquals(1, Collections.frequency(consulted, "getAt"));
+                assertEquals(3, Collections.frequency(consulted, "PROPERTY count next"));
+                assertEquals(0, Collections.frequency(consulted, "put"));
+            } finally {
+                plain.unregister();
+            }
+        } finally {
+            fused.unregister();
+        }
+    }
+
+    @Test public void testCompileTimeElision() throws Exception {
+        // locals that are reassigned are checked as usual (first, since the closure class is named after the script)
+        assertIntercept("Script1$_run_closure1.compareTo(null)", "cast",
+                "def s = 'a'; s = { -> 'b' }\n" +
+                "Comparable c = s\n" +
+                "'cast'\n");
+
+        // but those that are not keep the type of their literal, so these casts need not be checked
+        assertIntercept("", Arrays.asList("a", 3L),
+                "def s = 'a'; Comparable c = s\n" +
+                "def i = 3; long l = i\n" +
+                "[c, l]\n");
+
+        // operations on literals are computed when compiling
+        assertIntercept("", Arrays.asList(86400000, "foobar", 1.5d),
+                "[24 * 60 * 60 * 1000, 'foo' + 'bar', 1 + 0.5d]\n");
+        assertIntercept("Integer.div(Integer)/BigDecimal.plus(Integer)", new BigDecimal("1.5"),
+                "1 / 2 + 1\n");
+        assertIntercept("Integer.mod(Integer)", "failed",
+                "try { 1 % 0 } catch (ArithmeticException e) { 'failed' }\n");
+    }
+
+    @Test public void testFlowSensitiveElision() throws Exception {
+        // locals that are reassigned keep the type of what they were last assigned, so these casts need not be checked
+        assertIntercept("Script1.f()", Arrays.asList("b", 3L, "c"),
+                "String f() { def s = 1; s = 'c'; s }\n" +
+                "def s = 1; s = 'b'; Comparable c = s\n" +
+                "def i = 'x'; i = 3; long l = i\n" +
+                "[c, l, f()]\n");
+
+        // but not once a loop may have assigned something else
+        assertIntercept("new IntRange(Boolean,Integer,Integer)/Script2$_run_closure1.compareTo(null)", "cast",
+                "def s = 'a'\n" +
+                "for (i in 0..1) { Comparable c = s; s = { -> 'b' } }\n" +
+                "'cast'\n");
+
+        // or a branch
+        assertIntercept("Script3$_run_closure1.compareTo(null)", "cast",
+                "def s = 'a'\n" +
+                "if (true) { s = { -> 'b' } }\n" +
+                "Comparable c = s\n" +
+                "'cast'\n");
+
+        // or a closure
+        assertIntercept("Script4$_run_closure2.call()/Script4$_run_closure1.compareTo(null)", "cast",
+                "def b = { -> 'b' }\n" +
+                "def s = 'a'\n" +
+                "def set = { -> s = b }\n" +
+                "s = 'x'\n" +
+                "set()\n" +
+                "Comparable c = s\n" +
+                "'cast'\n");
+    }
+
+    @Test public void testInterceptorRegisteredBetweenCalls() throws Exception {
+        // Checker reuses invoker chains across calls, so make sure that they notice newly registered interceptors.
+        assertIntercept("String.toUpperCase()", "FOO", "'foo'.toUpperCase()");
+        ClassRecorder other = new ClassRecorder();
+        other.register();
+        try {
+            assertIntercept("String.toUpperCase()", "FOO", "'foo'.toUpperCase()");
+        } finally {
+            other.unregister();
+        }
+        assertEquals("new Script(Binding)\nString.toUpperCase()\n", other.toString());
+    }
+
+    @Test public void testCallSiteSeeingManyReceiverTypes() throws Exception {
+        // Checker caches call sites per receiver type, up to a point, so make sure it still dispatches correctly past it.
+        assertEvaluate(
+                "def r = []\n" +
+                "for (x in [1, 'a', 2.5G, [1], true, 'b', 3L, [a:1], 4, null]) { r << x?.toString() }\n" +
+                "r\n",
+                Arrays.asList("1", "a", "2.5", "[1]", "true", "b", "3", "[a:1]", "4", null));
+    }
+
+    @Test public void testCallArities() throws Exception {
+        // calls with up to two arguments go through Checker methods specialized for that many, others do not
+        assertIntercept(
+                "String.length()/String.substring(Integer)/String.substring(Integer,Integer)/String:format(String,String,String)/String.substring(Integer,Integer)/new StringBuilder()/new StringBuilder(String)/StringBuilder.append(String)/StringBuilder.toString()",
+                "bc",
+                "def s = null\n" +
+                "s?.length(); s?.substring(1, 2)\n" +
+                "'abc'.length(); 'abc'.substring(1); 'abc'.substring(1, 2); String.format('%s%s', 'a', 'b'); 'abc'.substring(*[1, 3])\n" +
+                "new StringBuilder(); new StringBuilder('b').append('c').toString()\n");
+    }
+
+    @Test public void testSandboxContext() throws Exception {
+        // code bound to a context uses its interceptors on whatever thread it runs, and ignores those of the thread
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.addCompilationCustomizers(new SandboxTransformer());
+        GroovyShell sh = new GroovyShell(cc);
+        ClassRecorder bound = new ClassRecorder();
+        new SandboxContext(bound).bind(sh.getClassLoader());
+        Script script = sh.parse(
+                "class Doubler { def twice(x) { x * 2 } }\n" +
+                "def f = new Doubler().&twice\n" +
+                "-f('ab'.length())\n");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(-4, executor.submit(() -> script.run()).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("new Script(Binding)/new Doubler()/String.length()/SandboxedMethodClosure.call(Integer)/Doubler.twice(Integer)/Integer.multiply(Integer)/",
+                bound.toString().replace('\n', '/'));
+
+        bound.reset();
+        cr.reset();
+        cr.register();
+        try {
+            assertEquals(-4, script.run());
+        } finally {
+            cr.unregister();
+        }
+        assertEquals("", cr.toString());
+        assertEquals("new Doubler()/String.length()/SandboxedMethodClosure.call(Integer)/Doubler.twice(Integer)/Integer.multiply(Integer)/",
+                bound.toString().replace('\n', '/'));
+    }
+
+    @Test public void testVerdictCache() throws Exception {
+        final VerdictCache cache = new VerdictCache();
+        final List<String> consulted = new ArrayList<>();
+        GroovyInterceptor pure = new GroovyInterceptor() {
+            @Override
+            public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+                consulted.add(method);
+                if (method.equals("reverse")) {
+                    throw new SecurityException("no reverse");
+                }
+                if (method.equals("trim")) {
+                    throw new IllegalStateException("not now");
+                }
+                return super.onMethodCall(invoker, receiver, method, args);
+            }
+            @Override
+            public VerdictCache getVerdictCache() {
+                return cache;
+            }
+        };
+        pure.register();
+        try {
+            String script = "def r = []; for (int i = 0; i < 3; i++) { r.add('foo'.toUpperCase()) }; r";
+            sandboxedEval(script, Arrays.asList("FOO", "FOO", "FOO"), e -> fail(e.toString()));
+            assertEquals(1, Collections.frequency(consulted, "toUpperCase"));
+            // other interceptors are still consulted every time
+            assertEquals(3, Collections.frequency(Arrays.asList(cr.toString().split("\n")), "String.toUpperCase()"));
+
+            // so are the elements of a spread
+            sandboxedEval("['A', 'B', 'C']*.toLowerCase()", Arrays.asList("a", "b", "c"), e -> fail(e.toString()));
+            assertEquals(1, Collections.frequency(consulted, "toLowerCase"));
+            assertEquals(3, Collections.frequency(Arrays.asList(cr.toString().split("\n")), "String.toLowerCase()"));
+
+            // a different argument type is a different signature
+            sandboxedEval("'foo'.concat('bar') + 'foo'.concat('baz') + 'foo'.concat(null as String)", null, e -> assertThat(e, instanceOf(NullPointerException.class)));
+            assertEquals(2, Collections.frequency(consulted, "concat"));
+
+            // a remembered rejection throws a new exception every time
+            final List<Throwable> denials = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                sandboxedEval("'abc'.reverse()", null, e -> {
+                    assertThat(e, instanceOf(SecurityException.class));
+                    assertThat(e.getMessage(), containsString("no reverse"));
+                    denials.add(e);
+                });
+            }
+            assertEquals(1, Collections.frequency(consulted, "reverse"));
+            assertEquals(2, denials.size());
+            assertNotSame(denials.get(0), denials.get(1));
+            sandboxedEval("['abc', 'def']*.reverse()", null, e -> assertThat(e.getMessage(), containsString("no reverse")));
+            assertEquals(1, Collections.frequency(consulted, "reverse"));
+
+            // other exceptions may not be rejections, so they are not remembered
+            for (int i = 0; i < 2; i++) {
+                sandboxedEval("' abc '.trim()", null, e -> assertThat(e.getMessage(), containsString("not now")));
+            }
+            assertEquals(2, Collections.frequency(consulted, "trim"));
+
+            cache.invalidate();
+            sandboxedEval(script, Arrays.asList("FOO", "FOO", "FOO"), e -> fail(e.toString()));
+            assertEquals(2, Collections.frequency(consulted, "toUpperCase"));
+        } finally {
+            pure.unregister();
+        }
+    }
+
+    @Test public void testInterests() throws Exception {
+        // the recorder wants to see the steps of updates, so it does not opt in to them
+        assertEquals(EnumSet.complementOf(EnumSet.of(GroovyInterceptor.Event.UPDATE)), cr.getInterests());
+        GroovyInterceptor constructors = new GroovyInterceptor() {
+            @Override
+            public Object onNewInstance(Invoker invoker, Class receiver, Object... args) throws Throwable {
+                return super.onNewInstance(invoker, receiver, args);
+            }
+        };
+        // onSuperConstructor calls onNewInstance unless overridden
+        assertEquals(EnumSet.of(GroovyInterceptor.Event.NEW_INSTANCE, GroovyInterceptor.Event.SUPER_CONSTRUCTOR), constructors.getInterests());
+
+        // interceptors are not consulted about the operations they are not interested in
+        GroovyInterceptor calls = new GroovyInterceptor() {
+            @Override
+            public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+                if (method.equals("reverse")) {
+                    throw new SecurityException("no reverse");
+                }
+                return super.onMethodCall(invoker, receiver, method, args);
+            }
+            @Override
+            public Object onGetProperty(Invoker invoker, Object receiver, String property) throws Throwable {
+                throw new SecurityException("no properties");
+            }
+            @Override
+            public Set<Event> getInterests() {
+                return EnumSet.of(Event.METHOD_CALL);
+            }
+        };
+        calls.register();
+        try {
+            sandboxedEval("[a: 'abc'].a.toUpperCase()", "ABC", e -> fail(e.toString()));
+            sandboxedEval("[a: 'abc'].a.reverse()", null, e -> assertThat(e.getMessage(), containsString("no reverse")));
+        } finally {
+            calls.unregister();
+        }
+        assertIntercept("String.toUpperCase()", "ABC", "'abc'.toUpperCase()");
+    }
+
+    public static class Shouter {
+        public static String shout(String s) {
+            return s + "!";
+        }
+
+        public static Object checkedShout(Class<?> owner, String s) throws Throwable {
+            return Checker.checkedCall(owner, -1, s, false, false, "concat", new Object[] {"!"});
+        }
+    }
+
+    static {
+        try {
+            CheckedReplacements.register(Shouter.class, "shout", MethodHandles.lookup().findStatic(Shouter.class, "checkedShout", MethodType.methodType(Object.class, Class.class, String.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test public void testCheckedReplacement() throws Exception {
+        // the replacement is called instead of the original method, without consulting the interceptors about it
+        assertIntercept("String.concat(String)", "hi!", "TheTest.Shouter.shout('hi')");
+        // but not for arguments it does not take
+        assertIntercept("Class.shout(Integer)", null, "try { TheTest.Shouter.shout(1) } catch (MissingMethodException e) { null }");
+    }
 }
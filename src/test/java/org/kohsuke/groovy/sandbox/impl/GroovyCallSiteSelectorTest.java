@@ -24,6 +24,8 @@
 
 package org.kohsuke.groovy.sandbox.impl;
 
+import java.util.Collections;
+import org.codehaus.groovy.runtime.wrappers.PojoWrapper;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -40,4 +42,30 @@ public class GroovyCallSiteSelectorTest {
             assertThat(e.getMessage(), equalTo("Unable to find constructor: new org.kohsuke.groovy.sandbox.impl.GroovyCallSiteSelectorTest java.lang.Integer java.lang.Character"));
         }
     }
+
+    public static class Overloads {
+        public Overloads() {}
+        public Overloads(Object o) {}
+        public Overloads(String s) {}
+        public Overloads(CharSequence s) {}
+    }
+
+    @Test public void repeatedConstructorSelection() throws Exception {
+        // the selection is remembered per argument types, so make sure repeating it does not change the outcome
+        for (int i = 0; i < 3; i++) {
+            assertThat(GroovyCallSiteSelector.findConstructor(Overloads.class, new Object[] {"x"}, null), equalTo(Overloads.class.getConstructor(String.class)));
+            assertThat(GroovyCallSiteSelector.findConstructor(Overloads.class, new Object[] {1}, null), equalTo(Overloads.class.getConstructor(Object.class)));
+            assertThat(GroovyCallSiteSelector.findConstructor(Overloads.class, new Object[0], null), equalTo(Overloads.class.getConstructor()));
+            assertThat(GroovyCallSiteSelector.findConstructor(GroovyCallSiteSelectorTest.class, new Object[] {Collections.emptyMap()}, null), equalTo(GroovyCallSiteSelectorTest.class.getConstructor()));
+            missingConstructor();
+        }
+    }
+
+    @Test public void wrappedConstructorSelection() throws Exception {
+        // wrappers all have the same class, but the constructor is picked by the type they wrap
+        for (int i = 0; i < 3; i++) {
+            assertThat(GroovyCallSiteSelector.findConstructor(Overloads.class, new Object[] {new PojoWrapper(null, String.class)}, null), equalTo(Overloads.class.getConstructor(String.class)));
+            assertThat(GroovyCallSiteSelector.findConstructor(Overloads.class, new Object[] {new PojoWrapper(null, CharSequence.class)}, null), equalTo(Overloads.class.getConstructor(CharSequence.class)));
+        }
+    }
 }